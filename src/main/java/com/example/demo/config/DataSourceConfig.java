@@ -0,0 +1,142 @@
+package com.example.demo.config;
+
+import com.example.demo.service.ReadReplicaRouter;
+import com.zaxxer.hikari.HikariDataSource;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceProperties;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.jdbc.DataSourceBuilder;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
+import org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy;
+import org.springframework.jdbc.datasource.lookup.AbstractRoutingDataSource;
+import org.springframework.util.StringUtils;
+
+import javax.sql.DataSource;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Optional;
+
+// Two pools: the primary (spring.datasource.*) for writes and read-write transactions, and an optional read replica
+// (replica.datasource.*) for read-only transactions: the insight SQL and the read-only queries. The DataSource the app
+// uses hands out lazy connections; the first statement picks the pool, after @Transactional(readOnly = true) has
+// marked the connection read-only. Without a replica, or while it lags too far behind, everything uses the primary.
+// The generated insight SQL does not share these pools; it gets small ones of its own (insightsQuery*DataSource).
+@Configuration
+public class DataSourceConfig {
+
+    @Bean
+    @ConfigurationProperties("spring.datasource.hikari")
+    public HikariDataSource primaryDataSource(DataSourceProperties properties) {
+        HikariDataSource dataSource = properties.initializeDataSourceBuilder().type(HikariDataSource.class).build();
+        dataSource.setPoolName("primary");
+        return dataSource;
+    }
+
+    // Username and password default to the primary's.
+    @Bean
+    @ConditionalOnProperty("replica.datasource.url")
+    @ConfigurationProperties("replica.datasource.hikari")
+    public HikariDataSource replicaDataSource(
+            DataSourceProperties primary,
+            @Value("${replica.datasource.url}") String url,
+            @Value("${replica.datasource.username:}") String username,
+            @Value("${replica.datasource.password:}") String password
+    ) {
+        HikariDataSource dataSource = DataSourceBuilder.create()
+                .type(HikariDataSource.class)
+                .url(url)
+                .username(StringUtils.hasText(username) ? username : primary.determineUsername())
+                .password(StringUtils.hasText(password) ? password : primary.determinePassword())
+                .build();
+        dataSource.setPoolName("replica");
+        // The replica is never written to; MySQL also rejects writes on a read-only session.
+        dataSource.setReadOnly(true);
+        return dataSource;
+    }
+
+    @Bean(initMethod = "start", destroyMethod = "close")
+    public ReadReplicaRouter readReplicaRouter(
+            @Qualifier("replicaDataSource") Optional<DataSource> replicaDataSource,
+            @Value("${replica.max-lag-seconds:5}") long maxLagSeconds,
+            @Value("${replica.lag-check-interval-ms:2000}") long checkIntervalMillis
+    ) {
+        return new ReadReplicaRouter(replicaDataSource.orElse(null), maxLagSeconds, checkIntervalMillis);
+    }
+
+    @Bean
+    @Primary
+    public DataSource dataSource(
+            @Qualifier("primaryDataSource") DataSource primaryDataSource,
+            @Qualifier("replicaDataSource") Optional<DataSource> replicaDataSource,
+            ReadReplicaRouter readReplicaRouter
+    ) {
+        LazyConnectionDataSourceProxy dataSource = new LazyConnectionDataSourceProxy(primaryDataSource);
+        if (replicaDataSource.isPresent()) {
+            AbstractRoutingDataSource readOnly = new AbstractRoutingDataSource() {
+                @Override
+                protected Object determineCurrentLookupKey() {
+                    return readReplicaRouter.useReplica() ? "replica" : "primary";
+                }
+            };
+            Map<Object, Object> targets = new HashMap<>();
+            targets.put("primary", primaryDataSource);
+            targets.put("replica", replicaDataSource.get());
+            readOnly.setTargetDataSources(targets);
+            readOnly.afterPropertiesSet();
+            dataSource.setReadOnlyDataSource(readOnly);
+        }
+        return dataSource;
+    }
+
+    // Pools for the model-generated SQL only (SqlQueryExecutionService): a runaway query can hold at most
+    // insights.query.pool-size connections, never the ones the GraphQL mutations need. Same server and credentials
+    // as the primary or the replica, read-only sessions; like the others they connect on first use.
+    @Bean
+    public HikariDataSource insightsQueryPrimaryDataSource(
+            @Qualifier("primaryDataSource") HikariDataSource primaryDataSource,
+            @Value("${insights.query.pool-size:2}") int poolSize,
+            @Value("${insights.query.statement-cache-size:256}") int statementCacheSize
+    ) {
+        return isolatedPool(primaryDataSource, "insights-sql", poolSize, statementCacheSize);
+    }
+
+    @Bean
+    @ConditionalOnProperty("replica.datasource.url")
+    public HikariDataSource insightsQueryReplicaDataSource(
+            @Qualifier("replicaDataSource") HikariDataSource replicaDataSource,
+            @Value("${insights.query.pool-size:2}") int poolSize,
+            @Value("${insights.query.statement-cache-size:256}") int statementCacheSize
+    ) {
+        return isolatedPool(replicaDataSource, "insights-sql-replica", poolSize, statementCacheSize);
+    }
+
+    private static HikariDataSource isolatedPool(HikariDataSource source, String poolName, int poolSize, int statementCacheSize) {
+        HikariDataSource pool = new HikariDataSource();
+        pool.setPoolName(poolName);
+        pool.setJdbcUrl(source.getJdbcUrl());
+        pool.setUsername(source.getUsername());
+        pool.setPassword(source.getPassword());
+        if (source.getDriverClassName() != null) {
+            pool.setDriverClassName(source.getDriverClassName());
+        }
+        pool.setDataSourceProperties(source.getDataSourceProperties());
+        if (source.getJdbcUrl() != null && source.getJdbcUrl().startsWith("jdbc:mysql:")) {
+            // The generated SQL runs as templates with bind parameters; each connection keeps the server-side
+            // prepared statement of every template it has run, keyed by its text, i.e. by query shape.
+            pool.addDataSourceProperty("useServerPrepStmts", "true");
+            pool.addDataSourceProperty("cachePrepStmts", "true");
+            pool.addDataSourceProperty("prepStmtCacheSize", String.valueOf(statementCacheSize));
+            pool.addDataSourceProperty("prepStmtCacheSqlLimit", "4096");
+            // Reads fetch-size rows per round trip instead of the whole result; only here, not on the OLTP pool,
+            // as it makes Connector/J use server-side prepared statements for every statement.
+            pool.addDataSourceProperty("useCursorFetch", "true");
+        }
+        pool.setMaximumPoolSize(poolSize);
+        pool.setReadOnly(true);
+        return pool;
+    }
+}
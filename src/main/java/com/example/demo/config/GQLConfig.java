@@ -1,16 +1,41 @@
 package com.example.demo.config;
 
+import com.example.demo.service.BulkheadFullException;
+import graphql.ErrorClassification;
+import graphql.GraphqlErrorBuilder;
 import graphql.scalars.ExtendedScalars;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.graphql.execution.DataFetcherExceptionResolver;
 import org.springframework.graphql.execution.RuntimeWiringConfigurer;
+import org.springframework.graphql.execution.SubscriptionExceptionResolver;
 
 @Configuration
 public class GQLConfig {
+
+    // extensions.classification of the error returned when the insights bulkhead is full.
+    public static final ErrorClassification TOO_MANY_REQUESTS = ErrorClassification.errorClassification("TOO_MANY_REQUESTS");
+
     @Bean
     public RuntimeWiringConfigurer runtimeWiringConfigurer() {
         return builder -> builder
                 .scalar(ExtendedScalars.Date)
+                .scalar(ExtendedScalars.DateTime)
                 .scalar(ExtendedScalars.GraphQLLong);
     }
-}
\ No newline at end of file
+
+    // Without these the rejection would surface as a generic INTERNAL_ERROR.
+    @Bean
+    public DataFetcherExceptionResolver bulkheadExceptionResolver() {
+        return DataFetcherExceptionResolver.forSingleError((ex, env) -> ex instanceof BulkheadFullException
+                ? GraphqlErrorBuilder.newError(env).errorType(TOO_MANY_REQUESTS).message(ex.getMessage()).build()
+                : null);
+    }
+
+    @Bean
+    public SubscriptionExceptionResolver bulkheadSubscriptionExceptionResolver() {
+        return SubscriptionExceptionResolver.forSingleError(ex -> ex instanceof BulkheadFullException
+                ? GraphqlErrorBuilder.newError().errorType(TOO_MANY_REQUESTS).message(ex.getMessage()).build()
+                : null);
+    }
+}
@@ -0,0 +1,100 @@
+package com.example.demo.config;
+
+import com.example.demo.service.BudgetCache;
+import com.example.demo.service.BudgetColumnStore;
+import com.example.demo.service.OllamaBulkhead;
+import com.example.demo.service.ReadReplicaRouter;
+import com.example.demo.service.SqlCostGate;
+import com.example.demo.service.SqlQueryCache;
+import com.example.demo.service.SqlQueryExecutionService;
+import com.example.demo.service.SqlTemplateCompiler;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+@Configuration
+public class MetricsConfig {
+
+    // The caches and the bulkhead already count their own hits, evictions and rejections; these read them at scrape time.
+    // The cache meters use Micrometer's cache.* names, so the usual cache dashboards work with a cache=<name> filter.
+    @Bean
+    public MeterBinder insightsPipelineMeters(SqlQueryCache sqlQueryCache, SqlCostGate sqlCostGate, BudgetCache budgetCache,
+                                              OllamaBulkhead ollamaBulkhead, SqlTemplateCompiler sqlTemplateCompiler) {
+        return registry -> {
+            // Prompts compiled from a template (hit) or left to the model (miss).
+            FunctionCounter.builder("insights.sql.template", sqlTemplateCompiler, SqlTemplateCompiler::getHits).tag("result", "hit").register(registry);
+            FunctionCounter.builder("insights.sql.template", sqlTemplateCompiler, SqlTemplateCompiler::getMisses).tag("result", "miss").register(registry);
+
+            Gauge.builder("cache.size", sqlQueryCache, SqlQueryCache::size).tag("cache", "sqlcoder").register(registry);
+            FunctionCounter.builder("cache.gets", sqlQueryCache, SqlQueryCache::getHits).tags("cache", "sqlcoder", "result", "hit").register(registry);
+            FunctionCounter.builder("cache.gets", sqlQueryCache, SqlQueryCache::getMisses).tags("cache", "sqlcoder", "result", "miss").register(registry);
+            FunctionCounter.builder("cache.evictions", sqlQueryCache, SqlQueryCache::getSizeEvictions).tags("cache", "sqlcoder", "cause", "size").register(registry);
+            FunctionCounter.builder("cache.evictions", sqlQueryCache, SqlQueryCache::getExpiredEvictions).tags("cache", "sqlcoder", "cause", "expired").register(registry);
+
+            // EXPLAIN verdicts per SQL shape.
+            Gauge.builder("cache.size", sqlCostGate, SqlCostGate::size).tag("cache", "sqlplan").register(registry);
+            FunctionCounter.builder("cache.gets", sqlCostGate, SqlCostGate::getHits).tags("cache", "sqlplan", "result", "hit").register(registry);
+            FunctionCounter.builder("cache.gets", sqlCostGate, SqlCostGate::getMisses).tags("cache", "sqlplan", "result", "miss").register(registry);
+            FunctionCounter.builder("cache.evictions", sqlCostGate, SqlCostGate::getSizeEvictions).tags("cache", "sqlplan", "cause", "size").register(registry);
+
+            Gauge.builder("cache.size", budgetCache, BudgetCache::size).tag("cache", "budget").register(registry);
+            FunctionCounter.builder("cache.gets", budgetCache, BudgetCache::getHits).tags("cache", "budget", "result", "hit").register(registry);
+            FunctionCounter.builder("cache.gets", budgetCache, BudgetCache::getMisses).tags("cache", "budget", "result", "miss").register(registry);
+            FunctionCounter.builder("cache.evictions", budgetCache, BudgetCache::getSizeEvictions).tags("cache", "budget", "cause", "size").register(registry);
+            FunctionCounter.builder("cache.evictions", budgetCache, BudgetCache::getInvalidations).tags("cache", "budget", "cause", "invalidated").register(registry);
+
+            Gauge.builder("ollama.bulkhead.active", ollamaBulkhead, OllamaBulkhead::getActive)
+                    .description("Insight pipelines holding a bulkhead slot").register(registry);
+            Gauge.builder("ollama.bulkhead.waiting", ollamaBulkhead, OllamaBulkhead::getWaiting)
+                    .description("Insight requests queued for a slot").register(registry);
+            FunctionCounter.builder("ollama.bulkhead.calls", ollamaBulkhead, OllamaBulkhead::getAccepted).tag("outcome", "accepted").register(registry);
+            FunctionCounter.builder("ollama.bulkhead.calls", ollamaBulkhead, OllamaBulkhead::getRejected).tag("outcome", "rejected").register(registry);
+        };
+    }
+
+    // Where read-only transactions got their connection, and how far the replica is behind (NaN while unknown).
+    // Only counted when a replica is configured; without one every read goes to the primary.
+    @Bean
+    public MeterBinder readReplicaMeters(ReadReplicaRouter readReplicaRouter) {
+        return registry -> {
+            FunctionCounter.builder("db.reads", readReplicaRouter, ReadReplicaRouter::getReplicaReads).tag("target", "replica").register(registry);
+            FunctionCounter.builder("db.reads", readReplicaRouter, ReadReplicaRouter::getPrimaryReads).tag("target", "primary").register(registry);
+            Gauge.builder("db.replica.lag", readReplicaRouter, ReadReplicaRouter::getLagSeconds).baseUnit("seconds").register(registry);
+        };
+    }
+
+    // The queue in front of the generated SQL's own pools and the statements cancelled for running too long.
+    // The pools themselves show up as HikariCP meters with pool="insights-sql" / "insights-sql-replica".
+    @Bean
+    public MeterBinder insightsQueryMeters(SqlQueryExecutionService sqlQueryExecutionService) {
+        return registry -> {
+            Gauge.builder("insights.query.active", sqlQueryExecutionService, SqlQueryExecutionService::getActive)
+                    .description("Generated queries holding a connection of the insights-sql pool").register(registry);
+            Gauge.builder("insights.query.waiting", sqlQueryExecutionService, SqlQueryExecutionService::getWaiting)
+                    .description("Generated queries queued for a connection").register(registry);
+            FunctionCounter.builder("insights.query.calls", sqlQueryExecutionService, SqlQueryExecutionService::getAccepted).tag("outcome", "accepted").register(registry);
+            FunctionCounter.builder("insights.query.calls", sqlQueryExecutionService, SqlQueryExecutionService::getRejected).tag("outcome", "rejected").register(registry);
+            FunctionCounter.builder("insights.query.timeouts", sqlQueryExecutionService, SqlQueryExecutionService::getTimeouts)
+                    .description("Generated queries cancelled after insights.query.timeout-seconds").register(registry);
+        };
+    }
+
+    // Budgets held as in-memory columns. A hit answered from resident columns, a miss loaded the budget first;
+    // fallbacks are template questions that still ran as SQL.
+    @Bean
+    public MeterBinder budgetColumnStoreMeters(BudgetColumnStore budgetColumnStore) {
+        return registry -> {
+            Gauge.builder("cache.size", budgetColumnStore, BudgetColumnStore::size).tag("cache", "budget-columns").register(registry);
+            FunctionCounter.builder("cache.gets", budgetColumnStore, BudgetColumnStore::getHits).tags("cache", "budget-columns", "result", "hit").register(registry);
+            FunctionCounter.builder("cache.gets", budgetColumnStore, BudgetColumnStore::getMisses).tags("cache", "budget-columns", "result", "miss").register(registry);
+            FunctionCounter.builder("cache.evictions", budgetColumnStore, BudgetColumnStore::getSizeEvictions).tags("cache", "budget-columns", "cause", "size").register(registry);
+            FunctionCounter.builder("cache.evictions", budgetColumnStore, BudgetColumnStore::getInvalidations).tags("cache", "budget-columns", "cause", "invalidated").register(registry);
+            Gauge.builder("insights.columns.bytes", budgetColumnStore, BudgetColumnStore::getBytes).baseUnit("bytes")
+                    .description("Estimated size of the loaded budget columns").register(registry);
+            FunctionCounter.builder("insights.columns.fallbacks", budgetColumnStore, BudgetColumnStore::getFallbacks)
+                    .description("Template questions the column store could not answer").register(registry);
+        };
+    }
+}
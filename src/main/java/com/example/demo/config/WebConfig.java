@@ -16,6 +16,10 @@ public class WebConfig {
                         .allowedOrigins("http://localhost:4200")
                         .allowedMethods("GET", "POST")
                         .allowedHeaders("*");
+                registry.addMapping("/budgets/*/transactions/import")
+                        .allowedOrigins("http://localhost:4200")
+                        .allowedMethods("POST")
+                        .allowedHeaders("*");
             }
         };
     }
@@ -29,21 +29,6 @@ public final class Constants {
      */
     public static final Pattern SQL_USER_ID_EQUALS_PATTERN = Pattern.compile("(?is)\\buser_id\\b\\s*=\\s*(\\d+)");
 
-    /**
-     * Detect if the SQL joins the budget table (needed for user-scoped queries).
-     */
-    public static final Pattern SQL_JOIN_BUDGET_PATTERN = Pattern.compile("(?is)\\bjoin\\s+`?budget`?\\b");
-
-    /**
-     * Matches budget.user_id = <n> or b.user_id = <n>. Captures the numeric user_id as group(1).
-     */
-    public static final Pattern SQL_BUDGET_USER_ID_EQUALS_PATTERN = Pattern.compile("(?is)\\b(?:`?budget`?|b)\\s*\\.\\s*user_id\\b\\s*=\\s*(\\d+)");
-
-    /**
-     * Detects an invalid user_id reference on the transaction table.
-     */
-    public static final Pattern SQL_TRANSACTION_USER_ID_PATTERN = Pattern.compile("(?is)\\b(?:`?transaction`?|t)\\s*\\.\\s*user_id\\b");
-
     /**
      * Matches category = '<value>' with optional transaction/t alias/backticks.
      * Captures the category value (with doubled quotes intact) as group(1).
@@ -53,93 +38,63 @@ public final class Constants {
             "(?is)\\b(?:(?:`?transaction`?|t)\\s*\\.\\s*)?category\\s*=\\s*([A-Za-z0-9 _-]+)"
     );
 
-    /**
-     * Matches: FROM `transaction` <alias> (backticks optional). Captures the alias as group(1).
-     */
-    public static final Pattern SQL_FROM_TRANSACTION_ALIAS_PATTERN =
-            Pattern.compile("(?is)\\bfrom\\s+`?transaction`?\\s+([a-zA-Z]\\w*)");
-
-    /**
-     * Detects any bare `transaction`.<col> reference (instead of using an alias like t.<col>).
-     */
-    public static final Pattern SQL_BARE_TRANSACTION_DOT_PATTERN =
-            Pattern.compile("(?is)\\b`?transaction`?\\s*\\.");
-
-    /**
-     * Matches MONTH(time_stamp)=<n> with optional table prefix (transaction./`transaction`./t.).
-     * Captures the numeric month as group(1).
-     */
-    public static final Pattern SQL_MONTH_EQUALS_PATTERN = Pattern.compile(
-            "(?is)\\bmonth\\s*\\(\\s*(?:(?:`?transaction`?|`?t`?|t)\\s*\\.)?\\s*`?time_stamp`?\\s*\\)\\s*=\\s*(\\d{1,2})"
-    );
-
-    /**
-     * Matches MONTH(time_stamp) IN (<list>) regardless of spacing/newlines.
-     * Captures the comma-separated list inside the parentheses as group(1).
-     */
-    public static final Pattern SQL_MONTH_IN_PATTERN = Pattern.compile(
-            "(?is)month\\s*\\(.*?time_stamp.*?\\)\\s*in\\s*\\(([^)]*)\\)"
-    );
-
-    /**
-     * Matches YEAR(time_stamp)=<yyyy> with optional table prefix (transaction./`transaction`./t.).
-     * Captures the numeric year as group(1).
-     */
-    public static final Pattern SQL_YEAR_EQUALS_PATTERN = Pattern.compile(
-            "(?is)\\byear\\s*\\(\\s*(?:(?:`?transaction`?|`?t`?|t)\\s*\\.)?\\s*`?time_stamp`?\\s*\\)\\s*=\\s*(\\d{4})"
-    );
-
-    // Tokens that indicate PostgreSQL-only / non-MySQL syntax that we want to reject.
-    public static final Set<String> SQL_BANNED_TOKENS = Set.of(
-            " ilike ",
-            "interval '",
-            "::",
-            " extract(",
-            "date_trunc",
-            " date_part",
-            " to_char",
-            " to_date",
-            " to_timestamp",
-            " at time zone",
-            "generate_series",
-            "distinct on",
-            " filter (where ",
-            " returning ",
-            " similar to ",
-            " nulls last",
-            " nulls first",
-            " on conflict",
-            " intersect ",
-            " except ",
-            " serial ",
-            " bigserial ",
-            " generated always as identity",
-            " timestamptz",
-            " time with time zone",
-            " without time zone",
-            " jsonb",
-            " hstore",
-            " uuid",
-            " array[",
-            " unnest(",
-            " || ",
-            " do $$",
-            " language plpgsql",
-            " create extension",
-            " vacuum ",
-            " analyze ",
-            " regexp_replace(",
-            " cascade ",
-            " from transactions ",
-            " join transactions ",
-            " transactions.",
-            " from budgets ",
-            " join budgets ",
-            " fetch first ",
-            " offset ",
-            // DCL / unsafe keywords (also catches weird model typos like "GRANT BY" instead of "GROUP BY")
-            " grant ",
-            " revoke "
+    // Keywords and functions that are PostgreSQL-only / non-MySQL syntax, or unsafe in a read-only query.
+    // Compared against whole SQL words (outside string literals), upper-cased.
+    public static final Set<String> SQL_BANNED_KEYWORDS = Set.of(
+            "ILIKE",
+            "EXTRACT",
+            "DATE_TRUNC",
+            "DATE_PART",
+            "TO_CHAR",
+            "TO_DATE",
+            "TO_TIMESTAMP",
+            "ZONE",
+            "GENERATE_SERIES",
+            "RETURNING",
+            "SIMILAR",
+            "NULLS",
+            "CONFLICT",
+            "INTERSECT",
+            "EXCEPT",
+            "UNION",
+            "SERIAL",
+            "BIGSERIAL",
+            "GENERATED",
+            "TIMESTAMPTZ",
+            "JSONB",
+            "HSTORE",
+            "UUID",
+            "UNNEST",
+            "LANGUAGE",
+            "PLPGSQL",
+            "EXTENSION",
+            "VACUUM",
+            "ANALYZE",
+            "REGEXP_REPLACE",
+            "CASCADE",
+            "FETCH",
+            "OFFSET",
+            // DML / DDL / DCL and side effects (also catches weird model typos like "GRANT BY" instead of "GROUP BY")
+            "INSERT",
+            "UPDATE",
+            "DELETE",
+            "DROP",
+            "ALTER",
+            "CREATE",
+            "TRUNCATE",
+            "RENAME",
+            "GRANT",
+            "REVOKE",
+            "INTO",
+            "OUTFILE",
+            "DUMPFILE",
+            "LOAD_FILE",
+            "SLEEP",
+            "BENCHMARK",
+            "LOCK",
+            "CALL",
+            "HANDLER",
+            "SET"
     );
 
     /**
@@ -0,0 +1,64 @@
+package com.example.demo.controller;
+
+import com.example.demo.dto.TransactionImportResult;
+import com.example.demo.dto.TransactionInput;
+import com.example.demo.service.TransactionService;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.servlet.http.HttpServletRequest;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.util.Iterator;
+
+// Bulk import of bank exports. The request body is read and validated before the import's DB transaction starts,
+// so the budget row is locked only for the inserts, never for the upload. Bodies over
+// transactions.import.max-bytes are refused up front and row counts are capped by transactions.import.max-rows.
+@RestController
+@Slf4j
+public class TransactionImportController {
+
+    private static final String NDJSON = "application/x-ndjson";
+    private static final String CSV = "text/csv";
+
+    @Autowired
+    TransactionService transactionService;
+
+    @Autowired
+    ObjectMapper objectMapper;
+
+    @Value("${transactions.import.max-bytes:10485760}")
+    long maxBytes;
+
+    @PostMapping(value = "/budgets/{budgetId}/transactions/import", consumes = {CSV, NDJSON})
+    public TransactionImportResult importTransactions(@PathVariable("budgetId") Long budgetId, HttpServletRequest request) {
+        log.info("Importing transactions for budget: {} ({})", budgetId, request.getContentType());
+
+        if (request.getContentLengthLong() > maxBytes) {
+            throw new ResponseStatusException(HttpStatus.PAYLOAD_TOO_LARGE, "An import body holds at most " + maxBytes + " bytes");
+        }
+
+        try (InputStream body = TransactionImportReader.limit(request.getInputStream(), maxBytes)) {
+            Iterator<TransactionInput> rows = request.getContentType().startsWith(NDJSON)
+                    ? TransactionImportReader.ndjson(body, objectMapper, budgetId)
+                    : TransactionImportReader.csv(body, budgetId);
+
+            TransactionService.PreparedImport prepared = transactionService.prepareImport(budgetId, rows);
+            TransactionImportResult result = transactionService.importTransactions(prepared);
+            log.info("Imported {} transactions for budget: {}", result.getImportedCount(), budgetId);
+            return result;
+        } catch (IOException | UncheckedIOException ex) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Unable to read import: " + ex.getMessage(), ex);
+        } catch (RuntimeException ex) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, ex.getMessage(), ex);
+        }
+    }
+}
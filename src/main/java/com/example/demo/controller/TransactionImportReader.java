@@ -0,0 +1,172 @@
+package com.example.demo.controller;
+
+import com.example.demo.dto.TransactionInput;
+import com.fasterxml.jackson.databind.MappingIterator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.csv.CsvMapper;
+import com.fasterxml.jackson.dataformat.csv.CsvParser;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.time.format.DateTimeParseException;
+import java.util.Iterator;
+import java.util.Locale;
+import java.util.NoSuchElementException;
+
+/**
+ * Turns an uploaded bank export into a lazily parsed sequence of {@link TransactionInput} rows,
+ * so the raw body is never buffered as a whole; only the parsed rows are kept (TransactionService.prepareImport).
+ */
+final class TransactionImportReader {
+
+    private static final CsvMapper CSV_MAPPER = new CsvMapper();
+
+    private TransactionImportReader() {}
+
+    // One JSON object per line: {"transactionDate":"2026-05-01","transactionAmount":42,"transactionCategory":"Fuel"}
+    static Iterator<TransactionInput> ndjson(InputStream body, ObjectMapper objectMapper, long budgetId) throws IOException {
+        MappingIterator<TransactionInput> rows = objectMapper.readerFor(TransactionInput.class).readValues(body);
+        return new Iterator<>() {
+            @Override
+            public boolean hasNext() {
+                return rows.hasNext();
+            }
+
+            @Override
+            public TransactionInput next() {
+                return withBudgetId(rows.next(), budgetId);
+            }
+        };
+    }
+
+    // Comma separated: transactionDate,transactionAmount,transactionCategory (ISO dates).
+    // A header row is optional; when present it may list the columns in any order.
+    // Fields follow RFC 4180, so a quoted category may contain commas, quotes ("") or line breaks.
+    static Iterator<TransactionInput> csv(InputStream body, long budgetId) throws IOException {
+        MappingIterator<String[]> rows = CSV_MAPPER.readerFor(String[].class)
+                .with(CsvParser.Feature.WRAP_AS_ARRAY)
+                .with(CsvParser.Feature.TRIM_SPACES)
+                .with(CsvParser.Feature.SKIP_EMPTY_LINES)
+                .readValues(new InputStreamReader(body, StandardCharsets.UTF_8));
+        return new CsvIterator(rows, budgetId);
+    }
+
+    // Fails the read past maxBytes, for bodies sent without a Content-Length (chunked uploads).
+    static InputStream limit(InputStream body, long maxBytes) {
+        return new FilterInputStream(body) {
+            private long remaining = maxBytes;
+
+            @Override
+            public int read() throws IOException {
+                int b = super.read();
+                if (b >= 0) count(1);
+                return b;
+            }
+
+            @Override
+            public int read(byte[] buffer, int offset, int length) throws IOException {
+                int n = super.read(buffer, offset, length);
+                if (n > 0) count(n);
+                return n;
+            }
+
+            private void count(int n) throws IOException {
+                remaining -= n;
+                if (remaining < 0) {
+                    throw new IOException("An import body holds at most " + maxBytes + " bytes");
+                }
+            }
+        };
+    }
+
+    private static TransactionInput withBudgetId(TransactionInput row, long budgetId) {
+        if (row != null && row.getBudgetId() == 0) {
+            row.setBudgetId(budgetId);
+        }
+        return row;
+    }
+
+    private static final class CsvIterator implements Iterator<TransactionInput> {
+        private final MappingIterator<String[]> rows;
+        private final long budgetId;
+        private int dateColumn = 0;
+        private int amountColumn = 1;
+        private int categoryColumn = 2;
+        private int rowNumber = 0;
+        private String[] nextRow;
+
+        CsvIterator(MappingIterator<String[]> rows, long budgetId) {
+            this.rows = rows;
+            this.budgetId = budgetId;
+            this.nextRow = readRow();
+            if (nextRow != null && isHeader(nextRow)) {
+                this.nextRow = readRow();
+            }
+        }
+
+        @Override
+        public boolean hasNext() {
+            return nextRow != null;
+        }
+
+        @Override
+        public TransactionInput next() {
+            if (nextRow == null) {
+                throw new NoSuchElementException();
+            }
+            String[] fields = nextRow;
+            int currentRow = rowNumber;
+            nextRow = readRow();
+
+            if (fields.length <= Math.max(dateColumn, Math.max(amountColumn, categoryColumn))) {
+                throw new RuntimeException("Row " + currentRow + ": expected date, amount and category columns");
+            }
+            try {
+                return new TransactionInput(
+                        budgetId,
+                        Long.parseLong(fields[amountColumn].trim()),
+                        LocalDate.parse(fields[dateColumn].trim()),
+                        fields[categoryColumn].trim(),
+                        0L);
+            } catch (NumberFormatException | DateTimeParseException ex) {
+                throw new RuntimeException("Row " + currentRow + ": " + ex.getMessage(), ex);
+            }
+        }
+
+        private String[] readRow() {
+            try {
+                if (!rows.hasNext()) {
+                    rows.close();
+                    return null;
+                }
+                rowNumber++;
+                return rows.next();
+            } catch (IOException e) {
+                throw new UncheckedIOException("Unable to read import body", e);
+            }
+        }
+
+        private boolean isHeader(String[] columns) {
+            boolean header = false;
+            for (int i = 0; i < columns.length; i++) {
+                String column = columns[i].toLowerCase(Locale.ROOT);
+                if (column.contains("date")) {
+                    dateColumn = i;
+                    header = true;
+                } else if (column.contains("amount")) {
+                    amountColumn = i;
+                    header = true;
+                } else if (column.contains("category")) {
+                    categoryColumn = i;
+                    header = true;
+                }
+            }
+            return header;
+        }
+    }
+}
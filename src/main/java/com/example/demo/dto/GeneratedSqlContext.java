@@ -1,7 +1,7 @@
 package com.example.demo.dto;
 
+import com.example.demo.enums.PromptIntent;
 import java.util.List;
-import java.util.Map;
 import lombok.AllArgsConstructor;
 import lombok.Getter;
 import lombok.NoArgsConstructor;
@@ -21,9 +21,21 @@ public class GeneratedSqlContext {
 
     private Integer requiredYear;
 
+    private List<Integer> requiredMonths;
+
+    private PromptIntent intent;
+
     private String originalPrompt;
 
-    private List<Map<String, Object>> resultSet;
+    private QueryResult resultSet;
 
     private String sqlQuery;
+
+    // sqlQuery with its WHERE literals as bind parameters; this is what runs. Null means run sqlQuery as it is.
+    private String sqlTemplate;
+
+    private List<Object> sqlParameters;
+
+    // Where sqlQuery came from: "template", "cache" or "model".
+    private String sqlSource;
 }
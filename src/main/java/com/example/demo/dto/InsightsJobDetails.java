@@ -0,0 +1,36 @@
+package com.example.demo.dto;
+
+import com.example.demo.enums.InsightsJobStatus;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+import java.time.OffsetDateTime;
+
+// Return type of insightsJob: insights is set once the job SUCCEEDED, error once it FAILED.
+@AllArgsConstructor
+@NoArgsConstructor
+@Getter
+@Setter
+public class InsightsJobDetails {
+    private Long jobId;
+
+    private Long budgetId;
+
+    private String prompt;
+
+    private InsightsJobStatus status;
+
+    private String insights;
+
+    private String error;
+
+    private int attempts;
+
+    private OffsetDateTime createdAt;
+
+    private OffsetDateTime startedAt;
+
+    private OffsetDateTime finishedAt;
+}
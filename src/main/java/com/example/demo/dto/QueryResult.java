@@ -0,0 +1,36 @@
+package com.example.demo.dto;
+
+import java.util.List;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+// Rows of a generated query stored column by column: the names once, then one array per column.
+// A column is a long[] (integer types), double[] (decimal / floating point) or Object[] (text, dates,
+// and numeric columns that contain NULLs). At most maxRows rows are kept; truncated says more were available.
+@AllArgsConstructor
+@NoArgsConstructor
+@Getter
+@Setter
+public class QueryResult {
+
+    private List<String> columns;
+
+    private List<Object> columnValues;
+
+    private int rowCount;
+
+    private boolean truncated;
+
+    public Object value(int column, int row) {
+        Object values = columnValues.get(column);
+        if (values instanceof long[] longs) {
+            return longs[row];
+        }
+        if (values instanceof double[] doubles) {
+            return doubles[row];
+        }
+        return ((Object[]) values)[row];
+    }
+}
@@ -0,0 +1,19 @@
+package com.example.demo.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+import java.util.List;
+
+// One page of a budget's transactions, newest first (Relay connection shape).
+@AllArgsConstructor
+@NoArgsConstructor
+@Getter
+@Setter
+public class TransactionConnection {
+    private List<TransactionEdge> edges;
+
+    private PageInfo pageInfo;
+}
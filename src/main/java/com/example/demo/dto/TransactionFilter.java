@@ -0,0 +1,24 @@
+package com.example.demo.dto;
+
+import com.example.demo.enums.TransactionPriority;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+import java.time.LocalDate;
+
+// Optional filters of fetchTransactionPage. Dates are inclusive; unset fields do not filter.
+@AllArgsConstructor
+@NoArgsConstructor
+@Getter
+@Setter
+public class TransactionFilter {
+    private LocalDate fromDate;
+
+    private LocalDate toDate;
+
+    private String category;
+
+    private TransactionPriority priority;
+}
@@ -0,0 +1,20 @@
+package com.example.demo.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+@AllArgsConstructor
+@NoArgsConstructor
+@Getter
+@Setter
+public class TransactionImportResult {
+    private long budgetId;
+
+    private int importedCount;
+
+    private long totalAmount;
+
+    private Long budgetRemaining;
+}
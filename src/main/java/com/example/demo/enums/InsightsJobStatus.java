@@ -0,0 +1,12 @@
+package com.example.demo.enums;
+
+/*
+    Lifecycle of an insights job: QUEUED -> RUNNING -> SUCCEEDED or FAILED.
+    A RUNNING job whose worker disappeared (restart, crash) goes back to QUEUED once its lease expires.
+ */
+public enum InsightsJobStatus {
+    QUEUED,
+    RUNNING,
+    SUCCEEDED,
+    FAILED
+}
@@ -0,0 +1,11 @@
+package com.example.demo.enums;
+
+/*
+    Shape of the question asked in an insights prompt. Used to pick a deterministic SQL template
+    before falling back to the SqlCoder model.
+ */
+public enum PromptIntent {
+    TOP_CATEGORY,
+    SPEND_TOTAL,
+    UNCLASSIFIED
+}
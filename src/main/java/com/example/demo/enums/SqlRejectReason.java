@@ -0,0 +1,20 @@
+package com.example.demo.enums;
+
+/*
+    Why a model-generated SQL query was rejected by the validation gates.
+    Each reason maps to one correction hint sent back to the model on retry.
+ */
+public enum SqlRejectReason {
+    NOT_SELECT,
+    BANNED_SYNTAX,
+    TABLE_SHAPE,
+    MISSING_USER_FILTER,
+    MISSING_CATEGORY_FILTER,
+    MISSING_MONTH_FILTER,
+    MISSING_YEAR_FILTER,
+    // a AND b OR c (or XOR c): no predicate of the WHERE clause holds for every row.
+    TOP_LEVEL_OR,
+    // Found by EXPLAIN after the shape gates passed (SqlCostGate).
+    COST_LIMIT,
+    EXPLAIN_FAILED
+}
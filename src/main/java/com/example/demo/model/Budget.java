@@ -6,7 +6,9 @@ import lombok.*;
 import java.time.LocalDate;
 import java.util.Date;
 
+// user_id is how every budget lookup and every generated insight query starts (JOIN budget b ... WHERE b.user_id = ?).
 @Entity
+@Table(indexes = @Index(name = "idx_budget_user", columnList = "user_id"))
 @Data
 @NoArgsConstructor
 @AllArgsConstructor
@@ -0,0 +1,46 @@
+package com.example.demo.model;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+// Per budget, per month, per category spend totals.
+// Kept in step with the transaction table by TransactionService, so aggregate insight queries
+// read one row per category and month instead of scanning every transaction.
+@Entity
+@Table(name = "category_month_spend",
+        uniqueConstraints = @UniqueConstraint(name = "uk_category_month_spend",
+                columnNames = {"budget_id", "spend_year", "spend_month", "category"}),
+        indexes = @Index(name = "idx_category_month_spend_user", columnList = "user_id, spend_year, spend_month"))
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class CategoryMonthSpend {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @Column(name = "rollup_id")
+    private Long rollupId;
+
+    @Column(name = "budget_id", nullable = false)
+    private Long budgetId;
+
+    @Column(name = "user_id", nullable = false)
+    private Long userId;
+
+    @Column(name = "spend_year", nullable = false)
+    private Integer spendYear;
+
+    @Column(name = "spend_month", nullable = false)
+    private Integer spendMonth;
+
+    @Column(name = "category", nullable = false)
+    private String category;
+
+    @Column(name = "total_spent", nullable = false)
+    private Long totalSpent;
+
+    @Column(name = "transaction_count", nullable = false)
+    private Long transactionCount;
+}
@@ -0,0 +1,59 @@
+package com.example.demo.model;
+
+import com.example.demo.enums.InsightsJobStatus;
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.Instant;
+
+// One fetchInsights request run in the background by InsightsJobWorker.
+// The row is the queue: workers claim QUEUED rows and keep a lease on them while they run,
+// so jobs outlive the HTTP request that submitted them and the process that was running them.
+@Entity
+@Table(name = "insights_job",
+        indexes = @Index(name = "idx_insights_job_status", columnList = "status, job_id"))
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class InsightsJob {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @Column(name = "job_id")
+    private Long jobId;
+
+    @Column(name = "budget_id", nullable = false)
+    private Long budgetId;
+
+    @Column(name = "prompt", nullable = false, length = 2000)
+    private String prompt;
+
+    @Enumerated(EnumType.STRING)
+    @Column(name = "status", nullable = false, length = 16)
+    private InsightsJobStatus status;
+
+    @Column(name = "insights", columnDefinition = "TEXT")
+    private String insights;
+
+    @Column(name = "error", columnDefinition = "TEXT")
+    private String error;
+
+    // Times the job was claimed by a worker; also tells a stale worker that its claim was taken over.
+    @Column(name = "attempts", nullable = false)
+    private Integer attempts;
+
+    @Column(name = "created_at", nullable = false)
+    private Instant createdAt;
+
+    @Column(name = "started_at")
+    private Instant startedAt;
+
+    @Column(name = "finished_at")
+    private Instant finishedAt;
+
+    // Until when the claiming worker owns a RUNNING job; renewed while it runs.
+    @Column(name = "lease_expires_at")
+    private Instant leaseExpiresAt;
+}
@@ -9,7 +9,12 @@ import lombok.NoArgsConstructor;
 
 import java.time.LocalDate;
 
+// The composite indexes back the keyset pagination of fetchTransactionPage (newest first, optionally per category).
 @Entity
+@Table(indexes = {
+        @Index(name = "idx_transaction_budget_time", columnList = "budget_id, time_stamp, transaction_id"),
+        @Index(name = "idx_transaction_budget_category_time", columnList = "budget_id, category, time_stamp, transaction_id")
+})
 @Data
 @NoArgsConstructor
 @AllArgsConstructor
@@ -1,9 +1,15 @@
 package com.example.demo.repository;
 
 import com.example.demo.model.Budget;
+import jakarta.persistence.LockModeType;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import java.util.List;
 import java.util.Optional;
 
 @Repository
@@ -12,4 +18,33 @@ public interface BudgetRepository extends JpaRepository<Budget, Long> {
     Optional<Budget> findByUserIdAndIsActiveTrue(Long userId);
 
     Optional<Budget> findByBudgetIdAndIsActiveTrue(Long budgetId);
+
+    List<Budget> findByUserIdOrderByStartDateDesc(Long userId);
+
+    // Checks and decrements the remaining budget in a single statement, so concurrent transactions
+    // cannot both pass the check and overwrite each other's balance. Returns the number of rows updated (0 or 1).
+    @Modifying
+    @Query("UPDATE Budget b SET b.budgetRemaining = b.budgetRemaining - :amount "
+            + "WHERE b.budgetId = :budgetId AND b.isActive = true AND b.budgetRemaining >= :amount")
+    int decrementBudgetRemaining(@Param("budgetId") Long budgetId, @Param("amount") Long amount);
+
+    // Raises the allocation and the remaining budget together in one statement, so a concurrent decrement is never
+    // overwritten by a balance read earlier. Returns the number of rows updated (0 or 1).
+    @Modifying(clearAutomatically = true)
+    @Query("UPDATE Budget b SET b.budgetAllocated = b.budgetAllocated + :amount, b.budgetRemaining = b.budgetRemaining + :amount "
+            + "WHERE b.budgetId = :budgetId AND b.isActive = true")
+    int incrementBudgetAllocated(@Param("budgetId") Long budgetId, @Param("amount") Long amount);
+
+    // Only touches is_active, so a stale copy of the row cannot write an old balance back.
+    @Modifying(clearAutomatically = true)
+    @Query("UPDATE Budget b SET b.isActive = false WHERE b.budgetId = :budgetId")
+    int deactivateBudget(@Param("budgetId") Long budgetId);
+
+    // Locks the active budget row (SELECT ... FOR UPDATE) for the rest of the transaction.
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @Query("SELECT b FROM Budget b WHERE b.budgetId = :budgetId AND b.isActive = true")
+    Optional<Budget> findActiveBudgetForUpdate(@Param("budgetId") Long budgetId);
+
+    @Query("SELECT b.budgetRemaining FROM Budget b WHERE b.budgetId = :budgetId")
+    Optional<Long> findBudgetRemainingByBudgetId(@Param("budgetId") Long budgetId);
 }
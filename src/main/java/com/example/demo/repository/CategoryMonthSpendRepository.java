@@ -0,0 +1,57 @@
+package com.example.demo.repository;
+
+import com.example.demo.model.CategoryMonthSpend;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.util.Collection;
+import java.util.List;
+
+@Repository
+public interface CategoryMonthSpendRepository extends JpaRepository<CategoryMonthSpend, Long> {
+
+    List<CategoryMonthSpend> findByBudgetId(Long budgetId);
+
+    interface BudgetCategoryTotal {
+        Long getBudgetId();
+
+        String getCategory();
+
+        Long getTotalSpent();
+
+        Long getTransactionCount();
+    }
+
+    // Whole-cycle spend per category for a batch of budgets, biggest category first.
+    @Query("SELECT r.budgetId AS budgetId, r.category AS category, SUM(r.totalSpent) AS totalSpent, SUM(r.transactionCount) AS transactionCount "
+            + "FROM CategoryMonthSpend r WHERE r.budgetId IN :budgetIds "
+            + "GROUP BY r.budgetId, r.category ORDER BY r.budgetId, SUM(r.totalSpent) DESC, r.category")
+    List<BudgetCategoryTotal> sumByBudgetIdsAndCategory(@Param("budgetIds") Collection<Long> budgetIds);
+
+    // Adds spend to the (budget, year, month, category) row, creating it on first use.
+    // user_id is copied from the budget so reads never need to join it.
+    @Modifying
+    @Query(value = "INSERT INTO category_month_spend (budget_id, user_id, spend_year, spend_month, category, total_spent, transaction_count) "
+            + "SELECT b.budget_id, b.user_id, :year, :month, :category, :amount, :count FROM budget b WHERE b.budget_id = :budgetId "
+            + "ON DUPLICATE KEY UPDATE total_spent = total_spent + :amount, transaction_count = transaction_count + :count",
+            nativeQuery = true)
+    int addSpend(@Param("budgetId") Long budgetId, @Param("year") int year, @Param("month") int month,
+                 @Param("category") String category, @Param("amount") long amount, @Param("count") long count);
+
+    @Modifying
+    @Query(value = "DELETE FROM category_month_spend", nativeQuery = true)
+    int deleteAllRollups();
+
+    // Recomputes every rollup row from the transaction table.
+    @Modifying
+    @Query(value = "INSERT INTO category_month_spend (budget_id, user_id, spend_year, spend_month, category, total_spent, transaction_count) "
+            + "SELECT t.budget_id, b.user_id, YEAR(t.time_stamp), MONTH(t.time_stamp), t.category, SUM(t.amount_spend), COUNT(*) "
+            + "FROM `transaction` t JOIN budget b ON b.budget_id = t.budget_id "
+            + "WHERE t.time_stamp IS NOT NULL AND t.category IS NOT NULL AND t.amount_spend IS NOT NULL "
+            + "GROUP BY t.budget_id, b.user_id, YEAR(t.time_stamp), MONTH(t.time_stamp), t.category",
+            nativeQuery = true)
+    int insertRollupsFromTransactions();
+}
@@ -0,0 +1,60 @@
+package com.example.demo.repository;
+
+import com.example.demo.enums.InsightsJobStatus;
+import com.example.demo.model.InsightsJob;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.time.Instant;
+import java.util.Collection;
+import java.util.Optional;
+
+// Every state change is a conditional UPDATE on (job_id, status, attempts), so two workers (or two instances)
+// can never both claim a job, and a worker whose lease was taken over cannot overwrite the new owner's result.
+@Repository
+public interface InsightsJobRepository extends JpaRepository<InsightsJob, Long> {
+
+    Optional<InsightsJob> findFirstByStatusOrderByJobIdAsc(InsightsJobStatus status);
+
+    @Modifying
+    @Query("UPDATE InsightsJob j SET j.status = com.example.demo.enums.InsightsJobStatus.RUNNING, j.attempts = j.attempts + 1, "
+            + "j.startedAt = :now, j.leaseExpiresAt = :leaseExpiresAt "
+            + "WHERE j.jobId = :jobId AND j.status = com.example.demo.enums.InsightsJobStatus.QUEUED")
+    int claim(@Param("jobId") Long jobId, @Param("now") Instant now, @Param("leaseExpiresAt") Instant leaseExpiresAt);
+
+    @Modifying
+    @Query("UPDATE InsightsJob j SET j.status = :status, j.insights = :insights, j.error = :error, "
+            + "j.finishedAt = :now, j.leaseExpiresAt = null "
+            + "WHERE j.jobId = :jobId AND j.attempts = :attempt AND j.status = com.example.demo.enums.InsightsJobStatus.RUNNING")
+    int finish(@Param("jobId") Long jobId, @Param("attempt") int attempt, @Param("status") InsightsJobStatus status,
+               @Param("insights") String insights, @Param("error") String error, @Param("now") Instant now);
+
+    // Puts a claimed job back in the queue. attempts is left as is for a retry, or set back for a release
+    // that should not count (bulkhead full, worker shutting down).
+    @Modifying
+    @Query("UPDATE InsightsJob j SET j.status = com.example.demo.enums.InsightsJobStatus.QUEUED, j.attempts = :attempts, "
+            + "j.startedAt = null, j.leaseExpiresAt = null "
+            + "WHERE j.jobId = :jobId AND j.attempts = :attempt AND j.status = com.example.demo.enums.InsightsJobStatus.RUNNING")
+    int requeue(@Param("jobId") Long jobId, @Param("attempt") int attempt, @Param("attempts") int attempts);
+
+    @Modifying
+    @Query("UPDATE InsightsJob j SET j.leaseExpiresAt = :leaseExpiresAt "
+            + "WHERE j.jobId IN :jobIds AND j.status = com.example.demo.enums.InsightsJobStatus.RUNNING")
+    int renewLeases(@Param("jobIds") Collection<Long> jobIds, @Param("leaseExpiresAt") Instant leaseExpiresAt);
+
+    // RUNNING jobs whose worker stopped renewing the lease: run again, or fail once maxAttempts were used.
+    @Modifying
+    @Query("UPDATE InsightsJob j SET j.status = com.example.demo.enums.InsightsJobStatus.QUEUED, j.leaseExpiresAt = null "
+            + "WHERE j.status = com.example.demo.enums.InsightsJobStatus.RUNNING AND j.leaseExpiresAt < :now AND j.attempts < :maxAttempts")
+    int requeueExpired(@Param("now") Instant now, @Param("maxAttempts") int maxAttempts);
+
+    @Modifying
+    @Query("UPDATE InsightsJob j SET j.status = com.example.demo.enums.InsightsJobStatus.FAILED, j.leaseExpiresAt = null, "
+            + "j.finishedAt = :now, j.error = 'Job was interrupted on every attempt' "
+            + "WHERE j.status = com.example.demo.enums.InsightsJobStatus.RUNNING AND j.leaseExpiresAt < :now AND j.attempts >= :maxAttempts")
+    int failExpired(@Param("now") Instant now, @Param("maxAttempts") int maxAttempts);
+
+}
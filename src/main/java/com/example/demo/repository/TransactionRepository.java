@@ -2,12 +2,35 @@ package com.example.demo.repository;
 
 import com.example.demo.model.Transaction;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.JpaSpecificationExecutor;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import java.util.Collection;
 import java.util.List;
 
 @Repository
-public interface TransactionRepository extends JpaRepository<Transaction, Long> {
+public interface TransactionRepository extends JpaRepository<Transaction, Long>, JpaSpecificationExecutor<Transaction> {
 
     List<Transaction> findByBudgetId(Long budgetId);
+
+    // Batch loads for the BudgetDetails fields: one query for any number of budgets.
+    // The newest :perBudget transactions of each budget, newest first; older ones are left to fetchTransactionPage.
+    @Query(value = "SELECT transaction_id, budget_id, amount_spend, time_stamp, category, priority FROM ("
+            + "SELECT t.*, ROW_NUMBER() OVER (PARTITION BY t.budget_id ORDER BY t.time_stamp DESC, t.transaction_id DESC) AS rn "
+            + "FROM `transaction` t WHERE t.budget_id IN (:budgetIds)) newest "
+            + "WHERE rn <= :perBudget ORDER BY budget_id, time_stamp DESC, transaction_id DESC",
+            nativeQuery = true)
+    List<Transaction> findNewestByBudgetIds(@Param("budgetIds") Collection<Long> budgetIds, @Param("perBudget") int perBudget);
+
+    interface BudgetTransactionCount {
+        Long getBudgetId();
+
+        Long getTransactionCount();
+    }
+
+    @Query("SELECT t.budgetId AS budgetId, COUNT(t) AS transactionCount FROM Transaction t "
+            + "WHERE t.budgetId IN :budgetIds GROUP BY t.budgetId")
+    List<BudgetTransactionCount> countByBudgetIds(@Param("budgetIds") Collection<Long> budgetIds);
 }
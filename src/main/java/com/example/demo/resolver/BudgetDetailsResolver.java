@@ -0,0 +1,52 @@
+package com.example.demo.resolver;
+
+import com.example.demo.dto.BudgetDetails;
+import com.example.demo.dto.CategorySpend;
+import com.example.demo.dto.TransactionOutput;
+import com.example.demo.service.TransactionService;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.graphql.data.method.annotation.BatchMapping;
+import org.springframework.stereotype.Controller;
+
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+// Nested BudgetDetails fields. Spring GraphQL collects every BudgetDetails in the operation (aliases, lists of budgets)
+// and calls each @BatchMapping once per field with all of them, so the SQL count does not grow with the number of budgets.
+@Controller
+@Slf4j
+public class BudgetDetailsResolver {
+
+    @Autowired
+    TransactionService transactionService;
+
+    @BatchMapping(typeName = "BudgetDetails")
+    public List<List<TransactionOutput>> transactions(List<BudgetDetails> budgets) {
+        Map<Long, List<TransactionOutput>> byBudget = transactionService.fetchTransactionsForBudgets(budgetIds(budgets));
+        return budgets.stream().map(b -> byBudget.getOrDefault(b.getBudgetId(), List.of())).toList();
+    }
+
+    @BatchMapping(typeName = "BudgetDetails")
+    public List<List<CategorySpend>> spentByCategory(List<BudgetDetails> budgets) {
+        Map<Long, List<CategorySpend>> byBudget = transactionService.fetchSpendByCategoryForBudgets(budgetIds(budgets));
+        return budgets.stream().map(b -> byBudget.getOrDefault(b.getBudgetId(), List.of())).toList();
+    }
+
+    @BatchMapping(typeName = "BudgetDetails")
+    public List<Long> transactionCount(List<BudgetDetails> budgets) {
+        Map<Long, Long> counts = transactionService.countTransactionsForBudgets(budgetIds(budgets));
+        return budgets.stream().map(b -> counts.getOrDefault(b.getBudgetId(), 0L)).toList();
+    }
+
+    private static Set<Long> budgetIds(List<BudgetDetails> budgets) {
+        Set<Long> ids = new LinkedHashSet<>();
+        for (BudgetDetails budget : budgets) {
+            ids.add(budget.getBudgetId());
+        }
+        log.debug("Batch loading {} budgets", ids.size());
+        return ids;
+    }
+}
@@ -11,6 +11,7 @@ import org.springframework.graphql.data.method.annotation.MutationMapping;
 import org.springframework.graphql.data.method.annotation.QueryMapping;
 import org.springframework.stereotype.Controller;
 
+import java.util.List;
 import java.util.Optional;
 
 @Controller
@@ -50,7 +51,7 @@ public class BudgetSetupResolver {
     public BudgetDetails fetchBudgetDetailsForExistingUser(@Argument("id") Long id) {
         log.info("Fetch budget details for the existing user: {}", id);
 
-        Optional<Budget> budgetInfo = budgetService.fetchActiveBudgetDetailsForUser(id);
+        Optional<Budget> budgetInfo = budgetService.readActiveBudgetDetailsForUser(id);
         
         if (budgetInfo.isPresent()) {
             return new BudgetDetails(budgetInfo.get().getBudgetId(), budgetInfo.get().getUserId(), budgetInfo.get().getStartDate(), budgetInfo.get().getEndDate(), budgetInfo.get().getBudgetAllocated(), budgetInfo.get().getBudgetRemaining(), budgetInfo.get().getIsActive());
@@ -59,6 +60,16 @@ public class BudgetSetupResolver {
         return null;
     }
 
+    @QueryMapping
+    public List<BudgetDetails> fetchBudgetsForUser(@Argument("userId") Long userId) {
+        log.info("Fetch all budget cycles for user: {}", userId);
+
+        return budgetService.fetchAllBudgetsForUser(userId).stream()
+                .map(b -> new BudgetDetails(b.getBudgetId(), b.getUserId(), b.getStartDate(), b.getEndDate(),
+                        b.getBudgetAllocated(), b.getBudgetRemaining(), b.getIsActive()))
+                .toList();
+    }
+
     @MutationMapping
     public BudgetDetails modifyBudgetForExistingCycle(@Argument("currentBudgetId") Long currentBudgetId, @Argument("additionalBudgetAllocated") Long additionalBudgetAllocated) {
         log.info("Modify budget for the existing cycle: {}", currentBudgetId);
@@ -0,0 +1,44 @@
+package com.example.demo.resolver;
+
+import com.example.demo.dto.InsightsJobDetails;
+import com.example.demo.model.InsightsJob;
+import com.example.demo.service.InsightsJobService;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.graphql.data.method.annotation.Argument;
+import org.springframework.graphql.data.method.annotation.MutationMapping;
+import org.springframework.graphql.data.method.annotation.QueryMapping;
+import org.springframework.stereotype.Controller;
+
+import java.time.Instant;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+
+// fetchInsights without holding the request open: submit a job, then poll it until it SUCCEEDED or FAILED.
+@Controller
+@Slf4j
+public class InsightsJobResolver {
+
+    @Autowired
+    InsightsJobService insightsJobService;
+
+    @MutationMapping
+    public Long submitInsightsJob(@Argument("budgetId") Long budgetId, @Argument("prompt") String prompt) {
+        log.info("Submitting insights job for the budget: {}", budgetId);
+        return insightsJobService.submit(budgetId, prompt).getJobId();
+    }
+
+    @QueryMapping
+    public InsightsJobDetails insightsJob(@Argument("id") Long id) {
+        return insightsJobService.findJob(id).map(InsightsJobResolver::toDetails).orElse(null);
+    }
+
+    private static InsightsJobDetails toDetails(InsightsJob job) {
+        return new InsightsJobDetails(job.getJobId(), job.getBudgetId(), job.getPrompt(), job.getStatus(), job.getInsights(),
+                job.getError(), job.getAttempts(), utc(job.getCreatedAt()), utc(job.getStartedAt()), utc(job.getFinishedAt()));
+    }
+
+    private static OffsetDateTime utc(Instant instant) {
+        return instant == null ? null : instant.atOffset(ZoneOffset.UTC);
+    }
+}
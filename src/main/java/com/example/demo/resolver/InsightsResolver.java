@@ -1,27 +1,25 @@
 package com.example.demo.resolver;
 
-import com.example.demo.dto.GeneratedSqlContext;
 import com.example.demo.service.InsightsGenerationService;
-import com.example.demo.service.SqlQueryExecutionService;
-import com.example.demo.service.TextToSqlGenerationService;
+import com.example.demo.service.InsightsPipelineService;
+import com.example.demo.service.Bulkhead;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.graphql.data.method.annotation.Argument;
 import org.springframework.graphql.data.method.annotation.QueryMapping;
+import org.springframework.graphql.data.method.annotation.SubscriptionMapping;
 import org.springframework.stereotype.Controller;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
 
-import java.util.List;
-import java.util.Map;
 
 @Controller
 @Slf4j
 public class InsightsResolver {
 
     @Autowired
-    TextToSqlGenerationService textToSqlGenerationService;
-
-    @Autowired
-    SqlQueryExecutionService sqlQueryExecutionService;
+    InsightsPipelineService insightsPipelineService;
 
     @Autowired
     InsightsGenerationService insightsGenerationService;
@@ -30,17 +28,21 @@ public class InsightsResolver {
     public String fetchInsights(@Argument("budgetId") Long budgetId, @Argument("prompt") String prompt) {
         log.info("Fetching insights for the budget: {}", budgetId);
 
-        // Generate SQL query with the help of SqlCoder gen ai model.
-        GeneratedSqlContext generatedSqlContext = textToSqlGenerationService.generateSql(budgetId, prompt);
-
-        // Execute the query and fetch the ResultSet.
-        List<Map<String, Object>> results = sqlQueryExecutionService.executeQuery(generatedSqlContext.getSqlQuery());
-        log.info("SQL query results: {}", results);
-        generatedSqlContext.setResultSet(results);
-        
-        // Generate insights with the help of DeepSeek gen ai model and return the insights to the user.
-        String insights = insightsGenerationService.generateInsights(generatedSqlContext);
-        log.info("Insights: {}", insights);
-        return insights;
+        // SqlCoder -> MySQL -> DeepSeek, inside one bulkhead slot.
+        return insightsPipelineService.generateInsights(budgetId, prompt);
+    }
+
+    // Same pipeline as fetchInsights, but the insight text is pushed to the client chunk by chunk
+    // as the DeepSeek model generates it.
+    @SubscriptionMapping
+    public Flux<String> fetchInsightsStream(@Argument("budgetId") Long budgetId, @Argument("prompt") String prompt) {
+        log.info("Streaming insights for the budget: {}", budgetId);
+
+        // The slot is held until the stream completes, fails or is cancelled by the client.
+        return Flux.using(insightsPipelineService::acquireSlot,
+                        permit -> Mono.fromCallable(() -> insightsPipelineService.generateSqlAndFetchResults(budgetId, prompt))
+                                .flatMapMany(insightsGenerationService::streamInsights),
+                        Bulkhead.Permit::close)
+                .subscribeOn(Schedulers.boundedElastic());
     }
-}
\ No newline at end of file
+}
@@ -5,6 +5,9 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.graphql.data.method.annotation.Argument;
 import org.springframework.graphql.data.method.annotation.MutationMapping;
 import org.springframework.graphql.data.method.annotation.QueryMapping;
+import com.example.demo.dto.TransactionConnection;
+import com.example.demo.dto.TransactionFilter;
+import com.example.demo.dto.TransactionImportResult;
 import com.example.demo.dto.TransactionInput;
 import com.example.demo.dto.TransactionOutput;
 import com.example.demo.model.Transaction;
@@ -42,6 +45,12 @@ public class TransactionResolver {
         }
     }
 
+    @MutationMapping
+    public TransactionImportResult addTransactions(@Argument("budgetId") Long budgetId, @Argument("transactionInputs") List<TransactionInput> transactionInputs) {
+        log.info("Adding {} transactions for budget: {}", transactionInputs.size(), budgetId);
+        return transactionService.importTransactions(transactionService.prepareImport(budgetId, transactionInputs.iterator()));
+    }
+
     @QueryMapping
     public List<TransactionOutput> fetchTransactions(@Argument("budgetId") Long budgetId) {
         log.info("Fetching transactions for budget: {}", budgetId);
@@ -54,4 +63,11 @@ public class TransactionResolver {
                 .collect(Collectors.toList());
     }
 
+    @QueryMapping
+    public TransactionConnection fetchTransactionPage(@Argument("budgetId") Long budgetId, @Argument("first") Integer first,
+                                                      @Argument("after") String after, @Argument("filter") TransactionFilter filter) {
+        log.info("Fetching transaction page for budget: {} (first={}, after={})", budgetId, first, after);
+        return transactionService.fetchTransactionPage(budgetId, first, after, filter);
+    }
+
 }
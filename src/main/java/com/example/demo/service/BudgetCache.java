@@ -0,0 +1,190 @@
+package com.example.demo.service;
+
+import com.example.demo.model.Budget;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+
+/**
+ * Bounded LRU cache of budget rows keyed on budget_id, so the per-request existence / owner / date checks
+ * do not go back to MySQL every time.
+ *
+ * BudgetService writes through it after saving a new budget; writes that change a budget with an UPDATE statement
+ * (transactions decrementing budget_remaining, top-ups, deactivation) evict the entry once their DB transaction commits.
+ * Entries are copies, so callers can modify the Budget they get back without touching the cached one.
+ * Rows loaded from the read replica are returned but not cached.
+ */
+@Component
+@Slf4j
+public class BudgetCache {
+
+    private final int maxEntries;
+
+    // Access ordered, so the eldest entry is always the least recently used one.
+    private final LinkedHashMap<Long, Budget> entries = new LinkedHashMap<>(16, 0.75f, true);
+
+    // Bumped on every eviction by a write. A load that started before it must not put its (possibly stale) row.
+    private long writeGeneration;
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong sizeEvictions = new AtomicLong();
+    private final AtomicLong invalidations = new AtomicLong();
+
+    private final ReadReplicaRouter readReplicaRouter;
+
+    public BudgetCache(@Value("${budget.cache.max-entries:10000}") int maxEntries, ReadReplicaRouter readReplicaRouter) {
+        this.maxEntries = maxEntries;
+        this.readReplicaRouter = readReplicaRouter;
+    }
+
+    // Cached budget, or the loader's result (cached when present).
+    Optional<Budget> get(Long budgetId, Function<Long, Optional<Budget>> loader) {
+        if (budgetId == null) {
+            return Optional.empty();
+        }
+        if (maxEntries <= 0) {
+            return loader.apply(budgetId);
+        }
+
+        long generation;
+        synchronized (entries) {
+            Budget cached = entries.get(budgetId);
+            if (cached != null) {
+                hits.incrementAndGet();
+                return Optional.of(copyOf(cached));
+            }
+            generation = writeGeneration;
+        }
+
+        misses.incrementAndGet();
+        Optional<Budget> loaded = loader.apply(budgetId);
+        if (TransactionSynchronizationManager.isCurrentTransactionReadOnly() && readReplicaRouter.isReplicaInUse()) {
+            // Read from the replica, which can lag behind a write that already evicted the entry; not cached.
+            return loaded;
+        }
+        loaded.ifPresent(budget -> {
+            synchronized (entries) {
+                if (generation == writeGeneration) {
+                    store(budget);
+                }
+            }
+        });
+        return loaded;
+    }
+
+    // Current write generation, taken before writing a row that is then handed to put.
+    long writeGeneration() {
+        synchronized (entries) {
+            return writeGeneration;
+        }
+    }
+
+    // Write-through after the budget row has been saved (after commit inside a DB transaction). Not stored when an
+    // eviction happened since generation was taken: the saved copy may already be older than the row in the database.
+    void put(Budget budget, long generation) {
+        if (maxEntries <= 0 || budget == null || budget.getBudgetId() == null) {
+            return;
+        }
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    storeIfCurrent(budget, generation);
+                }
+            });
+            return;
+        }
+        storeIfCurrent(budget, generation);
+    }
+
+    private void storeIfCurrent(Budget budget, long generation) {
+        synchronized (entries) {
+            if (generation != writeGeneration) {
+                entries.remove(budget.getBudgetId());
+                return;
+            }
+            writeGeneration++;
+            store(budget);
+        }
+    }
+
+    // Drops the entry now and, inside a DB transaction, again after commit: a read between the two
+    // still sees the old committed row and may have cached it.
+    void evictAfterCommit(Long budgetId) {
+        evict(budgetId);
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCompletion(int status) {
+                    evict(budgetId);
+                }
+            });
+        }
+    }
+
+    void evict(Long budgetId) {
+        if (budgetId == null) {
+            return;
+        }
+        synchronized (entries) {
+            writeGeneration++;
+            if (entries.remove(budgetId) != null) {
+                invalidations.incrementAndGet();
+            }
+        }
+    }
+
+    public long getHits() {
+        return hits.get();
+    }
+
+    public long getMisses() {
+        return misses.get();
+    }
+
+    public long getSizeEvictions() {
+        return sizeEvictions.get();
+    }
+
+    public long getInvalidations() {
+        return invalidations.get();
+    }
+
+    public double getHitRatio() {
+        long h = hits.get();
+        long total = h + misses.get();
+        return total == 0 ? 0.0 : (double) h / total;
+    }
+
+    public int size() {
+        synchronized (entries) {
+            return entries.size();
+        }
+    }
+
+    // Caller must hold the lock on entries.
+    private void store(Budget budget) {
+        entries.put(budget.getBudgetId(), copyOf(budget));
+        Iterator<Map.Entry<Long, Budget>> eldest = entries.entrySet().iterator();
+        while (entries.size() > maxEntries && eldest.hasNext()) {
+            eldest.next();
+            eldest.remove();
+            sizeEvictions.incrementAndGet();
+        }
+    }
+
+    private static Budget copyOf(Budget b) {
+        return new Budget(b.getBudgetId(), b.getUserId(), b.getStartDate(), b.getEndDate(),
+                b.getBudgetAllocated(), b.getBudgetRemaining(), b.getIsActive());
+    }
+}
@@ -0,0 +1,524 @@
+package com.example.demo.service;
+
+import com.example.demo.dto.GeneratedSqlContext;
+import com.example.demo.dto.QueryResult;
+import com.example.demo.enums.PromptIntent;
+import com.example.demo.model.Budget;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.io.Resource;
+import org.springframework.core.io.ResourceLoader;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.sql.Date;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * In-memory copy of each budget's transactions as primitive columns (amount, epoch day, category id), used to answer
+ * the template questions (a filtered sum, per category, per month) without a MySQL round trip.
+ *
+ * A budget is loaded the first time a template question is asked about it and kept current by the transactions saved
+ * afterwards. Budgets are evicted least recently used first once the columns take more than insights.columns.max-bytes.
+ *
+ * The templates read the category_month_spend rollup of the whole user, so a budget only answers for months in which
+ * none of the user's other budgets has spend; every other question runs the template SQL as before.
+ */
+@Component
+@Slf4j
+public class BudgetColumnStore {
+
+    // long amount + int epoch day + short category id.
+    static final int BYTES_PER_ROW = 14;
+
+    // Rough fixed cost of a loaded budget: the entry, the array headers and the other budgets' months.
+    static final int BYTES_PER_BUDGET = 256;
+
+    private static final int INITIAL_CAPACITY = 64;
+
+    // Load and write bookkeeping is kept per user (a write changes what the user's other budgets can answer),
+    // hashed into this many stripes.
+    private static final int STRIPES = 256;
+
+    // Same rows as the rollup: transactions without a date or category are not in it.
+    private static final String TRANSACTIONS_SQL =
+            "SELECT t.amount_spend, t.time_stamp, t.category FROM `transaction` t "
+                    + "WHERE t.budget_id = ? AND t.time_stamp IS NOT NULL AND t.category IS NOT NULL AND t.amount_spend IS NOT NULL";
+
+    private static final String OTHER_BUDGET_MONTHS_SQL =
+            "SELECT DISTINCT r.spend_year, r.spend_month FROM category_month_spend r WHERE r.user_id = ? AND r.budget_id <> ?";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final BudgetService budgetService;
+    private final long maxBytes;
+
+    // Access ordered, so the eldest entry is always the least recently used one.
+    private final LinkedHashMap<Long, Columns> entries = new LinkedHashMap<>(16, 0.75f, true);
+
+    // The same entries by user. Guarded by the lock on entries, like everything below.
+    private final Map<Long, List<Columns>> byUser = new HashMap<>();
+    private long bytes;
+
+    // Per stripe: writes registered but not completed yet, and writes completed. A load only keeps its columns when
+    // neither changed while it read, otherwise a write may be missing from them or about to be appended twice.
+    private final int[] writesInFlight = new int[STRIPES];
+    private final long[] writesCompleted = new long[STRIPES];
+
+    // Category ids: the ones from transaction-categories.txt first, then other names in order of appearance.
+    // Matched case-insensitively, like MySQL compares the category column. Guarded by the lock on categoryNames.
+    private final Map<String, Short> categoryIds = new HashMap<>();
+    private final List<String> categoryNames = new ArrayList<>();
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong fallbacks = new AtomicLong();
+    private final AtomicLong sizeEvictions = new AtomicLong();
+    private final AtomicLong invalidations = new AtomicLong();
+
+    // One budget's transactions. The arrays are filled up to size; appends and reads hold the lock on the instance.
+    private static final class Columns {
+        final long budgetId;
+        final long userId;
+        long[] amounts = new long[INITIAL_CAPACITY];
+        int[] epochDays = new int[INITIAL_CAPACITY];
+        short[] categories = new short[INITIAL_CAPACITY];
+        int size;
+
+        // year * 12 + month - 1 of every month with spend in the user's other budgets.
+        final Set<Integer> otherBudgetMonths = new HashSet<>();
+
+        Columns(long budgetId, long userId) {
+            this.budgetId = budgetId;
+            this.userId = userId;
+        }
+
+        void append(long amount, int epochDay, short category) {
+            if (size == amounts.length) {
+                int capacity = size * 2;
+                amounts = Arrays.copyOf(amounts, capacity);
+                epochDays = Arrays.copyOf(epochDays, capacity);
+                categories = Arrays.copyOf(categories, capacity);
+            }
+            amounts[size] = amount;
+            epochDays[size] = epochDay;
+            categories[size] = category;
+            size++;
+        }
+
+        long bytes() {
+            return BYTES_PER_BUDGET + (long) amounts.length * BYTES_PER_ROW;
+        }
+    }
+
+    public BudgetColumnStore(
+            JdbcTemplate jdbcTemplate,
+            BudgetService budgetService,
+            ResourceLoader resourceLoader,
+            @Value("${insights.columns.max-bytes:67108864}") long maxBytes
+    ) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.budgetService = budgetService;
+        this.maxBytes = maxBytes;
+
+        for (String category : readCategories(resourceLoader)) {
+            categoryId(category);
+        }
+    }
+
+    // The result the template SQL would return for ctx, or empty when it has to run: the SQL is not from a template,
+    // the budget is unknown, or the user's other budgets have spend in the months asked about.
+    Optional<QueryResult> answer(Long budgetId, GeneratedSqlContext ctx) {
+        if (maxBytes <= 0 || budgetId == null || ctx == null || !"template".equals(ctx.getSqlSource())
+                || ctx.getIntent() == null || ctx.getRequiredYear() == null) {
+            return Optional.empty();
+        }
+
+        Columns columns;
+        synchronized (entries) {
+            columns = entries.get(budgetId);
+        }
+        if (columns != null) {
+            hits.incrementAndGet();
+        } else {
+            misses.incrementAndGet();
+            columns = load(budgetId);
+            if (columns == null) {
+                fallbacks.incrementAndGet();
+                return Optional.empty();
+            }
+        }
+
+        QueryResult result = aggregate(columns, ctx);
+        if (result == null) {
+            fallbacks.incrementAndGet();
+            return Optional.empty();
+        }
+        return Optional.of(result);
+    }
+
+    // Appends a saved transaction to its budget's columns once the DB transaction commits.
+    void recordAfterCommit(Long budgetId, LocalDate date, String category, long amount) {
+        if (maxBytes <= 0 || budgetId == null || date == null || category == null) {
+            return;
+        }
+        Long userId = budgetService.fetchBudget(budgetId).map(Budget::getUserId).orElse(null);
+        if (userId == null) {
+            return;
+        }
+        afterCommit(userId, () -> append(budgetId, userId, date, category, amount));
+    }
+
+    // Drops the user's budgets once a bulk write to one of them commits; they are loaded again when next asked about.
+    void evictAfterCommit(Long userId) {
+        if (maxBytes <= 0 || userId == null) {
+            return;
+        }
+        afterCommit(userId, () -> evictUser(userId));
+    }
+
+    public long getHits() {
+        return hits.get();
+    }
+
+    public long getMisses() {
+        return misses.get();
+    }
+
+    public long getFallbacks() {
+        return fallbacks.get();
+    }
+
+    public long getSizeEvictions() {
+        return sizeEvictions.get();
+    }
+
+    public long getInvalidations() {
+        return invalidations.get();
+    }
+
+    public int size() {
+        synchronized (entries) {
+            return entries.size();
+        }
+    }
+
+    public long getBytes() {
+        synchronized (entries) {
+            return bytes;
+        }
+    }
+
+    private void afterCommit(Long userId, Runnable onCommit) {
+        int stripe = stripe(userId);
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            synchronized (entries) {
+                writesCompleted[stripe]++;
+                onCommit.run();
+            }
+            return;
+        }
+
+        synchronized (entries) {
+            writesInFlight[stripe]++;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCompletion(int status) {
+                synchronized (entries) {
+                    writesInFlight[stripe]--;
+                    writesCompleted[stripe]++;
+                    if (status == STATUS_COMMITTED) {
+                        onCommit.run();
+                    } else if (status == STATUS_UNKNOWN) {
+                        evictUser(userId);
+                    }
+                }
+            }
+        });
+    }
+
+    private Columns load(Long budgetId) {
+        Long userId = budgetService.fetchBudget(budgetId).map(Budget::getUserId).orElse(null);
+        if (userId == null) {
+            return null;
+        }
+
+        int stripe = stripe(userId);
+        boolean keep;
+        long completed;
+        synchronized (entries) {
+            keep = writesInFlight[stripe] == 0;
+            completed = writesCompleted[stripe];
+        }
+
+        Columns columns = new Columns(budgetId, userId);
+        jdbcTemplate.query(OTHER_BUDGET_MONTHS_SQL,
+                rs -> {
+                    columns.otherBudgetMonths.add(rs.getInt(1) * 12 + rs.getInt(2) - 1);
+                }, userId, budgetId);
+        boolean[] complete = {true};
+        jdbcTemplate.query(TRANSACTIONS_SQL,
+                rs -> {
+                    short category = categoryId(rs.getString(3));
+                    if (category < 0) {
+                        complete[0] = false;
+                        return;
+                    }
+                    Date date = rs.getDate(2);
+                    columns.append(rs.getLong(1), (int) date.toLocalDate().toEpochDay(), category);
+                }, budgetId);
+        if (!complete[0]) {
+            log.warn("Budget {} has more distinct categories than the column store can hold; answered by SQL", budgetId);
+            return null;
+        }
+
+        synchronized (entries) {
+            Columns resident = entries.get(budgetId);
+            if (resident != null) {
+                return resident;
+            }
+            if (keep && writesInFlight[stripe] == 0 && writesCompleted[stripe] == completed) {
+                entries.put(budgetId, columns);
+                byUser.computeIfAbsent(userId, id -> new ArrayList<>(2)).add(columns);
+                bytes += columns.bytes();
+                evictColdest();
+            }
+        }
+        log.info("Budget {} loaded into the column store: {} transactions", budgetId, columns.size);
+        return columns;
+    }
+
+    // Caller must hold the lock on entries.
+    private void append(long budgetId, long userId, LocalDate date, String category, long amount) {
+        List<Columns> resident = byUser.get(userId);
+        if (resident == null) {
+            return;
+        }
+        short categoryId = categoryId(category);
+        if (categoryId < 0) {
+            evictUser(userId);
+            return;
+        }
+        int month = date.getYear() * 12 + date.getMonthValue() - 1;
+        for (Columns columns : resident) {
+            synchronized (columns) {
+                if (columns.budgetId == budgetId) {
+                    long before = columns.bytes();
+                    columns.append(amount, (int) date.toEpochDay(), categoryId);
+                    bytes += columns.bytes() - before;
+                } else {
+                    columns.otherBudgetMonths.add(month);
+                }
+            }
+        }
+        evictColdest();
+    }
+
+    // Caller must hold the lock on entries.
+    private void evictUser(long userId) {
+        List<Columns> resident = byUser.remove(userId);
+        if (resident == null) {
+            return;
+        }
+        for (Columns columns : resident) {
+            entries.remove(columns.budgetId);
+            bytes -= columns.bytes();
+            invalidations.incrementAndGet();
+        }
+    }
+
+    // Caller must hold the lock on entries.
+    private void evictColdest() {
+        Iterator<Columns> eldest = entries.values().iterator();
+        while (bytes > maxBytes && eldest.hasNext()) {
+            Columns columns = eldest.next();
+            eldest.remove();
+            List<Columns> resident = byUser.get(columns.userId);
+            resident.remove(columns);
+            if (resident.isEmpty()) {
+                byUser.remove(columns.userId);
+            }
+            bytes -= columns.bytes();
+            sizeEvictions.incrementAndGet();
+        }
+    }
+
+    // Same rows, columns and order as the SQL from SqlTemplateCompiler for this question, or null if the user's
+    // other budgets have spend in the months it reads.
+    private QueryResult aggregate(Columns columns, GeneratedSqlContext ctx) {
+        int year = ctx.getRequiredYear();
+        List<Integer> months = ctx.getRequiredMonths() == null ? List.of()
+                : new ArrayList<>(new TreeSet<>(ctx.getRequiredMonths().stream().filter(Objects::nonNull).toList()));
+        List<String> requiredCategories = ctx.getRequiredCategories() == null ? List.of()
+                : ctx.getRequiredCategories().stream().filter(Objects::nonNull).toList();
+
+        boolean topCategory = ctx.getIntent() == PromptIntent.TOP_CATEGORY;
+        boolean groupByMonth = !topCategory && months.size() >= 2;
+        boolean groupByCategory = topCategory || requiredCategories.size() >= 2;
+
+        // Slot of every day of the year: the position of its month in months (0 when every month counts), -1 if not asked.
+        LocalDate firstDay = LocalDate.of(year, 1, 1);
+        int yearStart = (int) firstDay.toEpochDay();
+        byte[] slotOfDay = new byte[firstDay.lengthOfYear()];
+        Arrays.fill(slotOfDay, (byte) (months.isEmpty() ? 0 : -1));
+        for (int i = 0; i < months.size(); i++) {
+            LocalDate monthStart = LocalDate.of(year, months.get(i), 1);
+            int from = monthStart.getDayOfYear() - 1;
+            Arrays.fill(slotOfDay, from, from + monthStart.lengthOfMonth(), (byte) i);
+        }
+
+        int categoryCount;
+        String[] nameOf;
+        boolean[] allowed = null;
+        synchronized (categoryNames) {
+            categoryCount = categoryNames.size();
+            nameOf = categoryNames.toArray(new String[0]);
+            if (!requiredCategories.isEmpty()) {
+                allowed = new boolean[categoryCount];
+                for (String category : requiredCategories) {
+                    Short id = categoryIds.get(category.toLowerCase(Locale.ROOT));
+                    if (id != null) {
+                        allowed[id] = true;
+                    }
+                }
+            }
+        }
+
+        int monthSlots = groupByMonth ? months.size() : 1;
+        int categorySlots = groupByCategory ? categoryCount : 1;
+        long[] sums = new long[monthSlots * categorySlots];
+        boolean[] seen = new boolean[sums.length];
+
+        synchronized (columns) {
+            for (int month = 1; month <= 12; month++) {
+                if ((months.isEmpty() || months.contains(month)) && columns.otherBudgetMonths.contains(year * 12 + month - 1)) {
+                    return null;
+                }
+            }
+
+            long[] amounts = columns.amounts;
+            int[] epochDays = columns.epochDays;
+            short[] categories = columns.categories;
+            for (int row = 0; row < columns.size; row++) {
+                int day = epochDays[row] - yearStart;
+                if (day < 0 || day >= slotOfDay.length || slotOfDay[day] < 0) {
+                    continue;
+                }
+                short category = categories[row];
+                // A category first seen after the snapshot above cannot be one that was asked for.
+                if (category >= categoryCount || (allowed != null && !allowed[category])) {
+                    continue;
+                }
+                int group = (groupByMonth ? slotOfDay[day] : 0) * categorySlots + (groupByCategory ? category : 0);
+                sums[group] += amounts[row];
+                seen[group] = true;
+            }
+        }
+
+        // SUM without GROUP BY returns one row even when nothing matched, holding NULL.
+        if (!groupByMonth && !groupByCategory) {
+            Object total = seen[0] ? new long[]{sums[0]} : new Object[]{null};
+            return new QueryResult(List.of("total_spent"), List.of(total), 1, false);
+        }
+
+        List<int[]> groups = new ArrayList<>();
+        for (int monthSlot = 0; monthSlot < monthSlots; monthSlot++) {
+            for (int category = 0; category < categorySlots; category++) {
+                if (seen[monthSlot * categorySlots + category]) {
+                    groups.add(new int[]{monthSlot, category});
+                }
+            }
+        }
+        Comparator<int[]> byName = Comparator.comparing(group -> nameOf[group[1]], String.CASE_INSENSITIVE_ORDER);
+        if (groupByMonth && groupByCategory) {
+            groups.sort(Comparator.<int[]>comparingInt(group -> group[0]).thenComparing(byName));
+        } else if (groupByCategory) {
+            groups.sort(Comparator.<int[]>comparingLong(group -> -sums[group[0] * categorySlots + group[1]]).thenComparing(byName));
+        }
+        if (topCategory && groups.size() > 5) {
+            groups = groups.subList(0, 5);
+        }
+
+        int rows = groups.size();
+        long[] monthColumn = new long[rows];
+        Object[] categoryColumn = new Object[rows];
+        long[] totalColumn = new long[rows];
+        for (int row = 0; row < rows; row++) {
+            int[] group = groups.get(row);
+            monthColumn[row] = months.isEmpty() ? 0 : months.get(group[0]);
+            categoryColumn[row] = nameOf[group[1]];
+            totalColumn[row] = sums[group[0] * categorySlots + group[1]];
+        }
+
+        List<String> columnNames = new ArrayList<>(3);
+        List<Object> values = new ArrayList<>(3);
+        if (groupByMonth) {
+            columnNames.add("month");
+            values.add(monthColumn);
+        }
+        if (groupByCategory) {
+            columnNames.add("category");
+            values.add(categoryColumn);
+        }
+        columnNames.add("total_spent");
+        values.add(totalColumn);
+        return new QueryResult(columnNames, values, rows, false);
+    }
+
+    // Id of the category, assigned on first sight; -1 once the short ids run out.
+    private short categoryId(String category) {
+        String key = category.toLowerCase(Locale.ROOT);
+        synchronized (categoryNames) {
+            Short id = categoryIds.get(key);
+            if (id != null) {
+                return id;
+            }
+            if (categoryNames.size() > Short.MAX_VALUE) {
+                return -1;
+            }
+            short next = (short) categoryNames.size();
+            categoryIds.put(key, next);
+            categoryNames.add(category);
+            return next;
+        }
+    }
+
+    private static int stripe(long userId) {
+        return (Long.hashCode(userId) & 0x7fffffff) % STRIPES;
+    }
+
+    private static List<String> readCategories(ResourceLoader resourceLoader) {
+        Resource resource = resourceLoader.getResource("classpath:ai/transaction-categories.txt");
+        if (!resource.exists()) {
+            throw new IllegalStateException("Missing resource: classpath:ai/transaction-categories.txt");
+        }
+        try (InputStream is = resource.getInputStream()) {
+            return new String(is.readAllBytes(), StandardCharsets.UTF_8).lines()
+                    .map(String::trim)
+                    .filter(s -> !s.isBlank())
+                    .toList();
+        } catch (IOException e) {
+            throw new IllegalStateException("Failed to read classpath:ai/transaction-categories.txt", e);
+        }
+    }
+}
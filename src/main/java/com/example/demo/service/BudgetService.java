@@ -5,7 +5,9 @@ import com.example.demo.model.Budget;
 import com.example.demo.repository.BudgetRepository;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
 
+import java.util.List;
 import java.util.Optional;
 
 @Service
@@ -14,12 +16,15 @@ public class BudgetService {
     @Autowired
     BudgetRepository budgetRepository;
 
+    @Autowired
+    BudgetCache budgetCache;
+
     public Budget budgetSetup(BudgetSetupInput budgetSetupInput)
     {
        Budget newBudgetInfo = new Budget(null, budgetSetupInput.getUser_id(),
                                     budgetSetupInput.getStartDate(), budgetSetupInput.getEndDate(),
                                     budgetSetupInput.getBudgetAllocated(), budgetSetupInput.getBudgetRemaining(), true);
-       return budgetRepository.save(newBudgetInfo);
+       return saveAndCache(newBudgetInfo);
     }
 
     public Optional<Budget> fetchActiveBudgetDetailsForUser(Long userId)
@@ -27,37 +32,65 @@ public class BudgetService {
         return budgetRepository.findByUserIdAndIsActiveTrue(userId);
     }
 
+    // Same as fetchActiveBudgetDetailsForUser, for queries: may be served by the read replica.
+    // Mutations keep using fetchActiveBudgetDetailsForUser, which always reads the primary.
+    @Transactional(readOnly = true)
+    public Optional<Budget> readActiveBudgetDetailsForUser(Long userId)
+    {
+        return budgetRepository.findByUserIdAndIsActiveTrue(userId);
+    }
+
+    // Every budget cycle of the user, current one first.
+    @Transactional(readOnly = true)
+    public List<Budget> fetchAllBudgetsForUser(Long userId)
+    {
+        return budgetRepository.findByUserIdOrderByStartDateDesc(userId);
+    }
+
     public Optional<Budget> fetchBudgetDetailsForUserUsingBudgetId(Long budgetId)
     {
-        return budgetRepository.findByBudgetIdAndIsActiveTrue(budgetId);
+        return fetchBudget(budgetId).filter(budget -> Boolean.TRUE.equals(budget.getIsActive()));
     }
 
+    // Any budget cycle, active or not. Served from the budget cache when possible.
+    public Optional<Budget> fetchBudget(Long budgetId)
+    {
+        return budgetCache.get(budgetId, budgetRepository::findById);
+    }
+
+    @Transactional
     public Budget deactivateCurrentBudgetAndCreateNewBudget(Budget currentBudget, BudgetSetupInput budgetSetUpInput) {
         // Deactivate the current budget
-        currentBudget.setIsActive(false);
-        budgetRepository.save(currentBudget);
+        budgetRepository.deactivateBudget(currentBudget.getBudgetId());
+        budgetCache.evictAfterCommit(currentBudget.getBudgetId());
 
         // Create a new budget
         return budgetSetup(budgetSetUpInput);
     }
 
+    // A single UPDATE adds to both amounts, so transactions decrementing budget_remaining at the same time are kept.
+    @Transactional
     public Budget modifyBudgetForExistingCycle(Long currentBudgetId, Long additionalBudgetAllocated) {
 
         if(additionalBudgetAllocated <= 0) {
             throw new RuntimeException("Additional budget allocated must be positive");
         }
 
-        Budget budget = fetchBudgetDetailsForUserUsingBudgetId(currentBudgetId).orElseThrow(() -> new RuntimeException("Budget not found for the user"));
-        
-        Long newBudgetAllocated = budget.getBudgetAllocated() + additionalBudgetAllocated;
-        budget.setBudgetAllocated(newBudgetAllocated);
-
-        Long newBudgetRemaining = additionalBudgetAllocated + budget.getBudgetRemaining();
-        budget.setBudgetRemaining(newBudgetRemaining);
+        if (budgetRepository.incrementBudgetAllocated(currentBudgetId, additionalBudgetAllocated) == 0) {
+            throw new RuntimeException("Budget not found for the user");
+        }
+        budgetCache.evictAfterCommit(currentBudgetId);
 
-        return budgetRepository.save(budget);
+        return budgetRepository.findById(currentBudgetId).orElseThrow(() -> new RuntimeException("Budget not found for the user"));
     }
 
-
-
+    // Writes the saved row through to the budget cache, so the next read does not go to the database.
+    // The cache skips it if another write to a budget happened since the save started.
+    private Budget saveAndCache(Budget budget)
+    {
+        long generation = budgetCache.writeGeneration();
+        Budget saved = budgetRepository.save(budget);
+        budgetCache.put(saved, generation);
+        return saved;
+    }
 }
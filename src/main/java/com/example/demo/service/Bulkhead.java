@@ -0,0 +1,125 @@
+package com.example.demo.service;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * Concurrency limit with a bounded wait queue.
+ *
+ * At most maxConcurrent callers run at once and at most queueCapacity callers wait for a slot, in arrival order.
+ * Anything beyond that is rejected straight away with {@link BulkheadFullException} instead of piling up behind
+ * slow work. Callers block while they wait, which is cheap on virtual threads.
+ */
+@Slf4j
+public class Bulkhead {
+
+    private final String name;
+    private final String slot;
+    private final int maxConcurrent;
+    private final int queueCapacity;
+    private final long maxWaitMillis;
+
+    private final Semaphore permits;
+    private final AtomicInteger waiting = new AtomicInteger();
+
+    private final AtomicLong accepted = new AtomicLong();
+    private final AtomicLong rejected = new AtomicLong();
+
+    // One slot of the bulkhead; closing it more than once releases it only once.
+    public final class Permit implements AutoCloseable {
+        private final AtomicBoolean released = new AtomicBoolean();
+
+        private Permit() {}
+
+        @Override
+        public void close() {
+            if (released.compareAndSet(false, true)) {
+                permits.release();
+            }
+        }
+    }
+
+    // name is what is rejected ("Insight request"), slot what it waits for ("insight slot"); both only go into messages.
+    public Bulkhead(String name, String slot, int maxConcurrent, int queueCapacity, long maxWaitMillis) {
+        if (maxConcurrent < 1 || queueCapacity < 0) {
+            throw new IllegalArgumentException(name + " bulkhead needs max-concurrent >= 1 and queue-capacity >= 0");
+        }
+        this.name = name;
+        this.slot = slot;
+        this.maxConcurrent = maxConcurrent;
+        this.queueCapacity = queueCapacity;
+        this.maxWaitMillis = maxWaitMillis;
+        // Fair, so queued callers get slots in arrival order.
+        this.permits = new Semaphore(maxConcurrent, true);
+    }
+
+    // Runs the work inside a slot.
+    public <T> T call(Supplier<T> work) {
+        try (Permit ignored = acquire()) {
+            return work.get();
+        }
+    }
+
+    // Takes a slot, waiting in the queue if all are busy. The caller must close the permit.
+    public Permit acquire() {
+        // The untimed tryAcquire() would barge ahead of queued callers; a zero timeout honours the fair ordering.
+        if (tryAcquireNow()) {
+            accepted.incrementAndGet();
+            return new Permit();
+        }
+
+        if (waiting.incrementAndGet() > queueCapacity) {
+            waiting.decrementAndGet();
+            throw reject("all " + maxConcurrent + " " + slot + "s are busy and " + queueCapacity + " requests are already waiting");
+        }
+        try {
+            if (!permits.tryAcquire(maxWaitMillis, TimeUnit.MILLISECONDS)) {
+                throw reject("no " + slot + " became free within " + maxWaitMillis + " ms");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw reject("interrupted while waiting for a " + slot);
+        } finally {
+            waiting.decrementAndGet();
+        }
+        accepted.incrementAndGet();
+        return new Permit();
+    }
+
+    private boolean tryAcquireNow() {
+        try {
+            return permits.tryAcquire(0, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw reject("interrupted while waiting for a " + slot);
+        }
+    }
+
+    public int getActive() {
+        return maxConcurrent - permits.availablePermits();
+    }
+
+    public int getWaiting() {
+        return waiting.get();
+    }
+
+    public long getAccepted() {
+        return accepted.get();
+    }
+
+    public long getRejected() {
+        return rejected.get();
+    }
+
+    private BulkheadFullException reject(String reason) {
+        rejected.incrementAndGet();
+        log.warn("{} rejected: {}. active={}, waiting={}", name, reason, getActive(), getWaiting());
+        return new BulkheadFullException("Insights are busy, try again shortly (" + reason + ")");
+    }
+}
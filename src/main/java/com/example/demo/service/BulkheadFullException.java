@@ -0,0 +1,8 @@
+package com.example.demo.service;
+
+// Thrown by a Bulkhead when its wait queue is full, or a queued caller did not get a slot within max-wait-ms.
+public class BulkheadFullException extends RuntimeException {
+    public BulkheadFullException(String message) {
+        super(message);
+    }
+}
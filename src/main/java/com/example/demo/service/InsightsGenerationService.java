@@ -2,66 +2,78 @@ package com.example.demo.service;
 
 import com.example.demo.constants.Constants;
 import com.example.demo.dto.GeneratedSqlContext;
-import com.fasterxml.jackson.databind.JsonNode;
-import com.fasterxml.jackson.databind.ObjectMapper;
+import com.example.demo.dto.QueryResult;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.core.io.Resource;
 import org.springframework.core.io.ResourceLoader;
-import org.springframework.http.HttpEntity;
-import org.springframework.http.HttpHeaders;
-import org.springframework.http.MediaType;
-import org.springframework.http.client.SimpleClientHttpRequestFactory;
 import org.springframework.stereotype.Service;
-import org.springframework.web.client.RestClientException;
-import org.springframework.web.client.RestTemplate;
+import reactor.core.publisher.Flux;
 
 import java.io.BufferedReader;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.nio.charset.StandardCharsets;
-import java.time.Duration;
 import java.util.Map;
 
 @Service
 @Slf4j
 public class InsightsGenerationService {
+    // Temperature 0 ensures deterministic output.
+    // Num_predict 512 ensures the output is not too long.
+    private static final Map<String, Object> DEEPSEEK_OPTIONS = Map.of(
+            "temperature", 0,
+            "num_predict", 512
+    );
+
     private final ResourceLoader resourceLoader;
-    private final RestTemplate restTemplate;
-    private final ObjectMapper objectMapper;
+    private final OllamaClient ollamaClient;
+    private final InsightsMetrics insightsMetrics;
     private final String deepseekModel;
-    private final String ollamaGenerateUrl;
+    // Results with more rows than this are summarized locally before they go into the prompt.
+    private final int summarizeAboveRows;
+    private final int summaryTopRows;
     private String cachedInsightsGeneratorRules;
 
     @Autowired
     public InsightsGenerationService(
             ResourceLoader resourceLoader,
-            ObjectMapper objectMapper,
+            OllamaClient ollamaClient,
+            InsightsMetrics insightsMetrics,
             @Value("${ollama.deepseek.model:deepseek-r1:7b}") String deepseekModel,
-            @Value("${ollama.generate.url:http://localhost:11434/api/generate}") String ollamaGenerateUrl
+            @Value("${insights.prompt.summarize-above-rows:25}") int summarizeAboveRows,
+            @Value("${insights.prompt.top-rows:10}") int summaryTopRows
     ) {
         this.resourceLoader = resourceLoader;
-        this.objectMapper = objectMapper;
+        this.ollamaClient = ollamaClient;
+        this.insightsMetrics = insightsMetrics;
         this.deepseekModel = deepseekModel;
-        this.ollamaGenerateUrl = ollamaGenerateUrl;
-
-        SimpleClientHttpRequestFactory requestFactory = new SimpleClientHttpRequestFactory();
-        requestFactory.setConnectTimeout((int) Duration.ofSeconds(5).toMillis());
-        requestFactory.setReadTimeout((int) Duration.ofSeconds(60).toMillis());
-        this.restTemplate = new RestTemplate(requestFactory);
+        this.summarizeAboveRows = summarizeAboveRows;
+        this.summaryTopRows = summaryTopRows;
 
         ensureInsightsGeneratorRulesLoaded();
     }
 
     public String generateInsights(GeneratedSqlContext generatedSqlContext) {
         ensureInsightsGeneratorRulesLoaded();
-        String finalPrompt = buildInsightsPrompt(generatedSqlContext);
-        String insights = generateInsightsWithDeepseek(finalPrompt);
+        String finalPrompt = insightsMetrics.stage("prompt.build", () -> buildInsightsPrompt(generatedSqlContext));
+        String insights = insightsMetrics.stage("insights.generate", () -> generateInsightsWithDeepseek(finalPrompt));
         return insights;
     }
 
+    // Streams the insight text as the DeepSeek model produces it, instead of waiting for the full response.
+    public Flux<String> streamInsights(GeneratedSqlContext generatedSqlContext) {
+        ensureInsightsGeneratorRulesLoaded();
+        String finalPrompt = insightsMetrics.stage("prompt.build", () -> buildInsightsPrompt(generatedSqlContext));
+
+        log.info("Streaming from Ollama DeepSeek (model={}). Prompt chars={}", deepseekModel, finalPrompt.length());
+        insightsMetrics.recordPromptSize(InsightsMetrics.DEEPSEEK, finalPrompt);
+        return insightsMetrics.stage("insights.generate", ollamaClient.generateStream(deepseekModel, finalPrompt, DEEPSEEK_OPTIONS)
+                .switchIfEmpty(Flux.error(() -> new RuntimeException("DeepSeek failed to produce insights. Model returned empty response"))));
+    }
+
     // Method to build the prompt for the insights model.
     private String buildInsightsPrompt(GeneratedSqlContext generatedSqlContext) {
         if (generatedSqlContext == null) {
@@ -76,12 +88,7 @@ public class InsightsGenerationService {
             throw new IllegalArgumentException("resultSet is null");
         }
 
-        String resultSetJson;
-        try {
-            resultSetJson = objectMapper.writeValueAsString(generatedSqlContext.getResultSet());
-        } catch (Exception e) {
-            throw new RuntimeException("Unable to serialize resultSet to JSON", e);
-        }
+        QueryResult resultSet = generatedSqlContext.getResultSet();
 
         StringBuilder sb = new StringBuilder();
         sb.append("### Instruction\n").append(cachedInsightsGeneratorRules).append('\n');
@@ -101,7 +108,11 @@ public class InsightsGenerationService {
             sb.append("requiredYear: ").append(generatedSqlContext.getRequiredYear()).append('\n');
         }
 
-        sb.append("resultSet: ").append(resultSetJson).append('\n');
+        sb.append("resultSet:\n").append(ResultSetEncoder.encode(resultSet, summarizeAboveRows, summaryTopRows));
+        if (resultSet.isTruncated()) {
+            sb.append("note: The resultSet holds only the first ").append(resultSet.getRowCount())
+                    .append(" rows of a larger result. Do not present sums or counts over it as complete totals.\n");
+        }
         sb.append("note: If the resultSet does not include a 'month' column, treat the totals as aggregated across the requested period (even if the prompt mentions multiple months)—do not assume data is missing.\n");
 
         sb.append("\n### Response\n");
@@ -110,66 +121,49 @@ public class InsightsGenerationService {
 
     // Method to generate insights with the help of the DeepSeek model.
     private String generateInsightsWithDeepseek(String finalPrompt) {
-        String url = ollamaGenerateUrl;
         String promptToSend = finalPrompt;
         String lastModelText = "";
         String lastFailureReason = "";
+        int attempts = 0;
+        boolean succeeded = false;
 
-        for (int attempt = 1; attempt <= Constants.OLLAMA_MAX_RETRIES; attempt++) {
-            try {
-                // Setting the options for the request.
-                // Temperature 0 ensures deterministic output.
-                // Num_predict 512 ensures the output is not too long.
-                    Map<String, Object> options = Map.of(
-                            "temperature", 0,
-                            "num_predict", 512
-                    );
-                OllamaGenerateRequest request = new OllamaGenerateRequest(deepseekModel, promptToSend, false, options);
-
-                HttpHeaders headers = new HttpHeaders();
-                headers.setContentType(MediaType.APPLICATION_JSON);
-                HttpEntity<OllamaGenerateRequest> entity = new HttpEntity<>(request, headers);
-
-                log.info("Calling Ollama DeepSeek (model={}). Attempt={}. Prompt chars={}", deepseekModel, attempt,
-                        promptToSend == null ? 0 : promptToSend.length());
-
-                String rawJson = restTemplate.postForObject(url, entity, String.class);
-                if (rawJson == null || rawJson.isBlank()) {
-                    lastFailureReason = "Empty HTTP response body from Ollama";
-                } else {
-                    JsonNode root = objectMapper.readTree(rawJson);
-                    JsonNode responseText = root.get("response");
-                    String modelText = (responseText == null || responseText.isNull()) ? "" : responseText.asText("");
+        try {
+            for (int attempt = 1; attempt <= Constants.OLLAMA_MAX_RETRIES; attempt++) {
+                attempts = attempt;
+                try {
+                    log.info("Calling Ollama DeepSeek (model={}). Attempt={}. Prompt chars={}", deepseekModel, attempt,
+                            promptToSend == null ? 0 : promptToSend.length());
+                    insightsMetrics.recordPromptSize(InsightsMetrics.DEEPSEEK, promptToSend);
+
+                    String prompt = promptToSend;
+                    String modelText = insightsMetrics.modelAttempt(InsightsMetrics.DEEPSEEK, attempt,
+                            () -> ollamaClient.generate(deepseekModel, prompt, DEEPSEEK_OPTIONS));
                     lastModelText = modelText;
 
                     String cleaned = modelText.trim();
                     if (!cleaned.isEmpty()) {
+                        succeeded = true;
                         return cleaned;
                     }
                     lastFailureReason = "Model returned empty response";
+                } catch (OllamaClient.OllamaUnavailableException ex) {
+                    throw ex;
+                } catch (Exception ex) {
+                    lastFailureReason = "Failed to parse Ollama response: " + ex.getMessage();
                 }
-            } catch (RestClientException ex) {
-                throw new RuntimeException("Failed to call Ollama at " + url + ". Is Ollama running?", ex);
-            } catch (Exception ex) {
-                lastFailureReason = "Failed to parse Ollama response: " + ex.getMessage();
-            }
 
-            // Retry hint: keep rules identical, just re-nudge output format.
-            promptToSend = finalPrompt
-                    + "\n\nIMPORTANT: Return ONLY the final insight text (3–4 sentences). No markdown. No SQL. No raw rows. End with a complete sentence, even if it escapes the capacity limit.\n";
+                // Retry hint: keep rules identical, just re-nudge output format.
+                promptToSend = finalPrompt
+                        + "\n\nIMPORTANT: Return ONLY the final insight text (3–4 sentences). No markdown. No SQL. No raw rows. End with a complete sentence, even if it escapes the capacity limit.\n";
+            }
+        } finally {
+            insightsMetrics.recordAttempts(InsightsMetrics.DEEPSEEK, attempts, succeeded);
         }
 
         throw new RuntimeException("DeepSeek failed to produce insights after retries. Last failure: "
                 + lastFailureReason + ". Last output: " + (lastModelText == null ? "<null>" : lastModelText));
     }
 
-    private record OllamaGenerateRequest(
-            String model,
-            String prompt,
-            boolean stream,
-            Map<String, Object> options
-    ) {}
-
     private void ensureInsightsGeneratorRulesLoaded() {
         if (cachedInsightsGeneratorRules != null) {
             return;
@@ -0,0 +1,132 @@
+package com.example.demo.service;
+
+import com.example.demo.enums.InsightsJobStatus;
+import com.example.demo.model.InsightsJob;
+import com.example.demo.repository.InsightsJobRepository;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Collection;
+import java.util.Optional;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+// The insights_job table as a queue. Submitting only writes a QUEUED row; InsightsJobWorker claims and runs it.
+// Each state change is its own short DB transaction, never one held open across the model calls.
+@Service
+@Slf4j
+public class InsightsJobService {
+
+    // Longest error text kept on a failed job (model output can be quoted in it).
+    private static final int MAX_ERROR_LENGTH = 4000;
+
+    @Autowired
+    InsightsJobRepository insightsJobRepository;
+
+    @Autowired
+    BudgetService budgetService;
+
+    // Wakes an idle worker of this instance as soon as a job is submitted, instead of at its next poll.
+    private final Semaphore submitted = new Semaphore(0);
+
+    public InsightsJob submit(Long budgetId, String prompt) {
+        if (budgetId == null) {
+            throw new RuntimeException("budgetId is required");
+        }
+        if (prompt == null || prompt.isBlank()) {
+            throw new RuntimeException("prompt is required");
+        }
+        if (budgetService.fetchBudget(budgetId).isEmpty()) {
+            throw new RuntimeException("Budget not found: " + budgetId);
+        }
+
+        InsightsJob job = insightsJobRepository.save(new InsightsJob(null, budgetId, prompt.strip(), InsightsJobStatus.QUEUED,
+                null, null, 0, Instant.now(), null, null, null));
+        log.info("Queued insights job {} for the budget: {}", job.getJobId(), budgetId);
+        submitted.release();
+        return job;
+    }
+
+    public Optional<InsightsJob> findJob(Long jobId) {
+        return insightsJobRepository.findById(jobId);
+    }
+
+    // Oldest queued job, not yet claimed.
+    Optional<InsightsJob> nextQueued() {
+        return insightsJobRepository.findFirstByStatusOrderByJobIdAsc(InsightsJobStatus.QUEUED);
+    }
+
+    // Claims the job for lease; false if another worker got it first. On success the job object reflects the claim.
+    @Transactional
+    public boolean claim(InsightsJob job, Duration lease) {
+        Instant now = Instant.now();
+        if (insightsJobRepository.claim(job.getJobId(), now, now.plus(lease)) != 1) {
+            return false;
+        }
+        job.setStatus(InsightsJobStatus.RUNNING);
+        job.setAttempts(job.getAttempts() + 1);
+        job.setStartedAt(now);
+        job.setLeaseExpiresAt(now.plus(lease));
+        return true;
+    }
+
+    @Transactional
+    public void succeed(InsightsJob job, String insights) {
+        finish(job, InsightsJobStatus.SUCCEEDED, insights, null);
+    }
+
+    @Transactional
+    public void fail(InsightsJob job, String error) {
+        String message = error == null ? "Unknown error" : error;
+        finish(job, InsightsJobStatus.FAILED, null, message.length() > MAX_ERROR_LENGTH ? message.substring(0, MAX_ERROR_LENGTH) : message);
+    }
+
+    // Back to the queue; countAttempt=false gives the attempt back (the job never really ran).
+    @Transactional
+    public void requeue(InsightsJob job, boolean countAttempt) {
+        int attempts = countAttempt ? job.getAttempts() : job.getAttempts() - 1;
+        if (insightsJobRepository.requeue(job.getJobId(), job.getAttempts(), attempts) == 1) {
+            log.info("Insights job {} back in the queue (attempts={})", job.getJobId(), attempts);
+        }
+    }
+
+    @Transactional
+    public void renewLeases(Collection<Long> jobIds, Duration lease) {
+        if (!jobIds.isEmpty()) {
+            insightsJobRepository.renewLeases(jobIds, Instant.now().plus(lease));
+        }
+    }
+
+    // Jobs left RUNNING by a worker that stopped (restart, crash, lost instance): retried, or failed after maxAttempts.
+    @Transactional
+    public void recoverAbandonedJobs(int maxAttempts) {
+        Instant now = Instant.now();
+        int requeued = insightsJobRepository.requeueExpired(now, maxAttempts);
+        int failed = insightsJobRepository.failExpired(now, maxAttempts);
+        if (requeued > 0 || failed > 0) {
+            log.warn("Recovered abandoned insights jobs: {} queued again, {} failed after {} attempts", requeued, failed, maxAttempts);
+            submitted.release(requeued);
+        }
+    }
+
+    // Waits until a job is submitted on this instance, or the timeout passes.
+    void awaitSubmission(long timeoutMillis) throws InterruptedException {
+        submitted.tryAcquire(timeoutMillis, TimeUnit.MILLISECONDS);
+    }
+
+    private void finish(InsightsJob job, InsightsJobStatus status, String insights, String error) {
+        Instant now = Instant.now();
+        if (insightsJobRepository.finish(job.getJobId(), job.getAttempts(), status, insights, error, now) == 1) {
+            job.setStatus(status);
+            job.setFinishedAt(now);
+            log.info("Insights job {} {} after {} attempt(s)", job.getJobId(), status, job.getAttempts());
+        } else {
+            // The lease ran out while the job was running and another worker took it over; its result wins.
+            log.warn("Insights job {} attempt {} finished after losing its lease; result dropped", job.getJobId(), job.getAttempts());
+        }
+    }
+}
@@ -0,0 +1,204 @@
+package com.example.demo.service;
+
+import com.example.demo.model.InsightsJob;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Runs queued insights jobs through the same pipeline as fetchInsights.
+ *
+ * insights.jobs.workers loops (virtual threads) claim the oldest QUEUED job, run it and store the insight or the error.
+ * While a job runs its lease is renewed every lease/3; a job whose lease runs out (the process died or restarted)
+ * is queued again, at most insights.jobs.max-attempts times. On a normal shutdown running jobs get a few seconds to
+ * finish and are otherwise handed back, so the next start picks them up without waiting for the lease.
+ */
+@Component
+@Slf4j
+public class InsightsJobWorker {
+
+    // How long stop() lets running jobs finish before handing them back.
+    private static final long SHUTDOWN_GRACE_MILLIS = 5_000;
+
+    private final InsightsJobService insightsJobService;
+    private final InsightsPipelineService insightsPipelineService;
+    private final InsightsMetrics insightsMetrics;
+    private final int workers;
+    private final long pollIntervalMillis;
+    private final Duration lease;
+    private final int maxAttempts;
+
+    // Jobs this instance is running, for lease renewal and the hand-back on shutdown.
+    private final Map<Long, InsightsJob> runningJobs = new ConcurrentHashMap<>();
+    private final List<Thread> workerThreads = new ArrayList<>();
+    private ScheduledExecutorService leaseKeeper;
+    private volatile boolean running;
+
+    public InsightsJobWorker(
+            InsightsJobService insightsJobService,
+            InsightsPipelineService insightsPipelineService,
+            InsightsMetrics insightsMetrics,
+            @Value("${insights.jobs.workers:2}") int workers,
+            @Value("${insights.jobs.poll-interval-ms:1000}") long pollIntervalMillis,
+            @Value("${insights.jobs.lease-seconds:60}") long leaseSeconds,
+            @Value("${insights.jobs.max-attempts:3}") int maxAttempts
+    ) {
+        this.insightsJobService = insightsJobService;
+        this.insightsPipelineService = insightsPipelineService;
+        this.insightsMetrics = insightsMetrics;
+        this.workers = workers;
+        this.pollIntervalMillis = pollIntervalMillis;
+        this.lease = Duration.ofSeconds(Math.max(3, leaseSeconds));
+        this.maxAttempts = Math.max(1, maxAttempts);
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public synchronized void start() {
+        if (workers <= 0) {
+            log.info("Insights job workers disabled (insights.jobs.workers={}); jobs are only queued", workers);
+            return;
+        }
+        running = true;
+
+        // Renews our leases and takes back jobs abandoned by a previous run; the first pass runs right away.
+        leaseKeeper = Executors.newSingleThreadScheduledExecutor(Thread.ofPlatform().name("insights-job-leases").daemon().factory());
+        long period = lease.toMillis() / 3;
+        leaseKeeper.scheduleAtFixedRate(this::maintainLeases, 0, period, TimeUnit.MILLISECONDS);
+
+        for (int i = 0; i < workers; i++) {
+            workerThreads.add(Thread.ofVirtual().name("insights-job-worker-" + i).start(this::workLoop));
+        }
+        log.info("Started {} insights job workers (lease {} s, max attempts {})", workers, lease.toSeconds(), maxAttempts);
+    }
+
+    @PreDestroy
+    public synchronized void stop() {
+        if (!running) {
+            return;
+        }
+        running = false;
+        leaseKeeper.shutdownNow();
+        workerThreads.forEach(Thread::interrupt);
+        long deadline = System.currentTimeMillis() + SHUTDOWN_GRACE_MILLIS;
+        for (Thread worker : workerThreads) {
+            try {
+                worker.join(Math.max(1, deadline - System.currentTimeMillis()));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            }
+        }
+        // Whatever is still marked running did not finish; give it back without counting the attempt.
+        for (InsightsJob job : runningJobs.values()) {
+            insightsJobService.requeue(job, false);
+        }
+        runningJobs.clear();
+    }
+
+    private void workLoop() {
+        while (running) {
+            try {
+                Optional<InsightsJob> job = claimNext();
+                if (job.isPresent()) {
+                    run(job.get());
+                } else {
+                    insightsJobService.awaitSubmission(pollIntervalMillis);
+                }
+            } catch (InterruptedException e) {
+                return;
+            } catch (RuntimeException e) {
+                // Database unavailable and the like: keep the worker alive and try again after a pause.
+                log.error("Insights job worker failed to poll the queue", e);
+                if (!pause()) return;
+            }
+        }
+    }
+
+    private Optional<InsightsJob> claimNext() {
+        while (running) {
+            Optional<InsightsJob> next = insightsJobService.nextQueued();
+            if (next.isEmpty()) {
+                return Optional.empty();
+            }
+            if (insightsJobService.claim(next.get(), lease)) {
+                return next;
+            }
+            // Another worker claimed it first; try the next one.
+        }
+        return Optional.empty();
+    }
+
+    private void run(InsightsJob job) {
+        runningJobs.put(job.getJobId(), job);
+        if (job.getAttempts() == 1) {
+            insightsMetrics.recordJobQueued(Duration.between(job.getCreatedAt(), job.getStartedAt()));
+        }
+        log.info("Running insights job {} (attempt {}) for the budget: {}", job.getJobId(), job.getAttempts(), job.getBudgetId());
+        try {
+            String insights = insightsMetrics.job(job.getJobId(),
+                    () -> insightsPipelineService.generateInsights(job.getBudgetId(), job.getPrompt()));
+            insightsJobService.succeed(job, insights);
+            insightsMetrics.recordJobOutcome("succeeded");
+        } catch (BulkheadFullException e) {
+            // Interactive requests hold every slot; not the job's fault, so the attempt is not counted.
+            insightsJobService.requeue(job, false);
+            insightsMetrics.recordJobOutcome("released");
+            pause();
+        } catch (OllamaClient.OllamaUnavailableException e) {
+            // Ollama is down or restarting: worth another try while attempts are left.
+            if (job.getAttempts() < maxAttempts) {
+                insightsJobService.requeue(job, true);
+                insightsMetrics.recordJobOutcome("retried");
+                pause();
+            } else {
+                insightsJobService.fail(job, e.getMessage());
+                insightsMetrics.recordJobOutcome("failed");
+            }
+        } catch (RuntimeException e) {
+            if (!running) {
+                // Interrupted by shutdown; stop() hands the job back.
+                return;
+            }
+            log.warn("Insights job {} failed: {}", job.getJobId(), e.getMessage());
+            insightsJobService.fail(job, e.getMessage());
+            insightsMetrics.recordJobOutcome("failed");
+        } finally {
+            if (running) {
+                runningJobs.remove(job.getJobId());
+            }
+        }
+    }
+
+    private void maintainLeases() {
+        try {
+            insightsJobService.renewLeases(runningJobs.keySet(), lease);
+            insightsJobService.recoverAbandonedJobs(maxAttempts);
+        } catch (RuntimeException e) {
+            log.error("Failed to renew insights job leases", e);
+        }
+    }
+
+    // Sleeps one poll interval; false if the worker was interrupted meanwhile.
+    private boolean pause() {
+        try {
+            Thread.sleep(pollIntervalMillis);
+            return true;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+}
@@ -0,0 +1,152 @@
+package com.example.demo.service;
+
+import com.example.demo.dto.QueryResult;
+import com.example.demo.enums.SqlRejectReason;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.observation.Observation;
+import io.micrometer.observation.ObservationRegistry;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Flux;
+
+import java.time.Duration;
+import java.util.function.Supplier;
+
+/**
+ * Stage timings and counts of the insight pipeline (prompt parse -> SQL -> MySQL -> DeepSeek).
+ *
+ * Stages and model attempts are Observations: each one is a Prometheus timer and, with tracing on, a span
+ * under the graphql.datafetcher span of fetchInsights. A failed stage is tagged with the exception class.
+ * Everything is named insights.* so management.metrics.distribution settings can target the whole pipeline.
+ */
+@Component
+public class InsightsMetrics {
+
+    public static final String SQLCODER = "sqlcoder";
+    public static final String DEEPSEEK = "deepseek";
+
+    private final MeterRegistry meterRegistry;
+    private final ObservationRegistry observationRegistry;
+
+    public InsightsMetrics(MeterRegistry meterRegistry, ObservationRegistry observationRegistry) {
+        this.meterRegistry = meterRegistry;
+        this.observationRegistry = observationRegistry;
+    }
+
+    // insights.stage{stage=...}: prompt.parse, sql.template, sql.cache, sql.generate, sql.execute, insights.generate, ...
+    public <T> T stage(String stage, Supplier<T> work) {
+        return stageObservation(stage).observe(work);
+    }
+
+    // Same as above for a streamed stage: timed from subscription until the stream completes, fails or is cancelled.
+    public <T> Flux<T> stage(String stage, Flux<T> stream) {
+        return Flux.defer(() -> {
+            Observation observation = stageObservation(stage).start();
+            return stream
+                    .doOnError(observation::error)
+                    .doFinally(signal -> observation.stop());
+        });
+    }
+
+    // insights.model.attempt{model, attempt}: one SqlCoder / DeepSeek attempt (all candidates of it, when speculative).
+    public <T> T modelAttempt(String model, int attempt, Supplier<T> work) {
+        return Observation.createNotStarted("insights.model.attempt", observationRegistry)
+                .contextualName(model + " attempt " + attempt)
+                .lowCardinalityKeyValue("model", model)
+                .lowCardinalityKeyValue("attempt", Integer.toString(attempt))
+                .observe(work);
+    }
+
+    // insights.model.attempts{model, outcome}: attempts one request needed; outcome=failed when every retry was used up.
+    public void recordAttempts(String model, int attempts, boolean succeeded) {
+        DistributionSummary.builder("insights.model.attempts")
+                .description("Model attempts per insight request")
+                .tag("model", model)
+                .tag("outcome", succeeded ? "succeeded" : "failed")
+                .register(meterRegistry)
+                .record(attempts);
+    }
+
+    // insights.prompt.size{model}: size of every prompt sent, retry hints included.
+    public void recordPromptSize(String model, String prompt) {
+        DistributionSummary.builder("insights.prompt.size")
+                .description("Characters in a prompt sent to the model")
+                .baseUnit("characters")
+                .tag("model", model)
+                .register(meterRegistry)
+                .record(prompt == null ? 0 : prompt.length());
+    }
+
+    // insights.sql.candidates{outcome} per checked SqlCoder answer, and insights.sql.rejections{gate} per failed gate.
+    public void recordSqlCheck(SqlCheck check) {
+        Counter.builder("insights.sql.candidates")
+                .description("SqlCoder answers checked by the validation gates")
+                .tag("outcome", check.accepted() ? "accepted" : "rejected")
+                .register(meterRegistry)
+                .increment();
+        for (SqlRejectReason reason : check.failures()) {
+            Counter.builder("insights.sql.rejections")
+                    .description("SqlCoder answers rejected, per failed gate")
+                    .tag("gate", reason.name())
+                    .register(meterRegistry)
+                    .increment();
+        }
+    }
+
+    // insights.sql.source{source=template|cache|model}: where the SQL of a request came from.
+    public void recordSqlSource(String source) {
+        Counter.builder("insights.sql.source")
+                .description("Insight requests by where their SQL came from")
+                .tag("source", source)
+                .register(meterRegistry)
+                .increment();
+    }
+
+    // insights.query.result: rows returned by the generated query; insights.query.truncated when max-rows cut it.
+    public void recordResult(QueryResult result) {
+        DistributionSummary.builder("insights.query.result")
+                .description("Rows returned by a generated query")
+                .baseUnit("rows")
+                .register(meterRegistry)
+                .record(result.getRowCount());
+        if (result.isTruncated()) {
+            Counter.builder("insights.query.truncated")
+                    .description("Generated query results cut at insights.query.max-rows")
+                    .register(meterRegistry)
+                    .increment();
+        }
+    }
+
+    // insights.job: one run of a background insights job; its stages are child spans of it.
+    public <T> T job(Long jobId, Supplier<T> work) {
+        return Observation.createNotStarted("insights.job", observationRegistry)
+                .contextualName("insights job")
+                .highCardinalityKeyValue("job.id", String.valueOf(jobId))
+                .observe(work);
+    }
+
+    // insights.job.queued: from submission until a worker picked the job up for the first time.
+    public void recordJobQueued(Duration queued) {
+        Timer.builder("insights.job.queued")
+                .description("Time an insights job waited for a worker")
+                .register(meterRegistry)
+                .record(queued);
+    }
+
+    // insights.jobs{outcome=succeeded|failed|retried|released}: what happened to a claimed job.
+    public void recordJobOutcome(String outcome) {
+        Counter.builder("insights.jobs")
+                .description("Insights job runs by outcome")
+                .tag("outcome", outcome)
+                .register(meterRegistry)
+                .increment();
+    }
+
+    private Observation stageObservation(String stage) {
+        return Observation.createNotStarted("insights.stage", observationRegistry)
+                .contextualName("insights " + stage)
+                .lowCardinalityKeyValue("stage", stage);
+    }
+}
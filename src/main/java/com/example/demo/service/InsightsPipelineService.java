@@ -0,0 +1,70 @@
+package com.example.demo.service;
+
+import com.example.demo.dto.GeneratedSqlContext;
+import com.example.demo.dto.QueryResult;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+// The insight chain shared by fetchInsights, fetchInsightsStream and the insights job workers:
+// SqlCoder generates the SQL, MySQL runs it, DeepSeek turns the rows into text.
+@Service
+@Slf4j
+public class InsightsPipelineService {
+
+    @Autowired
+    TextToSqlGenerationService textToSqlGenerationService;
+
+    @Autowired
+    SqlQueryExecutionService sqlQueryExecutionService;
+
+    @Autowired
+    InsightsGenerationService insightsGenerationService;
+
+    @Autowired
+    OllamaBulkhead ollamaBulkhead;
+
+    @Autowired
+    BudgetColumnStore budgetColumnStore;
+
+    @Autowired
+    InsightsMetrics insightsMetrics;
+
+    // Runs the whole chain inside one bulkhead slot, so an insights burst cannot take every thread and connection.
+    // The time spent queueing for the slot is its own stage (bulkhead.wait).
+    public String generateInsights(Long budgetId, String prompt) {
+        try (Bulkhead.Permit ignored = acquireSlot()) {
+            GeneratedSqlContext generatedSqlContext = generateSqlAndFetchResults(budgetId, prompt);
+
+            // Generate insights with the help of DeepSeek gen ai model.
+            String insights = insightsGenerationService.generateInsights(generatedSqlContext);
+            log.info("Insights: {}", insights);
+            return insights;
+        }
+    }
+
+    public Bulkhead.Permit acquireSlot() {
+        return insightsMetrics.stage("bulkhead.wait", ollamaBulkhead::acquire);
+    }
+
+    public GeneratedSqlContext generateSqlAndFetchResults(Long budgetId, String prompt) {
+        // Generate SQL query with the help of SqlCoder gen ai model.
+        GeneratedSqlContext generatedSqlContext = textToSqlGenerationService.generateSql(budgetId, prompt);
+
+        // Template questions are answered from the budget's in-memory columns when they hold everything the query reads.
+        QueryResult results = null;
+        if ("template".equals(generatedSqlContext.getSqlSource())) {
+            results = insightsMetrics.stage("sql.columns", () -> budgetColumnStore.answer(budgetId, generatedSqlContext)).orElse(null);
+        }
+        if (results == null) {
+            // Execute the query and fetch the ResultSet (bounded, column by column), as a template with bind parameters.
+            results = insightsMetrics.stage("sql.execute", () -> generatedSqlContext.getSqlTemplate() == null
+                    ? sqlQueryExecutionService.executeBounded(generatedSqlContext.getSqlQuery())
+                    : sqlQueryExecutionService.executeBounded(generatedSqlContext.getSqlTemplate(), generatedSqlContext.getSqlParameters()));
+        }
+        insightsMetrics.recordResult(results);
+        log.info("SQL query results: columns={}, rows={}, truncated={}", results.getColumns(), results.getRowCount(), results.isTruncated());
+        generatedSqlContext.setResultSet(results);
+        return generatedSqlContext;
+    }
+}
@@ -0,0 +1,22 @@
+package com.example.demo.service;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+/**
+ * Concurrency limit for the Ollama-bound insight pipeline (SqlCoder + DeepSeek).
+ *
+ * At most max-concurrent pipelines run at once and at most queue-capacity callers wait for a slot; anything beyond
+ * that is rejected with {@link BulkheadFullException} instead of piling up behind a model that answers in tens of seconds.
+ */
+@Component
+public class OllamaBulkhead extends Bulkhead {
+
+    public OllamaBulkhead(
+            @Value("${ollama.bulkhead.max-concurrent:4}") int maxConcurrent,
+            @Value("${ollama.bulkhead.queue-capacity:16}") int queueCapacity,
+            @Value("${ollama.bulkhead.max-wait-ms:30000}") long maxWaitMillis
+    ) {
+        super("Insight request", "insight slot", maxConcurrent, queueCapacity, maxWaitMillis);
+    }
+}
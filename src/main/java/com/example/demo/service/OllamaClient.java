@@ -0,0 +1,256 @@
+package com.example.demo.service;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.FluxSink;
+import reactor.core.scheduler.Schedulers;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.ConnectException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpConnectTimeoutException;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.net.http.HttpTimeoutException;
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Shared client for Ollama's /api/generate endpoint, used by both the SqlCoder and the DeepSeek stages.
+ *
+ * A single {@link HttpClient} is kept for the lifetime of the application, so HTTP/1.1 keep-alive
+ * connections are pooled and reused across calls instead of opening a new connection per request.
+ * Responses are read with the streaming Jackson parser; only the "response" field is materialized.
+ *
+ * Timeouts:
+ * - connect: establishing the TCP connection.
+ * - read: waiting for the response (stream=false), or between two chunks (stream=true).
+ * - total: the whole call, including reading the body.
+ */
+@Component
+@Slf4j
+public class OllamaClient {
+
+    private final HttpClient httpClient;
+    private final ObjectMapper objectMapper;
+    private final JsonFactory jsonFactory;
+    private final URI generateUri;
+    private final Duration readTimeout;
+    private final Duration totalTimeout;
+
+    // Ollama generate request
+    public record OllamaGenerateRequest(String model, String prompt, boolean stream, Map<String, Object> options) {}
+
+    // Thrown when Ollama cannot be reached at all, as opposed to returning an unusable answer.
+    public static class OllamaUnavailableException extends RuntimeException {
+        public OllamaUnavailableException(String message, Throwable cause) {
+            super(message, cause);
+        }
+    }
+
+    @Autowired
+    public OllamaClient(
+            ObjectMapper objectMapper,
+            @Value("${ollama.generate.url:http://localhost:11434/api/generate}") String ollamaGenerateUrl,
+            @Value("${ollama.http.connect-timeout-ms:5000}") long connectTimeoutMs,
+            @Value("${ollama.http.read-timeout-ms:60000}") long readTimeoutMs,
+            @Value("${ollama.http.total-timeout-ms:180000}") long totalTimeoutMs
+    ) {
+        this.objectMapper = objectMapper;
+        this.jsonFactory = objectMapper.getFactory();
+        this.generateUri = URI.create(ollamaGenerateUrl);
+        this.readTimeout = Duration.ofMillis(readTimeoutMs);
+        this.totalTimeout = Duration.ofMillis(totalTimeoutMs);
+
+        // Ollama speaks plain HTTP/1.1; skipping the h2c upgrade attempt keeps connections reusable.
+        this.httpClient = HttpClient.newBuilder()
+                .version(HttpClient.Version.HTTP_1_1)
+                .connectTimeout(Duration.ofMillis(connectTimeoutMs))
+                .build();
+    }
+
+    // Non-blocking generate call (stream=false). Completes with the model's "response" text.
+    public CompletableFuture<String> generateAsync(String model, String prompt, Map<String, Object> options) {
+        HttpRequest request = buildRequest(new OllamaGenerateRequest(model, prompt, false, options));
+
+        CompletableFuture<HttpResponse<byte[]>> exchange = httpClient.sendAsync(request, HttpResponse.BodyHandlers.ofByteArray());
+        CompletableFuture<String> result = exchange
+                .thenApply(response -> {
+                    if (response.statusCode() / 100 != 2) {
+                        throw new RuntimeException("Ollama returned HTTP " + response.statusCode() + " for model " + model);
+                    }
+                    byte[] body = response.body();
+                    if (body == null || body.length == 0) {
+                        throw new RuntimeException("Empty response from Ollama");
+                    }
+                    try (JsonParser parser = jsonFactory.createParser(body)) {
+                        return readResponseText(parser);
+                    } catch (IOException e) {
+                        throw new RuntimeException("Failed to parse Ollama response: " + e.getMessage(), e);
+                    }
+                })
+                .orTimeout(totalTimeout.toMillis(), TimeUnit.MILLISECONDS);
+
+        // Cancelling the returned future aborts the HTTP exchange too, so Ollama stops generating for it.
+        result.whenComplete((text, ex) -> {
+            if (result.isCancelled()) {
+                exchange.cancel(true);
+            }
+        });
+        return result;
+    }
+
+    // Blocking variant of generateAsync for callers that are already on a worker thread.
+    public String generate(String model, String prompt, Map<String, Object> options) {
+        try {
+            return generateAsync(model, prompt, options).join();
+        } catch (CompletionException ex) {
+            throw translate(ex.getCause() != null ? ex.getCause() : ex);
+        }
+    }
+
+    // Streaming generate call (stream=true). Emits every non-empty "response" chunk as Ollama produces it.
+    public Flux<String> generateStream(String model, String prompt, Map<String, Object> options) {
+        HttpRequest request = buildRequest(new OllamaGenerateRequest(model, prompt, true, options));
+
+        return Flux.<String>create(sink -> readStream(request, model, sink))
+                .subscribeOn(Schedulers.boundedElastic())
+                .timeout(readTimeout);
+    }
+
+    private void readStream(HttpRequest request, String model, FluxSink<String> sink) {
+        AtomicBoolean cancelled = new AtomicBoolean(false);
+        long deadline = System.nanoTime() + totalTimeout.toNanos();
+
+        try {
+            HttpResponse<InputStream> response = httpClient.send(request, HttpResponse.BodyHandlers.ofInputStream());
+            if (response.statusCode() / 100 != 2) {
+                response.body().close();
+                sink.error(new RuntimeException("Ollama returned HTTP " + response.statusCode() + " for model " + model));
+                return;
+            }
+
+            try (InputStream body = response.body();
+                 JsonParser parser = jsonFactory.createParser(body)) {
+                sink.onCancel(() -> {
+                    cancelled.set(true);
+                    closeQuietly(body);
+                });
+
+                // NDJSON: a sequence of root-level objects, one per line.
+                while (!cancelled.get() && parser.nextToken() == JsonToken.START_OBJECT) {
+                    StreamChunk chunk = readStreamChunk(parser);
+                    if (chunk.text() != null && !chunk.text().isEmpty()) {
+                        sink.next(chunk.text());
+                    }
+                    if (chunk.done()) {
+                        break;
+                    }
+                    if (System.nanoTime() > deadline) {
+                        throw new TimeoutException("Ollama stream exceeded total timeout of " + totalTimeout.toMillis() + " ms");
+                    }
+                }
+            }
+            sink.complete();
+        } catch (Exception ex) {
+            if (cancelled.get()) {
+                log.info("Ollama stream cancelled by the subscriber");
+                return;
+            }
+            if (ex instanceof InterruptedException) {
+                Thread.currentThread().interrupt();
+            }
+            sink.error(translate(ex));
+        }
+    }
+
+    private HttpRequest buildRequest(OllamaGenerateRequest body) {
+        byte[] json;
+        try {
+            json = objectMapper.writeValueAsBytes(body);
+        } catch (IOException e) {
+            throw new RuntimeException("Unable to serialize Ollama request", e);
+        }
+
+        return HttpRequest.newBuilder(generateUri)
+                .timeout(readTimeout)
+                .header("Content-Type", "application/json")
+                .POST(HttpRequest.BodyPublishers.ofByteArray(json))
+                .build();
+    }
+
+    // Reads the "response" field of a single (non-streamed) generate answer, skipping everything else
+    // (including the large "context" token array) without building a tree.
+    static String readResponseText(JsonParser parser) throws IOException {
+        if (parser.nextToken() != JsonToken.START_OBJECT) {
+            throw new IOException("Expected a JSON object from Ollama");
+        }
+        StreamChunk chunk = readStreamChunk(parser);
+        return chunk.text() == null ? "" : chunk.text();
+    }
+
+    private record StreamChunk(String text, boolean done) {}
+
+    // Parser must be positioned on START_OBJECT; leaves it on the matching END_OBJECT.
+    private static StreamChunk readStreamChunk(JsonParser parser) throws IOException {
+        String text = null;
+        boolean done = false;
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String field = parser.currentName();
+            JsonToken value = parser.nextToken();
+            switch (field) {
+                case "response" -> text = (value == JsonToken.VALUE_NULL) ? "" : parser.getValueAsString("");
+                case "done" -> done = (value == JsonToken.VALUE_TRUE);
+                case "error" -> throw new RuntimeException("Ollama error: " + parser.getValueAsString(""));
+                default -> parser.skipChildren();
+            }
+        }
+        return new StreamChunk(text, done);
+    }
+
+    // Maps a failed generate call to the exception the blocking callers throw (OllamaUnavailableException when unreachable).
+    RuntimeException translate(Throwable ex) {
+        if (ex instanceof CompletionException && ex.getCause() != null) {
+            ex = ex.getCause();
+        }
+        if (ex instanceof JsonProcessingException) {
+            return new RuntimeException("Failed to parse Ollama response: " + ex.getMessage(), ex);
+        }
+        if (ex instanceof HttpConnectTimeoutException || ex instanceof ConnectException) {
+            return new OllamaUnavailableException("Failed to call Ollama at " + generateUri + ". Is Ollama running?", ex);
+        }
+        if (ex instanceof HttpTimeoutException || ex instanceof TimeoutException) {
+            return new OllamaUnavailableException("Timed out waiting for Ollama at " + generateUri, ex);
+        }
+        if (ex instanceof IOException || ex instanceof InterruptedException) {
+            return new OllamaUnavailableException("Failed to call Ollama at " + generateUri + ". Is Ollama running?", ex);
+        }
+        if (ex instanceof RuntimeException runtimeException) {
+            return runtimeException;
+        }
+        return new RuntimeException(ex.getMessage(), ex);
+    }
+
+    private static void closeQuietly(InputStream in) {
+        try {
+            in.close();
+        } catch (IOException ignored) {
+            // nothing left to release
+        }
+    }
+}
@@ -0,0 +1,7 @@
+package com.example.demo.service;
+
+import java.util.List;
+
+// A query with its WHERE literals moved into bind parameters: template has one ? per parameter, in order.
+// Every query of a shape has the same template, whoever asked and for which month or category.
+record ParameterizedSql(String template, List<Object> parameters) {}
@@ -0,0 +1,20 @@
+package com.example.demo.service;
+
+import com.example.demo.enums.PromptIntent;
+
+import java.util.List;
+
+// Filters extracted from the user prompt that the generated SQL must honour.
+record PromptConstraints(
+        Long budgetId,
+        Long userId,
+        String prompt,
+        String requiredCategory,
+        List<String> requiredCategories,
+        Integer requiredMonth,
+        Integer requiredYear,
+        List<Integer> monthsFound,
+        boolean multiMonth,
+        boolean multiCategory,
+        PromptIntent intent
+) {}
@@ -0,0 +1,207 @@
+package com.example.demo.service;
+
+import com.example.demo.constants.Constants;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Finds transaction categories, month names and years in a user prompt with one left-to-right pass.
+ *
+ * All phrases are compiled once into an Aho–Corasick automaton (a DFA with every transition precomputed),
+ * so a scan costs one table lookup per prompt character no matter how many categories there are.
+ * Matching is case-insensitive and, like the old indexOf lookups, substring based for categories and months;
+ * years (2000-2099) must stand alone as in the old \b(20\d{2})\b pattern.
+ */
+final class PromptEntityExtractor {
+
+    enum EntityType { CATEGORY, MONTH, YEAR }
+
+    // value: the month (1-12) or the year for MONTH / YEAR, the position in the category list for CATEGORY.
+    record Entity(EntityType type, int start, int end, int value, String text) {}
+
+    record PromptEntities(List<String> categories, List<Integer> months, Integer year) {}
+
+    // Orders matches left to right; at the same start the longer phrase wins ("food & groceries" before "food").
+    private static final Comparator<Entity> PROMPT_ORDER =
+            Comparator.comparingInt(Entity::start).thenComparing(Comparator.comparingInt(Entity::end).reversed());
+
+    // Patterns, indexed by id.
+    private final EntityType[] patternType;
+    private final int[] patternValue;
+    private final int[] patternLength;
+    private final String[] patternText;
+
+    // Automaton: next state = transitions[state * alphabetSize + charClass(c)]; class 0 is "not in any pattern".
+    private final int alphabetSize;
+    private final int[] asciiClass;
+    private final Map<Character, Integer> otherClass;
+    private final int[] transitions;
+    // Pattern ids that end in each state, including the ones inherited through failure links.
+    private final int[][] outputs;
+
+    private PromptEntityExtractor(List<EntityType> types, List<Integer> values, List<String> texts) {
+        int patternCount = texts.size();
+        this.patternType = types.toArray(new EntityType[0]);
+        this.patternValue = values.stream().mapToInt(Integer::intValue).toArray();
+        this.patternText = texts.toArray(new String[0]);
+        this.patternLength = new int[patternCount];
+
+        // Character classes: every distinct (lower-cased) character used by a pattern gets its own column.
+        this.asciiClass = new int[128];
+        this.otherClass = new HashMap<>();
+        int classes = 1;
+        List<char[]> keys = new ArrayList<>(patternCount);
+        for (int p = 0; p < patternCount; p++) {
+            char[] key = patternText[p].toLowerCase(Locale.ROOT).toCharArray();
+            keys.add(key);
+            patternLength[p] = key.length;
+            for (char c : key) {
+                if (c < 128) {
+                    if (asciiClass[c] == 0) asciiClass[c] = classes++;
+                } else if (!otherClass.containsKey(c)) {
+                    otherClass.put(c, classes++);
+                }
+            }
+        }
+        this.alphabetSize = classes;
+
+        // 1. Trie.
+        List<int[]> trie = new ArrayList<>();
+        List<List<Integer>> stateOutputs = new ArrayList<>();
+        trie.add(new int[alphabetSize]);
+        stateOutputs.add(new ArrayList<>(0));
+        for (int p = 0; p < patternCount; p++) {
+            int state = 0;
+            for (char c : keys.get(p)) {
+                int cls = charClass(c);
+                if (trie.get(state)[cls] == 0) {
+                    trie.get(state)[cls] = trie.size();
+                    trie.add(new int[alphabetSize]);
+                    stateOutputs.add(new ArrayList<>(0));
+                }
+                state = trie.get(state)[cls];
+            }
+            stateOutputs.get(state).add(p);
+        }
+
+        // 2. Failure links by BFS, turning the trie into a full DFA and merging outputs along the way.
+        int stateCount = trie.size();
+        int[] failure = new int[stateCount];
+        ArrayDeque<Integer> queue = new ArrayDeque<>();
+        for (int cls = 1; cls < alphabetSize; cls++) {
+            int child = trie.get(0)[cls];
+            if (child != 0) queue.add(child);
+        }
+        while (!queue.isEmpty()) {
+            int state = queue.poll();
+            stateOutputs.get(state).addAll(stateOutputs.get(failure[state]));
+            for (int cls = 1; cls < alphabetSize; cls++) {
+                int child = trie.get(state)[cls];
+                if (child != 0) {
+                    failure[child] = trie.get(failure[state])[cls];
+                    queue.add(child);
+                } else {
+                    trie.get(state)[cls] = trie.get(failure[state])[cls];
+                }
+            }
+        }
+
+        this.transitions = new int[stateCount * alphabetSize];
+        this.outputs = new int[stateCount][];
+        for (int s = 0; s < stateCount; s++) {
+            System.arraycopy(trie.get(s), 0, transitions, s * alphabetSize, alphabetSize);
+            outputs[s] = stateOutputs.get(s).stream().mapToInt(Integer::intValue).toArray();
+        }
+    }
+
+    // Built once at startup from the category list (transaction-categories.txt).
+    static PromptEntityExtractor build(List<String> categories) {
+        List<EntityType> types = new ArrayList<>();
+        List<Integer> values = new ArrayList<>();
+        List<String> texts = new ArrayList<>();
+        for (int i = 0; i < categories.size(); i++) {
+            String category = categories.get(i);
+            if (category == null || category.isBlank()) continue;
+            types.add(EntityType.CATEGORY);
+            values.add(i);
+            texts.add(category.trim());
+        }
+        for (Map.Entry<String, Integer> month : Constants.MONTH_NAME_TO_NUMBER.entrySet()) {
+            types.add(EntityType.MONTH);
+            values.add(month.getValue());
+            texts.add(month.getKey());
+        }
+        for (int year = 2000; year <= 2099; year++) {
+            types.add(EntityType.YEAR);
+            values.add(year);
+            texts.add(String.valueOf(year));
+        }
+        return new PromptEntityExtractor(types, values, texts);
+    }
+
+    // Every category / month / year occurrence in the prompt, in the order they end.
+    List<Entity> scan(String prompt) {
+        if (prompt == null || prompt.isEmpty()) return List.of();
+
+        List<Entity> entities = new ArrayList<>(4);
+        int state = 0;
+        for (int i = 0; i < prompt.length(); i++) {
+            state = transitions[state * alphabetSize + charClass(Character.toLowerCase(prompt.charAt(i)))];
+            for (int p : outputs[state]) {
+                int start = i + 1 - patternLength[p];
+                if (patternType[p] == EntityType.YEAR && !standsAlone(prompt, start, i + 1)) continue;
+                entities.add(new Entity(patternType[p], start, i + 1, patternValue[p], patternText[p]));
+            }
+        }
+        return entities;
+    }
+
+    // Categories and months in the order they first appear (duplicates dropped), and the first year.
+    PromptEntities extract(String prompt) {
+        List<Entity> entities = scan(prompt);
+        if (entities.isEmpty()) return new PromptEntities(List.of(), List.of(), null);
+        if (entities.size() > 1) entities.sort(PROMPT_ORDER);
+
+        Set<String> categories = new LinkedHashSet<>();
+        Set<Integer> months = new LinkedHashSet<>();
+        Integer year = null;
+        for (Entity entity : entities) {
+            switch (entity.type()) {
+                case CATEGORY -> categories.add(entity.text());
+                case MONTH -> months.add(entity.value());
+                case YEAR -> {
+                    if (year == null) year = entity.value();
+                }
+            }
+        }
+        return new PromptEntities(new ArrayList<>(categories), new ArrayList<>(months), year);
+    }
+
+    int stateCount() {
+        return outputs.length;
+    }
+
+    private int charClass(char c) {
+        if (c < 128) return asciiClass[c];
+        Integer cls = otherClass.get(c);
+        return cls == null ? 0 : cls;
+    }
+
+    // Same as regex \b on both sides (word characters are [A-Za-z0-9_]).
+    private static boolean standsAlone(String text, int start, int end) {
+        return (start == 0 || !isWordChar(text.charAt(start - 1)))
+                && (end == text.length() || !isWordChar(text.charAt(end)));
+    }
+
+    private static boolean isWordChar(char c) {
+        return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || (c >= '0' && c <= '9') || c == '_';
+    }
+}
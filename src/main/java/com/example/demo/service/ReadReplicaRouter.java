@@ -0,0 +1,127 @@
+package com.example.demo.service;
+
+import lombok.extern.slf4j.Slf4j;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Decides where read-only work (@Transactional(readOnly = true)) gets its connection: the read replica when one is
+ * configured, reachable and at most replica.max-lag-seconds behind the primary, otherwise the primary.
+ *
+ * The replica is probed every replica.lag-check-interval-ms on a background thread, so routing a connection never
+ * waits for it. Lag is Seconds_Behind_Source of SHOW REPLICA STATUS (needs the REPLICATION CLIENT privilege); a server
+ * that is not replicating, or a non-MySQL database such as the H2 used in tests, counts as up to date.
+ * Created by DataSourceConfig.
+ */
+@Slf4j
+public class ReadReplicaRouter implements AutoCloseable {
+
+    private final DataSource replica;
+    private final long maxLagSeconds;
+    private final long checkIntervalMillis;
+
+    private volatile boolean replicaUsable;
+    // Last measured lag; -1 while unknown (unreachable, replication stopped, not probed yet).
+    private volatile long lagSeconds = -1;
+
+    private final AtomicLong replicaReads = new AtomicLong();
+    private final AtomicLong primaryReads = new AtomicLong();
+    private ScheduledExecutorService probe;
+
+    // replica is null when none is configured; every read then goes to the primary.
+    public ReadReplicaRouter(DataSource replica, long maxLagSeconds, long checkIntervalMillis) {
+        this.replica = replica;
+        this.maxLagSeconds = maxLagSeconds;
+        this.checkIntervalMillis = Math.max(100, checkIntervalMillis);
+    }
+
+    public synchronized void start() {
+        if (replica == null) {
+            log.info("No read replica configured; read-only work uses the primary");
+            return;
+        }
+        // The first probe runs right away; until it succeeds reads stay on the primary.
+        probe = Executors.newSingleThreadScheduledExecutor(Thread.ofPlatform().name("read-replica-probe").daemon().factory());
+        probe.scheduleWithFixedDelay(this::check, 0, checkIntervalMillis, TimeUnit.MILLISECONDS);
+    }
+
+    @Override
+    public synchronized void close() {
+        if (probe != null) {
+            probe.shutdownNow();
+        }
+    }
+
+    // Called once per read-only connection.
+    public boolean useReplica() {
+        boolean useReplica = replicaUsable;
+        (useReplica ? replicaReads : primaryReads).incrementAndGet();
+        return useReplica;
+    }
+
+    // Whether read-only transactions currently read a replica (and may see slightly stale rows).
+    public boolean isReplicaInUse() {
+        return replicaUsable;
+    }
+
+    public long getReplicaReads() {
+        return replicaReads.get();
+    }
+
+    public long getPrimaryReads() {
+        return primaryReads.get();
+    }
+
+    public double getLagSeconds() {
+        long lag = lagSeconds;
+        return lag < 0 ? Double.NaN : lag;
+    }
+
+    void check() {
+        long lag;
+        try (Connection connection = replica.getConnection()) {
+            lag = measureLag(connection);
+        } catch (SQLException | RuntimeException e) {
+            if (replicaUsable || lagSeconds >= 0) {
+                log.warn("Read replica unreachable, reads go to the primary: {}", e.getMessage());
+            }
+            lagSeconds = -1;
+            replicaUsable = false;
+            return;
+        }
+
+        boolean usable = lag >= 0 && lag <= maxLagSeconds;
+        if (usable != replicaUsable) {
+            if (usable) {
+                log.info("Read replica in use (lag {} s, tolerance {} s)", lag, maxLagSeconds);
+            } else {
+                log.warn("Read replica {}, reads go to the primary", lag < 0 ? "is not replicating" : "is " + lag + " s behind (tolerance " + maxLagSeconds + " s)");
+            }
+        }
+        lagSeconds = lag;
+        replicaUsable = usable;
+    }
+
+    // Seconds behind the primary, or -1 while replication is stopped or broken.
+    private static long measureLag(Connection connection) throws SQLException {
+        if (!"MySQL".equalsIgnoreCase(connection.getMetaData().getDatabaseProductName())) {
+            return 0;
+        }
+        try (Statement statement = connection.createStatement();
+             ResultSet status = statement.executeQuery("SHOW REPLICA STATUS")) {
+            if (!status.next()) {
+                return 0;
+            }
+            long lag = status.getLong("Seconds_Behind_Source");
+            return status.wasNull() ? -1 : lag;
+        }
+    }
+}
@@ -0,0 +1,227 @@
+package com.example.demo.service;
+
+import com.example.demo.dto.QueryResult;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Writes a {@link QueryResult} into the DeepSeek prompt with as few characters as possible.
+ *
+ * Small results become a table: the column names once on a header line, then one |-delimited line per row.
+ * Results above summarizeAboveRows are first reduced here: row count, total / min / max of the measure column,
+ * spend per month with the change against the previous month, and only the top-N rows by the measure.
+ * The model then reads a few dozen lines instead of every transaction.
+ */
+final class ResultSetEncoder {
+
+    private static final char DELIMITER = '|';
+    // Above this many distinct categories the per-category totals are left out.
+    private static final int MAX_LABEL_TOTALS = 20;
+
+    private ResultSetEncoder() {}
+
+    static String encode(QueryResult result, int summarizeAboveRows, int topRows) {
+        StringBuilder out = new StringBuilder(64 + Math.min(result.getRowCount(), topRows + summarizeAboveRows) * 24);
+        if (result.getRowCount() <= summarizeAboveRows) {
+            appendTable(out, result, identityOrder(result.getRowCount()));
+            return out.toString();
+        }
+
+        int measure = measureColumn(result);
+        if (measure < 0) {
+            // Nothing to add up; the first rows are all we can show.
+            out.append("rows: ").append(result.getRowCount()).append(" (first ").append(topRows).append(" shown)\n");
+            appendTable(out, result, identityOrder(topRows));
+            return out.toString();
+        }
+
+        String measureName = result.getColumns().get(measure);
+        int label = labelColumn(result, measure);
+        double[] amounts = new double[result.getRowCount()];
+        double total = 0;
+        for (int row = 0; row < amounts.length; row++) {
+            amounts[row] = number(result, measure, row);
+            total += amounts[row];
+        }
+        Integer[] byMeasure = identityOrder(amounts.length);
+        Arrays.sort(byMeasure, (a, b) -> Double.compare(amounts[b], amounts[a]));
+        int maxRow = byMeasure[0];
+        int minRow = byMeasure[byMeasure.length - 1];
+
+        out.append("summary of ").append(result.getRowCount()).append(" rows:\n");
+        out.append("total ").append(measureName).append(": ").append(format(total)).append('\n');
+        out.append("max ").append(measureName).append(": ").append(format(amounts[maxRow]));
+        appendLabel(out, result, label, maxRow);
+        out.append("min ").append(measureName).append(": ").append(format(amounts[minRow]));
+        appendLabel(out, result, label, minRow);
+        appendLabelTotals(out, result, label, amounts, measureName);
+        appendMonthlyDeltas(out, result, amounts, measureName);
+
+        out.append("top ").append(topRows).append(" rows by ").append(measureName).append(":\n");
+        appendTable(out, result, Arrays.copyOf(byMeasure, Math.min(topRows, byMeasure.length)));
+        return out.toString();
+    }
+
+    private static void appendTable(StringBuilder out, QueryResult result, Integer[] rows) {
+        List<String> columns = result.getColumns();
+        for (int c = 0; c < columns.size(); c++) {
+            if (c > 0) out.append(DELIMITER);
+            out.append(columns.get(c));
+        }
+        out.append('\n');
+        for (Integer row : rows) {
+            if (row >= result.getRowCount()) break;
+            for (int c = 0; c < columns.size(); c++) {
+                if (c > 0) out.append(DELIMITER);
+                appendValue(out, result.value(c, row));
+            }
+            out.append('\n');
+        }
+    }
+
+    // Totals per category (or other label), largest first, unless there are too many labels to be a summary.
+    private static void appendLabelTotals(StringBuilder out, QueryResult result, int label, double[] amounts, String measureName) {
+        if (label < 0) return;
+
+        Map<String, Double> byLabel = new HashMap<>();
+        for (int row = 0; row < amounts.length; row++) {
+            Object value = result.value(label, row);
+            byLabel.merge(value == null ? "null" : value.toString(), amounts[row], Double::sum);
+        }
+        if (byLabel.size() < 2 || byLabel.size() > MAX_LABEL_TOTALS) return;
+
+        out.append(measureName).append(" per ").append(result.getColumns().get(label)).append(":\n");
+        byLabel.entrySet().stream()
+                .sorted(Map.Entry.<String, Double>comparingByValue().reversed())
+                .forEach(entry -> {
+                    appendValue(out, entry.getKey());
+                    out.append(DELIMITER).append(format(entry.getValue())).append('\n');
+                });
+    }
+
+    // Spend per month and the change against the previous month, when the rows carry a date or month.
+    private static void appendMonthlyDeltas(StringBuilder out, QueryResult result, double[] amounts, String measureName) {
+        int monthColumn = monthColumn(result);
+        if (monthColumn < 0) return;
+
+        Map<String, Double> byMonth = new TreeMap<>();
+        for (int row = 0; row < result.getRowCount(); row++) {
+            String month = monthKey(result.value(monthColumn, row));
+            if (month != null) byMonth.merge(month, amounts[row], Double::sum);
+        }
+        if (byMonth.size() < 2) return;
+
+        out.append(measureName).append(" per month (change vs previous month):\n");
+        Double previous = null;
+        for (Map.Entry<String, Double> month : byMonth.entrySet()) {
+            out.append(month.getKey()).append(DELIMITER).append(format(month.getValue()));
+            if (previous != null) {
+                double delta = month.getValue() - previous;
+                out.append(DELIMITER).append(delta >= 0 ? "+" : "").append(format(delta));
+            }
+            out.append('\n');
+            previous = month.getValue();
+        }
+    }
+
+    // The amount to rank and add up: the last numeric column that is not an id, month or year.
+    private static int measureColumn(QueryResult result) {
+        for (int c = result.getColumns().size() - 1; c >= 0; c--) {
+            if (isNumeric(result.getColumnValues().get(c)) && !isKeyLike(result.getColumns().get(c))) {
+                return c;
+            }
+        }
+        return -1;
+    }
+
+    // Names the min / max rows and groups the per-label totals: the category column, else the first other text column.
+    private static int labelColumn(QueryResult result, int measure) {
+        int firstText = -1;
+        for (int c = 0; c < result.getColumns().size(); c++) {
+            if (c == measure || isNumeric(result.getColumnValues().get(c))) continue;
+            if (result.getColumns().get(c).toLowerCase(Locale.ROOT).contains("category")) return c;
+            if (firstText < 0 && c != monthColumn(result)) firstText = c;
+        }
+        return firstText;
+    }
+
+    private static int monthColumn(QueryResult result) {
+        for (int c = 0; c < result.getColumns().size(); c++) {
+            String name = result.getColumns().get(c).toLowerCase(Locale.ROOT);
+            if (name.contains("month") || name.equals("ym") || name.equals("time_stamp") || name.contains("date")) {
+                return c;
+            }
+        }
+        return -1;
+    }
+
+    // "2026-05-14" and "2026-05" become "2026-05"; a bare month number stays as is.
+    private static String monthKey(Object value) {
+        if (value == null) return null;
+        String text = value.toString();
+        if (text.length() >= 7 && text.charAt(4) == '-') return text.substring(0, 7);
+        if (value instanceof Number number) return number.intValue() < 10 ? "0" + number.intValue() : Integer.toString(number.intValue());
+        return text;
+    }
+
+    private static boolean isKeyLike(String column) {
+        String name = column.toLowerCase(Locale.ROOT);
+        return name.equals("id") || name.endsWith("_id") || name.contains("month") || name.contains("year");
+    }
+
+    private static boolean isNumeric(Object values) {
+        return values instanceof long[] || values instanceof double[] || values instanceof Long[] || values instanceof Double[];
+    }
+
+    private static double number(QueryResult result, int column, int row) {
+        Object value = result.value(column, row);
+        return value instanceof Number number ? number.doubleValue() : 0;
+    }
+
+    private static void appendLabel(StringBuilder out, QueryResult result, int label, int row) {
+        if (label >= 0) {
+            out.append(" (").append(result.getColumns().get(label)).append(' ');
+            appendValue(out, result.value(label, row));
+            out.append(')');
+        }
+        out.append('\n');
+    }
+
+    private static void appendValue(StringBuilder out, Object value) {
+        if (value == null) {
+            out.append("null");
+        } else if (value instanceof Double || value instanceof Float || value instanceof BigDecimal) {
+            out.append(format(((Number) value).doubleValue()));
+        } else if (value instanceof Number || value instanceof Boolean) {
+            out.append(value);
+        } else {
+            // Keep one row per line and the delimiter unambiguous.
+            String text = value.toString();
+            for (int i = 0; i < text.length(); i++) {
+                char ch = text.charAt(i);
+                out.append(ch == DELIMITER ? '/' : (ch == '\n' || ch == '\r') ? ' ' : ch);
+            }
+        }
+    }
+
+    // Whole amounts without ".0", everything else with at most two decimals.
+    private static String format(double value) {
+        if (value == Math.rint(value) && Math.abs(value) < 1e15) {
+            return Long.toString((long) value);
+        }
+        return BigDecimal.valueOf(value).setScale(2, RoundingMode.HALF_UP).stripTrailingZeros().toPlainString();
+    }
+
+    private static Integer[] identityOrder(int size) {
+        Integer[] order = new Integer[size];
+        for (int i = 0; i < size; i++) order[i] = i;
+        return order;
+    }
+}
@@ -0,0 +1,47 @@
+package com.example.demo.service;
+
+import com.example.demo.repository.CategoryMonthSpendRepository;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.annotation.Transactional;
+
+// Rebuilds the category_month_spend rollup from the transaction table.
+// The incremental upserts in TransactionService keep the rollup correct; this is a one-off for data that existed
+// before the rollup did, or for when rows were edited by hand. Set rollup.rebuild-on-startup=true for a single
+// start, then back to false: left on, every instance start rewrites the table under live traffic.
+@Component
+@Slf4j
+public class SpendRollupRebuildJob {
+
+    @Autowired
+    CategoryMonthSpendRepository categoryMonthSpendRepository;
+
+    @Value("${rollup.rebuild-on-startup:false}")
+    boolean rebuildOnStartup;
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void rebuildOnStartup(ApplicationReadyEvent event) {
+        if (!rebuildOnStartup) {
+            log.info("Skipping category_month_spend rebuild (rollup.rebuild-on-startup=false)");
+            return;
+        }
+        // Go through the bean: calling rebuild() on this would bypass the @Transactional proxy.
+        event.getApplicationContext().getBean(SpendRollupRebuildJob.class).rebuild();
+    }
+
+    // Delete + INSERT ... SELECT in one DB transaction, so readers see either the old or the rebuilt rollup.
+    // Concurrent writers block on the locks taken by the INSERT ... SELECT; run it when write traffic is low.
+    @Transactional
+    public int rebuild() {
+        long start = System.nanoTime();
+        int deleted = categoryMonthSpendRepository.deleteAllRollups();
+        int inserted = categoryMonthSpendRepository.insertRollupsFromTransactions();
+        log.info("Rebuilt category_month_spend: removed {} rows, wrote {} rows in {} ms",
+                deleted, inserted, (System.nanoTime() - start) / 1_000_000);
+        return inserted;
+    }
+}
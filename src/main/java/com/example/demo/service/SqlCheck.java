@@ -0,0 +1,19 @@
+package com.example.demo.service;
+
+import com.example.demo.enums.SqlRejectReason;
+
+import java.util.List;
+import java.util.Set;
+
+// Outcome of validating one candidate query: the canonicalized SQL, and why it was rejected (empty when accepted).
+// details are short human readable findings ("uses ILIKE", "joins table budgets") that go into the retry hint.
+record SqlCheck(String sql, Set<SqlRejectReason> failures, List<String> details) {
+
+    boolean accepted() {
+        return failures.isEmpty();
+    }
+
+    boolean failed(SqlRejectReason reason) {
+        return failures.contains(reason);
+    }
+}
@@ -0,0 +1,256 @@
+package com.example.demo.service;
+
+import com.example.demo.enums.SqlRejectReason;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+
+/**
+ * Cost gate for model-generated SQL that passed the shape checks. MySQL plans the candidate with EXPLAIN FORMAT=JSON
+ * (nothing is run) and it is rejected when the plan reads more than insights.cost.max-examined-rows rows in total, or
+ * walks a whole table or index (access type ALL / index) holding more than max-full-scan-rows rows. A malformed join
+ * that passes every shape gate but would scan `transaction` across all users ends up here and goes back to the model.
+ *
+ * Verdicts are cached per SQL shape, the template the query runs as (WHERE literals as bind parameters), so a query
+ * the model keeps producing for other users and months pays the EXPLAIN round trip once. Databases other than MySQL
+ * (H2 in the tests) have no JSON plan and skip the gate.
+ */
+@Component
+@Slf4j
+public class SqlCostGate {
+
+    private final SqlQueryExecutionService sqlQueryExecutionService;
+    private final ObjectMapper objectMapper;
+    private final boolean enabled;
+    private final long maxExaminedRows;
+    private final long maxFullScanRows;
+    private final Set<String> fullScanAccessTypes;
+    private final int maxEntries;
+    private final long ttlMillis;
+
+    // Access ordered, so the eldest entry is always the least recently used one.
+    private final LinkedHashMap<String, Verdict> verdicts = new LinkedHashMap<>(16, 0.75f, true);
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong sizeEvictions = new AtomicLong();
+
+    // failure is null for a plan within the limits.
+    private record Verdict(SqlRejectReason failure, String detail, long expiresAtMillis) {}
+
+    public SqlCostGate(
+            SqlQueryExecutionService sqlQueryExecutionService,
+            ObjectMapper objectMapper,
+            @Value("${insights.cost.enabled:true}") boolean enabled,
+            @Value("${insights.cost.max-examined-rows:100000}") long maxExaminedRows,
+            @Value("${insights.cost.max-full-scan-rows:10000}") long maxFullScanRows,
+            @Value("${insights.cost.full-scan-access-types:ALL,index}") List<String> fullScanAccessTypes,
+            @Value("${insights.cost.cache.max-entries:1000}") int maxEntries,
+            @Value("${insights.cost.cache.ttl-seconds:3600}") long ttlSeconds
+    ) {
+        this.sqlQueryExecutionService = sqlQueryExecutionService;
+        this.objectMapper = objectMapper;
+        this.enabled = enabled;
+        this.maxExaminedRows = maxExaminedRows;
+        this.maxFullScanRows = maxFullScanRows;
+        this.fullScanAccessTypes = fullScanAccessTypes.stream().map(String::trim).collect(Collectors.toSet());
+        this.maxEntries = maxEntries;
+        this.ttlMillis = ttlSeconds * 1000L;
+    }
+
+    // The check unchanged when its plan is within the limits (or cannot be had), otherwise a rejection whose detail
+    // names what was too expensive.
+    SqlCheck review(SqlCheck check) {
+        if (!enabled || !check.accepted()) {
+            return check;
+        }
+
+        String shape = shapeOf(check.sql());
+        Verdict verdict = cached(shape);
+        if (verdict == null) {
+            verdict = plan(check.sql());
+            if (verdict == null) {
+                return check;
+            }
+            store(shape, verdict);
+        }
+
+        if (verdict.failure() == null) {
+            return check;
+        }
+        log.info("SQL rejected by the cost gate: {}", verdict.detail());
+        return new SqlCheck(check.sql(), EnumSet.of(verdict.failure()), List.of(verdict.detail()));
+    }
+
+    public long getHits() {
+        return hits.get();
+    }
+
+    public long getMisses() {
+        return misses.get();
+    }
+
+    public long getSizeEvictions() {
+        return sizeEvictions.get();
+    }
+
+    public int size() {
+        synchronized (verdicts) {
+            return verdicts.size();
+        }
+    }
+
+    // null when there is no plan to judge: not MySQL, or EXPLAIN failed for a reason that is not the SQL's fault.
+    // Such candidates pass; running them will hit the same problem and report it.
+    private Verdict plan(String sql) {
+        Optional<String> json;
+        try {
+            json = sqlQueryExecutionService.explainAsJson(sql);
+        } catch (RuntimeException e) {
+            SQLException rejected = sqlError(e);
+            if (rejected == null) {
+                log.warn("EXPLAIN failed, cost gate skipped: {}", e.getMessage());
+                return null;
+            }
+            return verdict(SqlRejectReason.EXPLAIN_FAILED, "MySQL rejected it: " + rejected.getMessage());
+        }
+        if (json.isEmpty()) {
+            return null;
+        }
+
+        try {
+            String problem = judge(objectMapper.readTree(json.get()));
+            return verdict(problem == null ? null : SqlRejectReason.COST_LIMIT, problem);
+        } catch (JsonProcessingException e) {
+            log.warn("Unreadable EXPLAIN output, cost gate skipped: {}", e.getOriginalMessage());
+            return null;
+        }
+    }
+
+    // What is too expensive about the plan, or null if nothing is.
+    String judge(JsonNode plan) {
+        List<String> fullScans = new ArrayList<>();
+        long examined = Math.round(examinedRows(plan, 1, fullScans));
+        if (!fullScans.isEmpty()) {
+            return "the plan scans " + String.join(", ", fullScans) + " (limit " + maxFullScanRows + " rows per scan)";
+        }
+        if (examined > maxExaminedRows) {
+            return "the plan reads about " + examined + " rows (limit " + maxExaminedRows + ")";
+        }
+        return null;
+    }
+
+    // Rows read by the plan under node, when every row of it is read prefixRows times. In a nested_loop each table
+    // is read once per row produced by the tables before it (rows_produced_per_join is that running total).
+    private double examinedRows(JsonNode node, double prefixRows, List<String> fullScans) {
+        if (node.isArray()) {
+            double total = 0;
+            for (JsonNode element : node) {
+                total += examinedRows(element, prefixRows, fullScans);
+            }
+            return total;
+        }
+        if (!node.isObject()) {
+            return 0;
+        }
+
+        double total = 0;
+        JsonNode nestedLoop = node.get("nested_loop");
+        if (nestedLoop != null && nestedLoop.isArray()) {
+            double rows = prefixRows;
+            for (JsonNode step : nestedLoop) {
+                total += examinedRows(step, rows, fullScans);
+                JsonNode table = step.get("table");
+                if (table != null && table.has("rows_produced_per_join")) {
+                    rows = prefixRows * table.get("rows_produced_per_join").asDouble();
+                }
+            }
+        }
+
+        JsonNode table = node.get("table");
+        if (table != null && table.isObject()) {
+            double perScan = table.path("rows_examined_per_scan").asDouble();
+            String accessType = table.path("access_type").asText();
+            if (fullScanAccessTypes.contains(accessType) && perScan > maxFullScanRows) {
+                fullScans.add("all of " + table.path("table_name").asText("?") + " (access type " + accessType + ", ~" + Math.round(perScan) + " rows)");
+            }
+            total += prefixRows * perScan;
+            total += examinedRows(table, prefixRows, fullScans);
+        }
+
+        Iterator<Map.Entry<String, JsonNode>> fields = node.fields();
+        while (fields.hasNext()) {
+            Map.Entry<String, JsonNode> field = fields.next();
+            if (!field.getKey().equals("nested_loop") && !field.getKey().equals("table") && field.getValue().isContainerNode()) {
+                total += examinedRows(field.getValue(), prefixRows, fullScans);
+            }
+        }
+        return total;
+    }
+
+    // The template the query runs as, e.g. SELECT ... WHERE b.user_id = ? AND MONTH(t.time_stamp) = ?
+    static String shapeOf(String sql) {
+        return SqlShapeValidator.parameterize(sql).template();
+    }
+
+    private Verdict verdict(SqlRejectReason failure, String detail) {
+        return new Verdict(failure, detail, System.currentTimeMillis() + ttlMillis);
+    }
+
+    private Verdict cached(String shape) {
+        if (maxEntries <= 0) {
+            return null;
+        }
+        Verdict verdict;
+        synchronized (verdicts) {
+            verdict = verdicts.get(shape);
+            if (verdict != null && verdict.expiresAtMillis() <= System.currentTimeMillis()) {
+                verdicts.remove(shape);
+                verdict = null;
+            }
+        }
+        (verdict == null ? misses : hits).incrementAndGet();
+        return verdict;
+    }
+
+    private void store(String shape, Verdict verdict) {
+        if (maxEntries <= 0) {
+            return;
+        }
+        synchronized (verdicts) {
+            verdicts.put(shape, verdict);
+            Iterator<Map.Entry<String, Verdict>> eldest = verdicts.entrySet().iterator();
+            while (verdicts.size() > maxEntries && eldest.hasNext()) {
+                eldest.next();
+                eldest.remove();
+                sizeEvictions.incrementAndGet();
+            }
+        }
+    }
+
+    // The SQL error behind a failed EXPLAIN when it is about the statement itself (SQLSTATE class 42: syntax,
+    // unknown table or column, ...), null for connection trouble and the like.
+    private static SQLException sqlError(Throwable e) {
+        for (Throwable cause = e; cause != null; cause = cause.getCause()) {
+            if (cause instanceof SQLException sqlException && sqlException.getSQLState() != null && sqlException.getSQLState().startsWith("42")) {
+                return sqlException;
+            }
+        }
+        return null;
+    }
+}
@@ -0,0 +1,211 @@
+package com.example.demo.service;
+
+import com.example.demo.constants.Constants;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Bounded LRU cache of SQL produced by the SqlCoder model, keyed on the canonical form of the
+ * {@link PromptConstraints} plus the normalized question. Only temperature 0 generations are stored, not sampled
+ * speculative candidates, so the same question always gives the same SQL and the model round trip can be skipped.
+ * The question is part of the key because the constraints alone do not tell "list my Fuel transactions in May"
+ * from "count" them.
+ *
+ * The user_id / budget_id literals are stored as placeholders so an entry can be shared by every
+ * user asking the same question. Only SQL that already passed the validation gates is stored.
+ */
+@Component
+@Slf4j
+public class SqlQueryCache {
+
+    private static final String USER_ID_PLACEHOLDER = "{user_id}";
+    private static final String BUDGET_ID_PLACEHOLDER = "{budget_id}";
+
+    private static final Pattern NON_WORD = Pattern.compile("[^\\p{L}\\p{N}]+");
+
+    private final int maxEntries;
+    private final long ttlMillis;
+
+    // Access ordered, so the eldest entry is always the least recently used one.
+    private final LinkedHashMap<String, CachedSql> entries = new LinkedHashMap<>(16, 0.75f, true);
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong sizeEvictions = new AtomicLong();
+    private final AtomicLong expiredEvictions = new AtomicLong();
+
+    private record CachedSql(String sqlTemplate, long expiresAtMillis) {}
+
+    public SqlQueryCache(
+            @Value("${sqlcoder.cache.max-entries:1000}") int maxEntries,
+            @Value("${sqlcoder.cache.ttl-seconds:3600}") long ttlSeconds
+    ) {
+        this.maxEntries = maxEntries;
+        this.ttlMillis = ttlSeconds * 1000L;
+    }
+
+    Optional<String> get(PromptConstraints constraints) {
+        if (maxEntries <= 0 || constraints == null) {
+            return Optional.empty();
+        }
+
+        String key = keyOf(constraints);
+        CachedSql cached;
+        synchronized (entries) {
+            cached = entries.get(key);
+            if (cached != null && cached.expiresAtMillis() <= System.currentTimeMillis()) {
+                entries.remove(key);
+                expiredEvictions.incrementAndGet();
+                cached = null;
+            }
+        }
+
+        if (cached == null) {
+            misses.incrementAndGet();
+            log.info("SQL cache miss. hitRatio={}, size={}", getHitRatio(), size());
+            return Optional.empty();
+        }
+
+        hits.incrementAndGet();
+        log.info("SQL cache hit. hitRatio={}, size={}", getHitRatio(), size());
+        return Optional.of(bind(cached.sqlTemplate(), constraints));
+    }
+
+    void put(PromptConstraints constraints, String sql) {
+        if (maxEntries <= 0 || constraints == null || sql == null || sql.isBlank()) {
+            return;
+        }
+
+        String template = parameterize(sql, constraints);
+        if (template == null) {
+            log.info("SQL not cached; it references ids other than the requesting user/budget");
+            return;
+        }
+
+        String key = keyOf(constraints);
+        synchronized (entries) {
+            entries.put(key, new CachedSql(template, System.currentTimeMillis() + ttlMillis));
+            evictExpired();
+            Iterator<Map.Entry<String, CachedSql>> eldest = entries.entrySet().iterator();
+            while (entries.size() > maxEntries && eldest.hasNext()) {
+                eldest.next();
+                eldest.remove();
+                sizeEvictions.incrementAndGet();
+            }
+        }
+    }
+
+    public long getHits() {
+        return hits.get();
+    }
+
+    public long getMisses() {
+        return misses.get();
+    }
+
+    public long getSizeEvictions() {
+        return sizeEvictions.get();
+    }
+
+    public long getExpiredEvictions() {
+        return expiredEvictions.get();
+    }
+
+    public double getHitRatio() {
+        long h = hits.get();
+        long total = h + misses.get();
+        return total == 0 ? 0.0 : (double) h / total;
+    }
+
+    public int size() {
+        synchronized (entries) {
+            return entries.size();
+        }
+    }
+
+    // Canonical form of everything that influences the generated SQL, except the user/budget ids.
+    // Ex: SPEND_TOTAL|c=[fuel, utilities]|m=[5, 6]|mm=true|y=2026|q=how much did i spend on fuel and utilities in may and june
+    static String keyOf(PromptConstraints constraints) {
+        List<String> categories = (constraints.requiredCategories() == null) ? List.of()
+                : constraints.requiredCategories().stream()
+                        .filter(Objects::nonNull)
+                        .map(c -> c.toLowerCase(Locale.ROOT))
+                        .distinct()
+                        .sorted()
+                        .toList();
+        List<Integer> months = (constraints.monthsFound() == null) ? List.of()
+                : constraints.monthsFound().stream()
+                        .filter(Objects::nonNull)
+                        .distinct()
+                        .sorted()
+                        .toList();
+
+        return constraints.intent()
+                + "|c=" + categories
+                + "|m=" + months
+                + "|mm=" + constraints.multiMonth()
+                + "|y=" + constraints.requiredYear()
+                + "|q=" + normalizeQuestion(constraints.prompt());
+    }
+
+    // Lower case words only: case, punctuation and spacing do not change the question.
+    static String normalizeQuestion(String prompt) {
+        if (prompt == null) {
+            return "";
+        }
+        return NON_WORD.matcher(prompt.toLowerCase(Locale.ROOT)).replaceAll(" ").trim();
+    }
+
+    // Caller must hold the lock on entries.
+    private void evictExpired() {
+        long now = System.currentTimeMillis();
+        Iterator<Map.Entry<String, CachedSql>> it = entries.entrySet().iterator();
+        while (it.hasNext()) {
+            if (it.next().getValue().expiresAtMillis() <= now) {
+                it.remove();
+                expiredEvictions.incrementAndGet();
+            }
+        }
+    }
+
+    // Replaces the requesting user_id / budget_id literals with placeholders.
+    // Returns null if the SQL contains any other id literal, since it could not be shared safely.
+    private static String parameterize(String sql, PromptConstraints constraints) {
+        String out = replaceIdLiteral(sql, Constants.SQL_USER_ID_EQUALS_PATTERN, constraints.userId(), USER_ID_PLACEHOLDER);
+        if (out == null) return null;
+        return replaceIdLiteral(out, Constants.SQL_BUDGET_ID_EQUALS_PATTERN, constraints.budgetId(), BUDGET_ID_PLACEHOLDER);
+    }
+
+    private static String replaceIdLiteral(String sql, Pattern pattern, Long expectedId, String placeholder) {
+        Matcher matcher = pattern.matcher(sql);
+        StringBuilder sb = new StringBuilder();
+        int last = 0;
+        while (matcher.find()) {
+            if (expectedId == null || !String.valueOf(expectedId).equals(matcher.group(1))) {
+                return null;
+            }
+            sb.append(sql, last, matcher.start(1)).append(placeholder);
+            last = matcher.end(1);
+        }
+        sb.append(sql, last, sql.length());
+        return sb.toString();
+    }
+
+    private static String bind(String template, PromptConstraints constraints) {
+        return template
+                .replace(USER_ID_PLACEHOLDER, String.valueOf(constraints.userId()))
+                .replace(BUDGET_ID_PLACEHOLDER, String.valueOf(constraints.budgetId()));
+    }
+}
@@ -1,31 +1,328 @@
 package com.example.demo.service;
 
+import com.example.demo.dto.QueryResult;
+import com.zaxxer.hikari.HikariDataSource;
 import lombok.extern.slf4j.Slf4j;
-import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.ColumnMapRowMapper;
+import org.springframework.jdbc.core.ResultSetExtractor;
+import org.springframework.jdbc.core.RowMapperResultSetExtractor;
 import org.springframework.stereotype.Service;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.sql.SQLTimeoutException;
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 
 
+/**
+ * Runs the model-generated SQL. It is untrusted and its cost is unknown, so it never touches the application's pools:
+ * it gets the small read-only insights-sql pools of DataSourceConfig (the replica's while it is in use, like any
+ * read-only work), at most insights.query.pool-size statements at once and at most queue-capacity more waiting up to
+ * max-wait-ms for a connection ({@link Bulkhead}, as for the Ollama pipeline). Past that a query is rejected as busy.
+ *
+ * Queries arrive as templates with bind parameters (SqlShapeValidator.parameterize), so every query of a shape has
+ * the same text and MySQL reuses the server-side prepared statement each connection keeps for it (cachePrepStmts on
+ * the insights-sql pools) instead of parsing and planning it again.
+ *
+ * Every statement carries a MAX_EXECUTION_TIME hint, so MySQL stops it after timeout-seconds, and a JDBC query timeout
+ * one second later in case the server does not. A timed-out statement's connection is evicted instead of being
+ * given back, so it is never handed to the next query.
+ */
 @Service
 @Slf4j
 public class SqlQueryExecutionService {
 
-    @Autowired
-    private JdbcTemplate jdbcTemplate;
+    // MySQL's error for a statement stopped by MAX_EXECUTION_TIME.
+    private static final int MAX_EXECUTION_TIME_EXCEEDED = 3024;
+    private static final Pattern LEADING_SELECT = Pattern.compile("^\\s*SELECT\\b", Pattern.CASE_INSENSITIVE);
+
+    private final HikariDataSource primaryPool;
+    // null without a replica
+    private final HikariDataSource replicaPool;
+    private final ReadReplicaRouter readReplicaRouter;
+    private final boolean mysql;
+
+    private final Bulkhead bulkhead;
+    private final AtomicLong timeouts = new AtomicLong();
+
+    // Rows kept from a generated query; anything past it is dropped and the result is flagged as truncated.
+    @Value("${insights.query.max-rows:500}")
+    private int maxRows;
+
+    // Rows per round trip. MySQL honours it through useCursorFetch=true on the insights-sql pools (DataSourceConfig).
+    @Value("${insights.query.fetch-size:100}")
+    private int fetchSize;
+
+    @Value("${insights.query.timeout-seconds:10}")
+    private int timeoutSeconds;
+
+    public SqlQueryExecutionService(
+            @Qualifier("insightsQueryPrimaryDataSource") HikariDataSource primaryPool,
+            @Qualifier("insightsQueryReplicaDataSource") Optional<HikariDataSource> replicaPool,
+            ReadReplicaRouter readReplicaRouter,
+            @Value("${insights.query.pool-size:2}") int poolSize,
+            @Value("${insights.query.queue-capacity:8}") int queueCapacity,
+            @Value("${insights.query.max-wait-ms:10000}") long maxWaitMillis
+    ) {
+        if (poolSize < 1 || queueCapacity < 0) {
+            throw new IllegalArgumentException("insights.query.pool-size must be >= 1 and queue-capacity >= 0");
+        }
+        this.primaryPool = primaryPool;
+        this.replicaPool = replicaPool.orElse(null);
+        this.readReplicaRouter = readReplicaRouter;
+        this.mysql = primaryPool.getJdbcUrl() != null && primaryPool.getJdbcUrl().startsWith("jdbc:mysql:");
+        this.bulkhead = new Bulkhead("Generated query", "query connection", poolSize, queueCapacity, maxWaitMillis);
+    }
 
     public List<Map<String, Object>> executeQuery(String query) {
+        return execute(query, List.of(), 0, new RowMapperResultSetExtractor<>(new ColumnMapRowMapper()));
+    }
+
+    // Streams the rows of a generated query straight into per-column arrays instead of a map per row.
+    // The statement is capped at maxRows + 1 rows (the extra row only tells that the result was truncated)
+    // and reads fetchSize rows per round trip.
+    public QueryResult executeBounded(String query) {
+        return executeBounded(query, List.of());
+    }
+
+    // Same, for a template with one ? per parameter.
+    public QueryResult executeBounded(String sqlTemplate, List<Object> parameters) {
+        return execute(sqlTemplate, parameters, maxRows + 1, this::readColumns);
+    }
+
+    // MySQL's plan of a query as JSON, without running it; empty on other databases. Queues like any other query.
+    public Optional<String> explainAsJson(String query) {
+        if (!mysql) {
+            return Optional.empty();
+        }
+        return Optional.ofNullable(execute("EXPLAIN FORMAT=JSON " + query, List.of(), 1, resultSet -> resultSet.next() ? resultSet.getString(1) : null));
+    }
+
+    public int getActive() {
+        return bulkhead.getActive();
+    }
+
+    public int getWaiting() {
+        return bulkhead.getWaiting();
+    }
+
+    public long getAccepted() {
+        return bulkhead.getAccepted();
+    }
+
+    public long getRejected() {
+        return bulkhead.getRejected();
+    }
+
+    public long getTimeouts() {
+        return timeouts.get();
+    }
+
+    private <T> T execute(String query, List<Object> parameters, int rowLimit, ResultSetExtractor<T> extractor) {
+        // Waits in the bounded queue for one of the pool-size slots.
+        try (Bulkhead.Permit ignored = bulkhead.acquire()) {
+            HikariDataSource pool = replicaPool != null && readReplicaRouter.useReplica() ? replicaPool : primaryPool;
+            return run(pool, query, parameters, rowLimit, extractor);
+        }
+    }
+
+    private <T> T run(HikariDataSource pool, String query, List<Object> parameters, int rowLimit, ResultSetExtractor<T> extractor) {
+        Connection connection = null;
+        boolean timedOut = false;
         try {
-            return jdbcTemplate.queryForList(query);
-        } catch (Exception e) {
-            Throwable root = org.springframework.core.NestedExceptionUtils.getMostSpecificCause(e);
-            if (root == null) {
-                root = e;
+            connection = pool.getConnection();
+            try (PreparedStatement statement = connection.prepareStatement(withExecutionTimeLimit(query), ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY)) {
+                statement.setFetchSize(fetchSize);
+                statement.setMaxRows(rowLimit);
+                statement.setQueryTimeout(timeoutSeconds + 1);
+                for (int i = 0; i < parameters.size(); i++) {
+                    statement.setObject(i + 1, parameters.get(i));
+                }
+                try (ResultSet resultSet = statement.executeQuery()) {
+                    return extractor.extractData(resultSet);
+                }
+            }
+        } catch (SQLException | RuntimeException e) {
+            timedOut = isTimeout(e);
+            if (timedOut) {
+                timeouts.incrementAndGet();
+                log.warn("Generated query cancelled after {} s", timeoutSeconds);
+            }
+            throw queryFailed(parameters.isEmpty() ? query : query + " with " + parameters, e);
+        } finally {
+            if (connection != null) {
+                release(pool, connection, timedOut);
             }
-            String rootMsg = (root.getMessage() == null) ? "<no message>" : root.getMessage();
-            log.error("Failed to execute query. Root cause: {}. Query: {}", rootMsg, query, e);
-            throw new RuntimeException("Failed to execute query: " + query + " | DB error: " + rootMsg, e);
         }
     }
-}
\ No newline at end of file
+
+    // The hint goes right after the leading SELECT (the SQL checks guarantee there is one). Other databases read it
+    // as a plain comment and rely on the JDBC timeout.
+    private String withExecutionTimeLimit(String query) {
+        Matcher select = LEADING_SELECT.matcher(query);
+        if (!select.find()) {
+            return query;
+        }
+        return query.substring(0, select.end()) + " /*+ MAX_EXECUTION_TIME(" + timeoutSeconds * 1000L + ") */" + query.substring(select.end());
+    }
+
+    private static boolean isTimeout(Throwable e) {
+        for (Throwable cause = e; cause != null; cause = cause.getCause()) {
+            if (cause instanceof SQLTimeoutException
+                    || cause instanceof SQLException sqlException && sqlException.getErrorCode() == MAX_EXECUTION_TIME_EXCEEDED) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    // A cancelled session may still be draining its cursor or waiting for the KILL QUERY, so after a timeout the
+    // connection is evicted while this thread still holds it: Hikari then closes it for good right away, and it is
+    // never back in the pool where the next query could borrow it. The pool opens a new one.
+    private static void release(HikariDataSource pool, Connection connection, boolean evict) {
+        if (evict) {
+            pool.evictConnection(connection);
+            return;
+        }
+        try {
+            connection.close();
+        } catch (SQLException e) {
+            log.warn("Could not return a query connection: {}", e.getMessage());
+        }
+    }
+
+    private QueryResult readColumns(ResultSet resultSet) throws SQLException {
+        ResultSetMetaData metaData = resultSet.getMetaData();
+        int columnCount = metaData.getColumnCount();
+        List<String> columns = new ArrayList<>(columnCount);
+        ColumnBuilder[] builders = new ColumnBuilder[columnCount];
+        for (int c = 0; c < columnCount; c++) {
+            columns.add(metaData.getColumnLabel(c + 1));
+            builders[c] = new ColumnBuilder(kindOf(metaData, c + 1), Math.min(maxRows, 16));
+        }
+
+        int rowCount = 0;
+        boolean truncated = false;
+        while (resultSet.next()) {
+            if (rowCount == maxRows) {
+                truncated = true;
+                break;
+            }
+            for (int c = 0; c < columnCount; c++) {
+                builders[c].read(resultSet, c + 1);
+            }
+            rowCount++;
+        }
+
+        List<Object> columnValues = new ArrayList<>(columnCount);
+        for (ColumnBuilder builder : builders) {
+            columnValues.add(builder.build());
+        }
+        if (truncated) {
+            log.warn("Query result truncated to {} rows", maxRows);
+        }
+        return new QueryResult(columns, columnValues, rowCount, truncated);
+    }
+
+    private enum ColumnKind { LONG, DOUBLE, TEXT, OBJECT }
+
+    private static ColumnKind kindOf(ResultSetMetaData metaData, int column) throws SQLException {
+        return switch (metaData.getColumnType(column)) {
+            case Types.TINYINT, Types.SMALLINT, Types.INTEGER, Types.BIGINT -> ColumnKind.LONG;
+            // SUM over the BIGINT amount columns comes back as DECIMAL with scale 0.
+            case Types.DECIMAL, Types.NUMERIC -> metaData.getScale(column) == 0 ? ColumnKind.LONG : ColumnKind.DOUBLE;
+            case Types.DOUBLE, Types.FLOAT, Types.REAL -> ColumnKind.DOUBLE;
+            case Types.DATE, Types.TIME, Types.TIMESTAMP, Types.CHAR, Types.VARCHAR, Types.LONGVARCHAR -> ColumnKind.TEXT;
+            default -> ColumnKind.OBJECT;
+        };
+    }
+
+    // Growable typed array for one column. Numeric columns fall back to boxed values only if they contain NULLs.
+    private static final class ColumnBuilder {
+        private final ColumnKind kind;
+        private long[] longs;
+        private double[] doubles;
+        private Object[] objects;
+        private final BitSet nulls = new BitSet();
+        private int size;
+
+        ColumnBuilder(ColumnKind kind, int capacity) {
+            this.kind = kind;
+            int initial = Math.max(capacity, 1);
+            switch (kind) {
+                case LONG -> longs = new long[initial];
+                case DOUBLE -> doubles = new double[initial];
+                default -> objects = new Object[initial];
+            }
+        }
+
+        void read(ResultSet resultSet, int column) throws SQLException {
+            switch (kind) {
+                case LONG -> {
+                    if (size == longs.length) longs = Arrays.copyOf(longs, size * 2);
+                    longs[size] = resultSet.getLong(column);
+                }
+                case DOUBLE -> {
+                    if (size == doubles.length) doubles = Arrays.copyOf(doubles, size * 2);
+                    doubles[size] = resultSet.getDouble(column);
+                }
+                case TEXT -> {
+                    if (size == objects.length) objects = Arrays.copyOf(objects, size * 2);
+                    objects[size] = resultSet.getString(column);
+                }
+                case OBJECT -> {
+                    if (size == objects.length) objects = Arrays.copyOf(objects, size * 2);
+                    objects[size] = resultSet.getObject(column);
+                }
+            }
+            if (resultSet.wasNull()) {
+                nulls.set(size);
+            }
+            size++;
+        }
+
+        Object build() {
+            switch (kind) {
+                case LONG -> {
+                    if (nulls.isEmpty()) return Arrays.copyOf(longs, size);
+                    Long[] boxed = new Long[size];
+                    for (int i = 0; i < size; i++) boxed[i] = nulls.get(i) ? null : longs[i];
+                    return boxed;
+                }
+                case DOUBLE -> {
+                    if (nulls.isEmpty()) return Arrays.copyOf(doubles, size);
+                    Double[] boxed = new Double[size];
+                    for (int i = 0; i < size; i++) boxed[i] = nulls.get(i) ? null : doubles[i];
+                    return boxed;
+                }
+                default -> {
+                    return Arrays.copyOf(objects, size);
+                }
+            }
+        }
+    }
+
+    private static RuntimeException queryFailed(String query, Exception e) {
+        Throwable root = org.springframework.core.NestedExceptionUtils.getMostSpecificCause(e);
+        if (root == null) {
+            root = e;
+        }
+        String rootMsg = (root.getMessage() == null) ? "<no message>" : root.getMessage();
+        log.error("Failed to execute query. Root cause: {}. Query: {}", rootMsg, query, e);
+        return new RuntimeException("Failed to execute query: " + query + " | DB error: " + rootMsg, e);
+    }
+}
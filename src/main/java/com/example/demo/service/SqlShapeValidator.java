@@ -0,0 +1,630 @@
+package com.example.demo.service;
+
+import com.example.demo.constants.Constants;
+import com.example.demo.enums.SqlRejectReason;
+import com.example.demo.service.SqlTokenizer.Token;
+import com.example.demo.service.SqlTokenizer.TokenType;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+
+/**
+ * Validates and canonicalizes model-generated SQL from a single token stream (see {@link SqlTokenizer}).
+ *
+ * Accepted shapes:
+ * - SELECT ... FROM `transaction` t JOIN budget b ON b.budget_id = t.budget_id WHERE b.user_id = <id> ...
+ * - SELECT ... FROM category_month_spend r WHERE r.user_id = <id> ...
+ *
+ * Canonicalization renames whatever aliases the model picked to t / b / r, qualifies bare columns and always
+ * backticks `transaction`. The scope checks (user, category, month, year) only count predicates that are
+ * top-level AND conjuncts of the WHERE clause, so they cannot be bypassed with an OR, a subquery or a quoted string.
+ *
+ * Accepted SQL is executed as a template: {@link #parameterize} turns the WHERE literals into bind parameters.
+ */
+final class SqlShapeValidator {
+
+    private SqlShapeValidator() {}
+
+    private static final String TRANSACTION_TABLE = "transaction";
+    private static final String BUDGET_TABLE = "budget";
+    private static final String ROLLUP_TABLE = "category_month_spend";
+    private static final Token PARAMETER = new Token(TokenType.SYMBOL, "?");
+    private static final BigDecimal MAX_LONG = BigDecimal.valueOf(Long.MAX_VALUE);
+
+    private static final Set<String> ALLOWED_SYMBOLS = Set.of("(", ")", ",", ".", "=", "<", ">", "<=", ">=", "<>", "!=", "*", "+", "-", "/", "%");
+    private static final Set<String> CLAUSE_AFTER_FROM = Set.of("WHERE", "GROUP", "HAVING", "ORDER", "LIMIT");
+    private static final Set<String> CLAUSE_AFTER_WHERE = Set.of("GROUP", "HAVING", "ORDER", "LIMIT");
+    // Operators that bind more loosely than AND: next to them an ANDed filter no longer holds for every row.
+    private static final Set<String> DISJUNCTIONS = Set.of("OR", "XOR");
+    private static final Set<String> JOIN_WORDS = Set.of("JOIN", "INNER", "LEFT", "RIGHT", "OUTER", "CROSS", "NATURAL", "STRAIGHT_JOIN", "ON", "USING");
+    // Words after which "(" is a grouping / list, not a function call (affects spacing only).
+    private static final Set<String> WORDS_BEFORE_GROUPING = Set.of("IN", "AND", "OR", "ON", "FROM", "JOIN", "WHERE", "NOT", "AS", "SELECT", "BY", "HAVING", "WHEN", "THEN", "ELSE", "CASE", "DISTINCT");
+
+    // Bare column names that get the table alias prefixed, per shape.
+    private static final Map<String, String> TRANSACTION_SHAPE_COLUMNS = Map.of(
+            "category", "t", "amount_spend", "t", "time_stamp", "t", "priority", "t", "transaction_id", "t", "user_id", "b");
+    // total_spent is left alone: it is usually the SUM(...) alias used in ORDER BY.
+    private static final Map<String, String> ROLLUP_SHAPE_COLUMNS = Map.of(
+            "category", "r", "spend_year", "r", "spend_month", "r", "transaction_count", "r", "user_id", "r", "budget_id", "r");
+
+    private enum Shape { TRANSACTION, ROLLUP }
+
+    // A table in FROM/JOIN: tokens [start, end) hold the name and the optional [AS] alias.
+    private record TableRef(String table, String alias, int start, int end) {}
+
+    // A WHERE predicate reduced to "key IN values", e.g. month(t.time_stamp) -> {5, 6}. Values are lower-cased.
+    private record Predicate(String key, Set<String> values) {}
+
+    static SqlCheck check(String sql, PromptConstraints constraints) {
+        Set<SqlRejectReason> failures = EnumSet.noneOf(SqlRejectReason.class);
+        Set<String> details = new LinkedHashSet<>();
+
+        if (sql == null || sql.isBlank()) {
+            return reject(sql, SqlRejectReason.NOT_SELECT, "No SQL found in the output");
+        }
+
+        List<Token> tokens;
+        try {
+            tokens = new ArrayList<>(SqlTokenizer.tokenize(sql));
+        } catch (IllegalArgumentException ex) {
+            return reject(sql, SqlRejectReason.NOT_SELECT, ex.getMessage());
+        }
+        while (!tokens.isEmpty() && tokens.get(tokens.size() - 1).isSymbol(";")) {
+            tokens.remove(tokens.size() - 1);
+        }
+        if (tokens.isEmpty() || !tokens.get(0).isWord("SELECT")) {
+            return reject(sql, SqlRejectReason.NOT_SELECT, "The query must start with SELECT");
+        }
+
+        scanForBannedSyntax(tokens, failures, details);
+
+        Shape shape = checkFromClause(tokens, failures, details);
+        if (shape != null) {
+            tokens = canonicalize(tokens, shape);
+            if (shape == Shape.TRANSACTION) {
+                checkBudgetJoin(tokens, failures, details);
+            }
+            checkScope(tokens, shape, constraints, failures, details);
+        }
+
+        return new SqlCheck(render(tokens), failures, List.copyOf(details));
+    }
+
+    private static SqlCheck reject(String sql, SqlRejectReason reason, String detail) {
+        return new SqlCheck(sql, EnumSet.of(reason), List.of(detail));
+    }
+
+    // ---- Syntax ----
+
+    private static void scanForBannedSyntax(List<Token> tokens, Set<SqlRejectReason> failures, Set<String> details) {
+        for (int i = 0; i < tokens.size(); i++) {
+            Token token = tokens.get(i);
+            Token next = (i + 1 < tokens.size()) ? tokens.get(i + 1) : null;
+
+            if (token.type() == TokenType.SYMBOL) {
+                if (token.isSymbol(";")) {
+                    failures.add(SqlRejectReason.NOT_SELECT);
+                    details.add("Only one SQL statement is allowed");
+                } else if (!ALLOWED_SYMBOLS.contains(token.text())) {
+                    failures.add(SqlRejectReason.BANNED_SYNTAX);
+                    details.add("uses operator " + token.text());
+                }
+                continue;
+            }
+            if (token.type() != TokenType.WORD) {
+                continue;
+            }
+
+            String word = token.text().toUpperCase(Locale.ROOT);
+            if (word.equals("SELECT") && i > 0) {
+                failures.add(SqlRejectReason.TABLE_SHAPE);
+                details.add("subqueries are not allowed");
+            } else if (Constants.SQL_BANNED_KEYWORDS.contains(word)) {
+                failures.add(SqlRejectReason.BANNED_SYNTAX);
+                details.add("uses " + word);
+            } else if (next != null && ((word.equals("INTERVAL") && next.type() == TokenType.STRING)
+                    || (word.equals("DISTINCT") && next.isWord("ON"))
+                    || (word.equals("FILTER") && next.isSymbol("("))
+                    || (word.equals("ARRAY") && next.isSymbol("[")))) {
+                failures.add(SqlRejectReason.BANNED_SYNTAX);
+                details.add("uses " + word + " " + (next.type() == TokenType.STRING ? "'" + next.text() + "'" : next.text()));
+            }
+        }
+    }
+
+    // ---- FROM / JOIN ----
+
+    // Works out which of the two accepted shapes the query has; null if neither.
+    private static Shape checkFromClause(List<Token> tokens, Set<SqlRejectReason> failures, Set<String> details) {
+        int from = indexOfWord(tokens, 0, tokens.size(), "FROM");
+        if (from < 0) {
+            failures.add(SqlRejectReason.TABLE_SHAPE);
+            details.add("missing FROM clause");
+            return null;
+        }
+        int fromEnd = indexOfAnyWord(tokens, from + 1, tokens.size(), CLAUSE_AFTER_FROM);
+
+        List<TableRef> refs = parseTableRefs(tokens, from + 1, fromEnd);
+        if (refs == null) {
+            failures.add(SqlRejectReason.TABLE_SHAPE);
+            details.add("unsupported FROM/JOIN clause");
+            return null;
+        }
+
+        TableRef base = refs.get(0);
+        Shape shape = switch (base.table()) {
+            case TRANSACTION_TABLE -> Shape.TRANSACTION;
+            case ROLLUP_TABLE -> Shape.ROLLUP;
+            default -> null;
+        };
+        if (shape == null) {
+            failures.add(SqlRejectReason.TABLE_SHAPE);
+            details.add("reads from table " + base.table() + " (allowed: `transaction`, " + ROLLUP_TABLE + ")");
+            return null;
+        }
+
+        List<TableRef> joins = refs.subList(1, refs.size());
+        if (shape == Shape.ROLLUP && !joins.isEmpty()) {
+            failures.add(SqlRejectReason.TABLE_SHAPE);
+            details.add(ROLLUP_TABLE + " must not be joined to other tables");
+            return null;
+        }
+        if (shape == Shape.TRANSACTION && (joins.size() != 1 || !joins.get(0).table().equals(BUDGET_TABLE))) {
+            failures.add(SqlRejectReason.TABLE_SHAPE);
+            details.add(joins.isEmpty() ? "does not JOIN budget"
+                    : "joins " + joins.stream().map(TableRef::table).toList() + " (only budget may be joined)");
+            return null;
+        }
+        return shape;
+    }
+
+    // table [[AS] alias] { [INNER|LEFT|...] JOIN table [[AS] alias] ON <condition> }. Returns null if it is anything else.
+    private static List<TableRef> parseTableRefs(List<Token> tokens, int start, int end) {
+        List<TableRef> refs = new ArrayList<>(2);
+        TableRef base = parseTableRef(tokens, start, end);
+        if (base == null) return null;
+        refs.add(base);
+
+        int i = base.end();
+        while (i < end) {
+            while (i < end && (tokens.get(i).isWord("INNER") || tokens.get(i).isWord("LEFT")
+                    || tokens.get(i).isWord("RIGHT") || tokens.get(i).isWord("OUTER"))) {
+                i++;
+            }
+            if (i >= end || !tokens.get(i).isWord("JOIN")) return null;
+
+            TableRef join = parseTableRef(tokens, i + 1, end);
+            if (join == null || join.end() >= end || !tokens.get(join.end()).isWord("ON")) return null;
+            refs.add(join);
+
+            // The ON condition runs until the next JOIN (or the end of the FROM clause).
+            i = join.end() + 1;
+            while (i < end && !tokens.get(i).isWord("JOIN") && !tokens.get(i).isWord("INNER")
+                    && !tokens.get(i).isWord("LEFT") && !tokens.get(i).isWord("RIGHT")) {
+                i++;
+            }
+        }
+        return refs;
+    }
+
+    private static TableRef parseTableRef(List<Token> tokens, int start, int end) {
+        if (start >= end || !tokens.get(start).isName()) return null;
+        String table = tokens.get(start).text().toLowerCase(Locale.ROOT);
+        int i = start + 1;
+        String alias = null;
+        if (i < end && tokens.get(i).isWord("AS")) {
+            i++;
+            if (i >= end || !tokens.get(i).isName()) return null;
+        }
+        if (i < end && tokens.get(i).isName() && !JOIN_WORDS.contains(tokens.get(i).text().toUpperCase(Locale.ROOT))) {
+            alias = tokens.get(i).text().toLowerCase(Locale.ROOT);
+            i++;
+        }
+        return new TableRef(table, alias, start, i);
+    }
+
+    // ON must be exactly b.budget_id = t.budget_id (either side first).
+    private static void checkBudgetJoin(List<Token> tokens, Set<SqlRejectReason> failures, Set<String> details) {
+        int on = indexOfWord(tokens, 0, tokens.size(), "ON");
+        int end = indexOfAnyWord(tokens, on + 1, tokens.size(), CLAUSE_AFTER_FROM);
+        boolean ok = on >= 0 && end - on == 8
+                && tokens.get(on + 4).isSymbol("=")
+                && isColumn(tokens, on + 1, "budget_id") && isColumn(tokens, on + 5, "budget_id")
+                && Set.of(tokens.get(on + 1).text(), tokens.get(on + 5).text()).equals(Set.of("b", "t"));
+        if (!ok) {
+            failures.add(SqlRejectReason.TABLE_SHAPE);
+            details.add("the join must be ON b.budget_id = t.budget_id");
+        }
+    }
+
+    // ---- Canonicalization ----
+
+    // Renames table aliases to t / b / r, backticks `transaction` and qualifies bare column names.
+    private static List<Token> canonicalize(List<Token> tokens, Shape shape) {
+        int from = indexOfWord(tokens, 0, tokens.size(), "FROM");
+        int fromEnd = indexOfAnyWord(tokens, from + 1, tokens.size(), CLAUSE_AFTER_FROM);
+        List<TableRef> refs = parseTableRefs(tokens, from + 1, fromEnd);
+
+        // Old qualifier (table name or model alias) -> canonical alias.
+        Map<String, String> aliases = new HashMap<>();
+        Map<Integer, TableRef> refsByStart = new HashMap<>();
+        for (TableRef ref : refs) {
+            String canonical = canonicalAlias(ref.table());
+            aliases.put(ref.table(), canonical);
+            if (ref.alias() != null) {
+                aliases.put(ref.alias(), canonical);
+            }
+            refsByStart.put(ref.start(), ref);
+        }
+        Map<String, String> bareColumns = (shape == Shape.TRANSACTION) ? TRANSACTION_SHAPE_COLUMNS : ROLLUP_SHAPE_COLUMNS;
+
+        List<Token> out = new ArrayList<>(tokens.size() + 16);
+        for (int i = 0; i < tokens.size(); i++) {
+            TableRef ref = refsByStart.get(i);
+            if (ref != null) {
+                out.add(ref.table().equals(TRANSACTION_TABLE)
+                        ? new Token(TokenType.QUOTED_IDENT, TRANSACTION_TABLE)
+                        : new Token(TokenType.WORD, ref.table()));
+                out.add(new Token(TokenType.WORD, canonicalAlias(ref.table())));
+                i = ref.end() - 1;
+                continue;
+            }
+
+            Token token = tokens.get(i);
+            Token prev = (i > 0) ? tokens.get(i - 1) : null;
+            Token next = (i + 1 < tokens.size()) ? tokens.get(i + 1) : null;
+            boolean qualifier = token.isName() && next != null && next.isSymbol(".");
+            boolean qualified = prev != null && prev.isSymbol(".");
+
+            if (qualifier && !qualified) {
+                String canonical = aliases.get(token.text().toLowerCase(Locale.ROOT));
+                out.add(canonical != null ? new Token(TokenType.WORD, canonical) : token);
+            } else if (token.isName() && !qualified && (next == null || !next.isSymbol("("))
+                    && (prev == null || !prev.isWord("AS"))
+                    && bareColumns.containsKey(token.text().toLowerCase(Locale.ROOT))) {
+                out.add(new Token(TokenType.WORD, bareColumns.get(token.text().toLowerCase(Locale.ROOT))));
+                out.add(new Token(TokenType.SYMBOL, "."));
+                out.add(new Token(TokenType.WORD, token.text().toLowerCase(Locale.ROOT)));
+            } else {
+                out.add(token);
+            }
+        }
+        return out;
+    }
+
+    private static String canonicalAlias(String table) {
+        return switch (table) {
+            case TRANSACTION_TABLE -> "t";
+            case BUDGET_TABLE -> "b";
+            default -> "r";
+        };
+    }
+
+    // ---- WHERE scope ----
+
+    private static void checkScope(List<Token> tokens, Shape shape, PromptConstraints constraints,
+                                   Set<SqlRejectReason> failures, Set<String> details) {
+        String alias = (shape == Shape.TRANSACTION) ? "t" : "r";
+        String userKey = (shape == Shape.TRANSACTION) ? "b.user_id" : "r.user_id";
+        String categoryKey = alias + ".category";
+        String monthKey = (shape == Shape.TRANSACTION) ? "month(t.time_stamp)" : "r.spend_month";
+        String yearKey = (shape == Shape.TRANSACTION) ? "year(t.time_stamp)" : "r.spend_year";
+
+        if (shape == Shape.TRANSACTION && containsColumn(tokens, "t", "user_id")) {
+            failures.add(SqlRejectReason.MISSING_USER_FILTER);
+            details.add("`transaction` has no user_id column (filter b.user_id)");
+        }
+
+        List<Predicate> predicates = new ArrayList<>();
+        int where = indexOfWord(tokens, 0, tokens.size(), "WHERE");
+        if (where >= 0) {
+            int whereEnd = indexOfAnyWord(tokens, where + 1, tokens.size(), CLAUSE_AFTER_WHERE);
+            int disjunction = indexOfAnyWord(tokens, where + 1, whereEnd, DISJUNCTIONS);
+            if (disjunction < whereEnd) {
+                // a AND b OR c is (a AND b) OR c, and a AND b XOR c is (a AND b) XOR c: nothing in it is guaranteed
+                // to hold for every row.
+                String word = tokens.get(disjunction).text().toUpperCase(Locale.ROOT);
+                failures.add(SqlRejectReason.TOP_LEVEL_OR);
+                details.add("top-level " + word + " in WHERE (wrap alternatives in parentheses)");
+            } else {
+                collectConjuncts(tokens, where + 1, whereEnd, predicates);
+            }
+        }
+
+        if (constraints == null) return;
+
+        if (constraints.userId() != null && constraints.userId() > 0
+                && !hasExactly(predicates, userKey, String.valueOf(constraints.userId()))) {
+            failures.add(SqlRejectReason.MISSING_USER_FILTER);
+        }
+
+        List<String> categories = constraints.requiredCategories();
+        if (categories != null && !categories.isEmpty()) {
+            for (String category : categories) {
+                if (category != null && !category.isBlank() && !hasValue(predicates, categoryKey, category.toLowerCase(Locale.ROOT))) {
+                    failures.add(SqlRejectReason.MISSING_CATEGORY_FILTER);
+                }
+            }
+        }
+
+        List<Integer> months = constraints.monthsFound();
+        if (constraints.multiMonth()) {
+            boolean allMonths = months.stream().filter(Objects::nonNull)
+                    .allMatch(m -> hasValue(predicates, monthKey, String.valueOf(m)));
+            if (!allMonths) failures.add(SqlRejectReason.MISSING_MONTH_FILTER);
+        } else if (constraints.requiredMonth() != null
+                && !hasExactly(predicates, monthKey, String.valueOf(constraints.requiredMonth()))) {
+            failures.add(SqlRejectReason.MISSING_MONTH_FILTER);
+        }
+
+        if (constraints.requiredYear() != null
+                && !hasExactly(predicates, yearKey, String.valueOf(constraints.requiredYear()))) {
+            failures.add(SqlRejectReason.MISSING_YEAR_FILTER);
+        }
+    }
+
+    // Splits [start, end) on top-level AND (the AND of a BETWEEN excepted) and records every recognised predicate.
+    private static void collectConjuncts(List<Token> tokens, int start, int end, List<Predicate> predicates) {
+        int depth = 0;
+        int conjunctStart = start;
+        boolean inBetween = false;
+        for (int i = start; i <= end; i++) {
+            if (i < end) {
+                Token token = tokens.get(i);
+                if (token.isSymbol("(")) depth++;
+                else if (token.isSymbol(")")) depth--;
+                else if (depth == 0 && token.isWord("BETWEEN")) inBetween = true;
+                if (!(depth == 0 && token.isWord("AND"))) continue;
+                if (inBetween) {
+                    inBetween = false;
+                    continue;
+                }
+            }
+            addConjunct(tokens, conjunctStart, i, predicates);
+            conjunctStart = i + 1;
+        }
+    }
+
+    private static void addConjunct(List<Token> tokens, int start, int end, List<Predicate> predicates) {
+        if (start >= end) return;
+
+        // (x = 1 OR x = 2) behaves like x IN (1, 2); (a AND b) is just two more conjuncts.
+        // A group with an XOR guarantees none of its filters, so it counts for nothing.
+        if (tokens.get(start).isSymbol("(") && closingParen(tokens, start) == end - 1) {
+            if (indexOfWord(tokens, start + 1, end - 1, "XOR") >= 0) {
+                return;
+            }
+            if (indexOfWord(tokens, start + 1, end - 1, "OR") >= 0) {
+                Predicate group = orGroup(tokens, start + 1, end - 1);
+                if (group != null) predicates.add(group);
+            } else {
+                collectConjuncts(tokens, start + 1, end - 1, predicates);
+            }
+            return;
+        }
+
+        Predicate predicate = simplePredicate(tokens, start, end);
+        if (predicate != null) predicates.add(predicate);
+    }
+
+    private static Predicate orGroup(List<Token> tokens, int start, int end) {
+        String key = null;
+        Set<String> values = new LinkedHashSet<>();
+        int disjunctStart = start;
+        int depth = 0;
+        for (int i = start; i <= end; i++) {
+            if (i < end) {
+                Token token = tokens.get(i);
+                if (token.isSymbol("(")) depth++;
+                else if (token.isSymbol(")")) depth--;
+                if (!(depth == 0 && token.isWord("OR"))) continue;
+            }
+            Predicate p = simplePredicate(tokens, disjunctStart, i);
+            if (p == null || (key != null && !key.equals(p.key()))) return null;
+            key = p.key();
+            values.addAll(p.values());
+            disjunctStart = i + 1;
+        }
+        return key == null ? null : new Predicate(key, values);
+    }
+
+    // <operand> = <literal>, <literal> = <operand> or <operand> IN (<literal>, ...).
+    private static Predicate simplePredicate(List<Token> tokens, int start, int end) {
+        int[] operandEnd = new int[1];
+        String key = operandKey(tokens, start, end, operandEnd);
+        int i = operandEnd[0];
+
+        if (key != null && i + 1 < end && tokens.get(i).isSymbol("=") && i + 2 == end && isLiteral(tokens.get(i + 1))) {
+            return new Predicate(key, Set.of(literal(tokens.get(i + 1))));
+        }
+        if (key != null && i < end && tokens.get(i).isWord("IN") && i + 1 < end && tokens.get(i + 1).isSymbol("(")
+                && closingParen(tokens, i + 1) == end - 1) {
+            Set<String> values = new LinkedHashSet<>();
+            for (int j = i + 2; j < end - 1; j++) {
+                Token token = tokens.get(j);
+                if (isLiteral(token)) values.add(literal(token));
+                else if (!token.isSymbol(",")) return null;
+            }
+            return new Predicate(key, values);
+        }
+        if (key == null && end - start >= 3 && isLiteral(tokens.get(start)) && tokens.get(start + 1).isSymbol("=")) {
+            String reversedKey = operandKey(tokens, start + 2, end, operandEnd);
+            if (reversedKey != null && operandEnd[0] == end) {
+                return new Predicate(reversedKey, Set.of(literal(tokens.get(start))));
+            }
+        }
+        return null;
+    }
+
+    // alias.column -> "alias.column"; MONTH(alias.column) / YEAR(alias.column) -> "month(alias.column)".
+    private static String operandKey(List<Token> tokens, int start, int end, int[] operandEnd) {
+        if (start + 2 < end && isColumnRef(tokens, start)) {
+            operandEnd[0] = start + 3;
+            return tokens.get(start).text().toLowerCase(Locale.ROOT) + "." + tokens.get(start + 2).text().toLowerCase(Locale.ROOT);
+        }
+        if (start + 5 < end && (tokens.get(start).isWord("MONTH") || tokens.get(start).isWord("YEAR"))
+                && tokens.get(start + 1).isSymbol("(") && isColumnRef(tokens, start + 2) && tokens.get(start + 5).isSymbol(")")) {
+            operandEnd[0] = start + 6;
+            return tokens.get(start).text().toLowerCase(Locale.ROOT) + "("
+                    + tokens.get(start + 2).text().toLowerCase(Locale.ROOT) + "." + tokens.get(start + 4).text().toLowerCase(Locale.ROOT) + ")";
+        }
+        operandEnd[0] = start;
+        return null;
+    }
+
+    private static boolean hasExactly(List<Predicate> predicates, String key, String value) {
+        for (Predicate p : predicates) {
+            if (p.key().equals(key) && p.values().size() == 1 && p.values().contains(value)) return true;
+        }
+        return false;
+    }
+
+    private static boolean hasValue(List<Predicate> predicates, String key, String value) {
+        for (Predicate p : predicates) {
+            if (p.key().equals(key) && p.values().contains(value)) return true;
+        }
+        return false;
+    }
+
+    // ---- Token helpers ----
+
+    private static boolean isColumnRef(List<Token> tokens, int i) {
+        return i + 2 < tokens.size() && tokens.get(i).isName() && tokens.get(i + 1).isSymbol(".") && tokens.get(i + 2).isName();
+    }
+
+    private static boolean isColumn(List<Token> tokens, int i, String column) {
+        return isColumnRef(tokens, i) && tokens.get(i + 2).text().equalsIgnoreCase(column);
+    }
+
+    private static boolean containsColumn(List<Token> tokens, String alias, String column) {
+        for (int i = 0; i + 2 < tokens.size(); i++) {
+            if (tokens.get(i).isWord(alias) && isColumn(tokens, i, column)) return true;
+        }
+        return false;
+    }
+
+    private static boolean isLiteral(Token token) {
+        return token.type() == TokenType.NUMBER || token.type() == TokenType.STRING;
+    }
+
+    private static String literal(Token token) {
+        if (token.type() == TokenType.NUMBER) {
+            return token.text().replaceFirst("^0+(?=\\d)", "");
+        }
+        return token.text().trim().toLowerCase(Locale.ROOT);
+    }
+
+    private static int closingParen(List<Token> tokens, int open) {
+        int depth = 0;
+        for (int i = open; i < tokens.size(); i++) {
+            if (tokens.get(i).isSymbol("(")) depth++;
+            else if (tokens.get(i).isSymbol(")") && --depth == 0) return i;
+        }
+        return -1;
+    }
+
+    // First top-level (outside parentheses) occurrence of the word in [start, end), or -1.
+    private static int indexOfWord(List<Token> tokens, int start, int end, String word) {
+        int depth = 0;
+        for (int i = Math.max(start, 0); i < end; i++) {
+            Token token = tokens.get(i);
+            if (token.isSymbol("(")) depth++;
+            else if (token.isSymbol(")")) depth--;
+            else if (depth == 0 && token.isWord(word)) return i;
+        }
+        return -1;
+    }
+
+    // First top-level occurrence of any of the (upper-case) words in [start, end), or end.
+    private static int indexOfAnyWord(List<Token> tokens, int start, int end, Set<String> words) {
+        int depth = 0;
+        for (int i = Math.max(start, 0); i < end; i++) {
+            Token token = tokens.get(i);
+            if (token.isSymbol("(")) depth++;
+            else if (token.isSymbol(")")) depth--;
+            else if (depth == 0 && token.type() == TokenType.WORD && words.contains(token.text().toUpperCase(Locale.ROOT))) return i;
+        }
+        return end;
+    }
+
+    // ---- Bind parameters ----
+
+    // Moves the literals of the WHERE clause (user_id, month, year, category, ...) into bind parameters.
+    // Literals elsewhere (LIMIT 5, ORDER BY 2) and INTERVAL amounts stay in the text: they are part of the shape.
+    // SQL that does not tokenize, or has no WHERE clause, comes back as it is without parameters.
+    static ParameterizedSql parameterize(String sql) {
+        List<Token> tokens;
+        try {
+            tokens = new ArrayList<>(SqlTokenizer.tokenize(sql));
+        } catch (IllegalArgumentException ex) {
+            return new ParameterizedSql(sql, List.of());
+        }
+        int where = indexOfWord(tokens, 0, tokens.size(), "WHERE");
+        if (where < 0) {
+            return new ParameterizedSql(sql, List.of());
+        }
+
+        int whereEnd = indexOfAnyWord(tokens, where + 1, tokens.size(), CLAUSE_AFTER_WHERE);
+        List<Object> parameters = new ArrayList<>();
+        for (int i = where + 1; i < whereEnd; i++) {
+            Token token = tokens.get(i);
+            if (!isLiteral(token) || tokens.get(i - 1).isWord("INTERVAL")) {
+                continue;
+            }
+            Object value = (token.type() == TokenType.STRING) ? token.text() : number(token.text());
+            if (value != null) {
+                tokens.set(i, PARAMETER);
+                parameters.add(value);
+            }
+        }
+        return new ParameterizedSql(render(tokens), List.copyOf(parameters));
+    }
+
+    // Long for whole numbers, BigDecimal otherwise; null for malformed ones such as 1.2.3, which stay literal.
+    private static Object number(String text) {
+        BigDecimal value;
+        try {
+            value = new BigDecimal(text);
+        } catch (NumberFormatException ex) {
+            return null;
+        }
+        return (value.scale() <= 0 && value.compareTo(MAX_LONG) <= 0) ? (Object) value.longValue() : value;
+    }
+
+    // ---- Rendering ----
+
+    // Single-spaced SQL, with no space around "." or inside parentheses and none before a function call's "(".
+    static String render(List<Token> tokens) {
+        StringBuilder sb = new StringBuilder(tokens.size() * 8);
+        Token prev = null;
+        for (Token token : tokens) {
+            if (prev != null && needsSpace(prev, token)) {
+                sb.append(' ');
+            }
+            switch (token.type()) {
+                case QUOTED_IDENT -> sb.append('`').append(token.text()).append('`');
+                case STRING -> sb.append('\'').append(token.text().replace("\\", "\\\\").replace("'", "''")).append('\'');
+                default -> sb.append(token.text());
+            }
+            prev = token;
+        }
+        return sb.toString();
+    }
+
+    private static boolean needsSpace(Token prev, Token token) {
+        if (token.isSymbol(".") || token.isSymbol(",") || token.isSymbol(")")) return false;
+        if (prev.isSymbol(".") || prev.isSymbol("(")) return false;
+        if (token.isSymbol("(") && prev.type() == TokenType.WORD) {
+            return WORDS_BEFORE_GROUPING.contains(prev.text().toUpperCase(Locale.ROOT));
+        }
+        return true;
+    }
+}
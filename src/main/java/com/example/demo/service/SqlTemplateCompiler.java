@@ -0,0 +1,156 @@
+package com.example.demo.service;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Builds the SQL for well-known question shapes directly from the {@link PromptConstraints},
+ * so that those prompts never need a round trip to the SqlCoder model.
+ *
+ * The queries read the category_month_spend rollup (one row per budget, month and category), so their cost
+ * grows with the number of categories rather than the number of transactions. They use the same rollup shape
+ * {@code PromptBuilder} offers the model, so a compiled query always satisfies the validation gates applied to model output.
+ */
+@Component
+@Slf4j
+public class SqlTemplateCompiler {
+
+    private static final String FROM_ROLLUP =
+            " FROM category_month_spend r WHERE r.user_id = ";
+
+    // Exported as insights.sql.template{result=hit|miss} (see MetricsConfig).
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+
+    // Returns the compiled SQL, or empty if the prompt does not fit a known shape and the model must be used.
+    Optional<String> compile(PromptConstraints constraints) {
+        String sql = (constraints == null) ? null : compileTemplate(constraints);
+        if (sql == null) {
+            long missCount = misses.incrementAndGet();
+            log.debug("SQL template fast path miss. hits={}, misses={}", hits.get(), missCount);
+            return Optional.empty();
+        }
+
+        long hitCount = hits.incrementAndGet();
+        log.debug("SQL template fast path hit. hits={}, misses={}", hitCount, misses.get());
+        return Optional.of(sql);
+    }
+
+    public long getHits() {
+        return hits.get();
+    }
+
+    public long getMisses() {
+        return misses.get();
+    }
+
+    private String compileTemplate(PromptConstraints constraints) {
+        if (constraints.userId() == null || constraints.intent() == null) {
+            return null;
+        }
+
+        return switch (constraints.intent()) {
+            case TOP_CATEGORY -> compileTopCategory(constraints);
+            case SPEND_TOTAL -> compileSpendTotal(constraints);
+            case UNCLASSIFIED -> null;
+        };
+    }
+
+    // Ex: Where did I overspend in May 2026 ?
+    // One row per category, highest spend first.
+    private String compileTopCategory(PromptConstraints constraints) {
+        if (constraints.requiredCategory() != null) {
+            return null;
+        }
+
+        StringBuilder sb = new StringBuilder("SELECT r.category, SUM(r.total_spent) AS total_spent");
+        appendScope(sb, constraints);
+        sb.append(" GROUP BY r.category ORDER BY total_spent DESC LIMIT 5");
+        return sb.toString();
+    }
+
+    // Ex: How much did I spend on Utilities in May and June 2026 ?
+    // A single total, or one row per month / category when several were asked for.
+    private String compileSpendTotal(PromptConstraints constraints) {
+        boolean hasCategory = constraints.requiredCategories() != null && !constraints.requiredCategories().isEmpty();
+        boolean hasMonth = constraints.monthsFound() != null && !constraints.monthsFound().isEmpty();
+
+        // Without a category or a month the question is too open for a fixed template.
+        if (!hasCategory && !hasMonth) {
+            return null;
+        }
+
+        boolean groupByMonth = constraints.multiMonth();
+        boolean groupByCategory = constraints.multiCategory();
+
+        StringBuilder sb = new StringBuilder("SELECT ");
+        if (groupByMonth) {
+            sb.append("r.spend_month AS month, ");
+        }
+        if (groupByCategory) {
+            sb.append("r.category, ");
+        }
+        sb.append("SUM(r.total_spent) AS total_spent");
+        appendScope(sb, constraints);
+
+        if (groupByMonth && groupByCategory) {
+            sb.append(" GROUP BY r.spend_month, r.category ORDER BY month, r.category");
+        } else if (groupByMonth) {
+            sb.append(" GROUP BY r.spend_month ORDER BY month");
+        } else if (groupByCategory) {
+            sb.append(" GROUP BY r.category ORDER BY total_spent DESC");
+        }
+        return sb.toString();
+    }
+
+    // FROM shape plus the user, year, month and category filters.
+    private void appendScope(StringBuilder sb, PromptConstraints constraints) {
+        sb.append(FROM_ROLLUP).append(constraints.userId());
+
+        if (constraints.requiredYear() != null) {
+            sb.append(" AND r.spend_year = ").append(constraints.requiredYear());
+        }
+
+        List<Integer> months = constraints.monthsFound();
+        if (months != null && !months.isEmpty()) {
+            if (constraints.multiMonth()) {
+                sb.append(" AND r.spend_month IN (").append(toCsv(months)).append(')');
+            } else {
+                sb.append(" AND r.spend_month = ").append(months.get(0));
+            }
+        }
+
+        List<String> categories = constraints.requiredCategories();
+        if (categories != null && !categories.isEmpty()) {
+            if (constraints.multiCategory()) {
+                String csv = categories.stream()
+                        .filter(Objects::nonNull)
+                        .map(SqlTemplateCompiler::quote)
+                        .reduce((a, b) -> a + ", " + b)
+                        .orElse("");
+                sb.append(" AND r.category IN (").append(csv).append(')');
+            } else {
+                sb.append(" AND r.category = ").append(quote(categories.get(0)));
+            }
+        }
+    }
+
+    private static String toCsv(List<Integer> months) {
+        return months.stream()
+                .filter(Objects::nonNull)
+                .distinct()
+                .sorted()
+                .map(String::valueOf)
+                .reduce((a, b) -> a + "," + b)
+                .orElse("");
+    }
+
+    private static String quote(String value) {
+        return "'" + value.replace("'", "''") + "'";
+    }
+}
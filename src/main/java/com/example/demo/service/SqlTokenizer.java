@@ -0,0 +1,111 @@
+package com.example.demo.service;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Single-pass lexer for the MySQL subset the SqlCoder model is allowed to produce.
+ *
+ * String literals and quoted identifiers become single tokens, so nothing inside quotes can ever be mistaken
+ * for a keyword, a comment or a statement separator. Comments are rejected outright.
+ */
+final class SqlTokenizer {
+
+    private SqlTokenizer() {}
+
+    enum TokenType {
+        WORD,           // keyword or unquoted identifier
+        QUOTED_IDENT,   // `identifier`, text without the backticks
+        STRING,         // 'literal' or "literal", text unescaped
+        NUMBER,
+        SYMBOL
+    }
+
+    record Token(TokenType type, String text) {
+        boolean isWord(String word) {
+            return type == TokenType.WORD && text.equalsIgnoreCase(word);
+        }
+
+        boolean isSymbol(String symbol) {
+            return type == TokenType.SYMBOL && text.equals(symbol);
+        }
+
+        // Unquoted or backticked name.
+        boolean isName() {
+            return type == TokenType.WORD || type == TokenType.QUOTED_IDENT;
+        }
+    }
+
+    // Throws IllegalArgumentException for comments, unterminated quotes and characters outside the SQL grammar.
+    static List<Token> tokenize(String sql) {
+        int n = sql.length();
+        List<Token> tokens = new ArrayList<>(n / 4 + 8);
+        int i = 0;
+        while (i < n) {
+            char c = sql.charAt(i);
+            if (Character.isWhitespace(c)) {
+                i++;
+            } else if (c == '#' || (c == '-' && i + 1 < n && sql.charAt(i + 1) == '-')
+                    || (c == '/' && i + 1 < n && sql.charAt(i + 1) == '*')) {
+                throw new IllegalArgumentException("SQL comments are not allowed");
+            } else if (Character.isLetter(c) || c == '_') {
+                int start = i;
+                while (i < n && (Character.isLetterOrDigit(sql.charAt(i)) || sql.charAt(i) == '_')) i++;
+                tokens.add(new Token(TokenType.WORD, sql.substring(start, i)));
+            } else if (Character.isDigit(c)) {
+                int start = i;
+                while (i < n && (Character.isDigit(sql.charAt(i)) || sql.charAt(i) == '.')) i++;
+                tokens.add(new Token(TokenType.NUMBER, sql.substring(start, i)));
+            } else if (c == '\'' || c == '"') {
+                i = readString(sql, i, tokens);
+            } else if (c == '`') {
+                int end = sql.indexOf('`', i + 1);
+                if (end < 0) {
+                    throw new IllegalArgumentException("Unterminated quoted identifier");
+                }
+                tokens.add(new Token(TokenType.QUOTED_IDENT, sql.substring(i + 1, end)));
+                i = end + 1;
+            } else if (i + 1 < n && isTwoCharSymbol(c, sql.charAt(i + 1))) {
+                tokens.add(new Token(TokenType.SYMBOL, sql.substring(i, i + 2)));
+                i += 2;
+            } else if ("(),.=<>*+-/;%[]$~:|&!^@?{}".indexOf(c) >= 0) {
+                tokens.add(new Token(TokenType.SYMBOL, String.valueOf(c)));
+                i++;
+            } else {
+                throw new IllegalArgumentException("Unexpected character '" + c + "' in SQL");
+            }
+        }
+        return tokens;
+    }
+
+    // Quotes are escaped by doubling them ('O''Reilly') or with a backslash, as MySQL accepts both.
+    private static int readString(String sql, int start, List<Token> tokens) {
+        char quote = sql.charAt(start);
+        StringBuilder value = new StringBuilder();
+        int i = start + 1;
+        while (i < sql.length()) {
+            char c = sql.charAt(i);
+            if (c == '\\' && i + 1 < sql.length()) {
+                value.append(sql.charAt(i + 1));
+                i += 2;
+            } else if (c == quote) {
+                if (i + 1 < sql.length() && sql.charAt(i + 1) == quote) {
+                    value.append(quote);
+                    i += 2;
+                } else {
+                    tokens.add(new Token(TokenType.STRING, value.toString()));
+                    return i + 1;
+                }
+            } else {
+                value.append(c);
+                i++;
+            }
+        }
+        throw new IllegalArgumentException("Unterminated string literal");
+    }
+
+    private static boolean isTwoCharSymbol(char a, char b) {
+        return (a == '<' && (b == '=' || b == '>')) || (a == '>' && b == '=') || (a == '!' && b == '=')
+                || (a == '|' && b == '|') || (a == ':' && b == ':') || (a == '&' && b == '&');
+    }
+}
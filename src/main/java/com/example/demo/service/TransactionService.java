@@ -1,17 +1,40 @@
 package com.example.demo.service;
 
 import com.example.demo.constants.Constants;
+import com.example.demo.dto.CategorySpend;
+import com.example.demo.dto.PageInfo;
+import com.example.demo.dto.TransactionConnection;
+import com.example.demo.dto.TransactionEdge;
+import com.example.demo.dto.TransactionFilter;
+import com.example.demo.dto.TransactionImportResult;
 import com.example.demo.dto.TransactionInput;
+import com.example.demo.dto.TransactionOutput;
 import com.example.demo.enums.TransactionPriority;
 import com.example.demo.model.Budget;
 import com.example.demo.model.Transaction;
+import com.example.demo.repository.CategoryMonthSpendRepository;
 import com.example.demo.repository.TransactionRepository;
 import com.example.demo.repository.BudgetRepository;
+import jakarta.persistence.criteria.Predicate;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.jpa.domain.Specification;
+import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
+import java.nio.charset.StandardCharsets;
+import java.sql.Date;
+import java.time.LocalDate;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
 
 @Service
 public class TransactionService {
@@ -25,17 +48,71 @@ public class TransactionService {
     @Autowired
     BudgetRepository budgetRepository;
 
+    @Autowired
+    BudgetCache budgetCache;
+
+    @Autowired
+    CategoryMonthSpendRepository categoryMonthSpendRepository;
+
+    @Autowired
+    BudgetColumnStore budgetColumnStore;
+
+    @Autowired
+    JdbcTemplate jdbcTemplate;
+
+    // Rows one import may hold; they are kept in memory until the import runs.
+    @Value("${transactions.import.max-rows:100000}")
+    int importMaxRows;
+
+    // Transactions returned per budget by BudgetDetails.transactions (the newest ones).
+    @Value("${budget.details.max-transactions:50}")
+    int detailsMaxTransactions;
+
+    // Rows per JDBC batch. With rewriteBatchedStatements=true the MySQL driver sends each batch as multi-row INSERTs.
+    private static final int IMPORT_BATCH_SIZE = 1000;
+
+    private static final String INSERT_TRANSACTION_SQL =
+            "INSERT INTO `transaction` (budget_id, amount_spend, time_stamp, category, priority) VALUES (?, ?, ?, ?, ?)";
+
     public record TransactionResult(Transaction transaction, Long budgetRemaining) {}
 
+    // Key of a category_month_spend row within one budget.
+    public record RollupKey(int year, int month, String category) {}
+
+    // A validated import, read before the budget row is locked.
+    public record PreparedImport(Long budgetId, List<TransactionInput> rows, long totalAmount, Map<RollupKey, long[]> rollups) {}
+
+    // fetchTransactionPage page sizes.
+    private static final int DEFAULT_PAGE_SIZE = 50;
+    private static final int MAX_PAGE_SIZE = 200;
+
+    // Newest first; transaction_id breaks ties between transactions on the same day.
+    private static final Sort PAGE_ORDER = Sort.by(Sort.Order.desc("transactionDate"), Sort.Order.desc("transactionId"));
+
+    // Position of the last row of a page: (time_stamp, transaction_id).
+    private record Cursor(LocalDate transactionDate, long transactionId) {}
+
     @Transactional
     public TransactionResult saveTransaction(TransactionInput transactionInput) {
 
-        Budget budget = budgetService.fetchBudgetDetailsForUserUsingBudgetId(transactionInput.getBudgetId())
-                .orElseThrow(() -> new RuntimeException("Budget not found for the user"));
+        if (transactionInput.getTransactionAmount() <= 0) {
+            throw new RuntimeException("Transaction amount is not valid for the budget");
+        }
 
-        if (!isTransactionValid(budget, transactionInput.getTransactionAmount())) {
+        // The balance check and the decrement are a single conditional UPDATE (budget_remaining >= amount).
+        // The row lock it takes is held until commit, so concurrent purchases on the same budget are serialized
+        // and the insert below (whose foreign key check locks the same budget row) cannot deadlock with them.
+        int updatedRows = budgetRepository.decrementBudgetRemaining(transactionInput.getBudgetId(), transactionInput.getTransactionAmount());
+        if (updatedRows == 0) {
+            budgetService.fetchBudgetDetailsForUserUsingBudgetId(transactionInput.getBudgetId())
+                    .orElseThrow(() -> new RuntimeException("Budget not found for the user"));
             throw new RuntimeException("Transaction amount is not valid for the budget");
         }
+        // Before the eviction below, so the column store finds the budget's owner in the cache.
+        budgetColumnStore.recordAfterCommit(transactionInput.getBudgetId(), transactionInput.getTransactionDate(),
+                transactionInput.getTransactionCategory(), transactionInput.getTransactionAmount());
+        // budget_remaining changed under the cached row.
+        budgetCache.evictAfterCommit(transactionInput.getBudgetId());
 
         double transactionPercentage = (double) transactionInput.getTransactionAmount() / transactionInput.getBudgetAllocated();
         TransactionPriority priority = determinePriority(transactionPercentage);
@@ -50,11 +127,112 @@ public class TransactionService {
 
         Transaction savedTransaction = transactionRepository.save(transaction);
 
-        updateBudgetRemaining(budget, transaction.getTransactionAmount());
+        // Same DB transaction as the insert, so the rollup never drifts from the transaction table.
+        addToRollup(transactionInput.getBudgetId(), transactionInput.getTransactionDate(),
+                transactionInput.getTransactionCategory(), transactionInput.getTransactionAmount(), 1);
+
+        Long budgetRemaining = budgetRepository.findBudgetRemainingByBudgetId(transactionInput.getBudgetId())
+                .orElseThrow(() -> new RuntimeException("Budget not found for the user"));
+
+        return new TransactionResult(savedTransaction, budgetRemaining);
+    }
 
-        return new TransactionResult(savedTransaction, budget.getBudgetRemaining());
+    // Reads and validates an import before any lock is taken, so a slow or large upload never holds the budget row.
+    // Rows are kept in memory (bounded by transactions.import.max-rows) with the rollup totals per category and month.
+    public PreparedImport prepareImport(Long budgetId, Iterator<TransactionInput> transactionInputs) {
+        List<TransactionInput> rows = new ArrayList<>();
+        Map<RollupKey, long[]> rollups = new HashMap<>();
+        long totalAmount = 0;
+
+        while (transactionInputs.hasNext()) {
+            TransactionInput transactionInput = transactionInputs.next();
+            int rowNumber = rows.size() + 1;
+            if (rowNumber > importMaxRows) {
+                throw new RuntimeException("An import holds at most " + importMaxRows + " transactions");
+            }
+            validateImportRow(budgetId, transactionInput, rowNumber);
+            transactionInput.setTransactionCategory(transactionInput.getTransactionCategory().trim());
+
+            totalAmount += transactionInput.getTransactionAmount();
+            // {total, count} per category and month; written once per group after the inserts.
+            long[] rollup = rollups.computeIfAbsent(new RollupKey(transactionInput.getTransactionDate().getYear(),
+                    transactionInput.getTransactionDate().getMonthValue(), transactionInput.getTransactionCategory()), key -> new long[2]);
+            rollup[0] += transactionInput.getTransactionAmount();
+            rollup[1]++;
+            rows.add(transactionInput);
+        }
+
+        if (rows.isEmpty()) {
+            throw new RuntimeException("No transactions to import");
+        }
+        return new PreparedImport(budgetId, List.copyOf(rows), totalAmount, Map.copyOf(rollups));
+    }
+
+    // Imports a prepared batch into one budget in a single DB transaction.
+    // The budget row is locked only for the batched inserts, the rollup upserts and the one aggregate decrement.
+    // Transaction uses IDENTITY ids, which disables Hibernate insert batching, so the inserts go through JdbcTemplate.
+    @Transactional
+    public TransactionImportResult importTransactions(PreparedImport prepared) {
+        Long budgetId = prepared.budgetId();
+
+        // Lock the budget row up front: the balance used to validate the rows cannot change under us,
+        // and concurrent addTransaction calls wait instead of deadlocking with the foreign key checks of the inserts.
+        Budget budget = budgetRepository.findActiveBudgetForUpdate(budgetId)
+                .orElseThrow(() -> new RuntimeException("Budget not found for the user"));
+
+        long budgetAllocated = budget.getBudgetAllocated();
+        long budgetRemaining = budget.getBudgetRemaining();
+        if (prepared.totalAmount() > budgetRemaining) {
+            throw new RuntimeException(overBudgetMessage(prepared.rows(), budgetRemaining));
+        }
+
+        List<Object[]> batch = new ArrayList<>(IMPORT_BATCH_SIZE);
+        for (TransactionInput transactionInput : prepared.rows()) {
+            TransactionPriority priority = determinePriority((double) transactionInput.getTransactionAmount() / budgetAllocated);
+            batch.add(new Object[]{
+                    budgetId,
+                    transactionInput.getTransactionAmount(),
+                    Date.valueOf(transactionInput.getTransactionDate()),
+                    transactionInput.getTransactionCategory(),
+                    priority.name()
+            });
+            if (batch.size() == IMPORT_BATCH_SIZE) {
+                jdbcTemplate.batchUpdate(INSERT_TRANSACTION_SQL, batch);
+                batch.clear();
+            }
+        }
+        if (!batch.isEmpty()) {
+            jdbcTemplate.batchUpdate(INSERT_TRANSACTION_SQL, batch);
+        }
+
+        prepared.rollups().forEach((key, rollup) -> categoryMonthSpendRepository.addSpend(
+                budgetId, key.year(), key.month(), key.category(), rollup[0], rollup[1]));
+
+        // One aggregate decrement for the whole import.
+        if (budgetRepository.decrementBudgetRemaining(budgetId, prepared.totalAmount()) == 0) {
+            throw new RuntimeException("Transactions total " + prepared.totalAmount() + " exceeds the remaining budget");
+        }
+        budgetCache.evictAfterCommit(budgetId);
+        budgetColumnStore.evictAfterCommit(budget.getUserId());
+        Long newBudgetRemaining = budgetRepository.findBudgetRemainingByBudgetId(budgetId)
+                .orElseThrow(() -> new RuntimeException("Budget not found for the user"));
+
+        return new TransactionImportResult(budgetId, prepared.rows().size(), prepared.totalAmount(), newBudgetRemaining);
+    }
+
+    // Names the first row that takes the running total past the remaining budget.
+    private static String overBudgetMessage(List<TransactionInput> rows, long budgetRemaining) {
+        long runningTotal = 0;
+        for (int i = 0; i < rows.size(); i++) {
+            runningTotal += rows.get(i).getTransactionAmount();
+            if (runningTotal > budgetRemaining) {
+                return "Row " + (i + 1) + ": transactions total " + runningTotal + " exceeds the remaining budget " + budgetRemaining;
+            }
+        }
+        return "Transactions total " + runningTotal + " exceeds the remaining budget " + budgetRemaining;
     }
 
+    @Transactional(readOnly = true)
     public List<Transaction> retrieveTransaction(Long budgetId) {
 
         if (!budgetService.fetchBudgetDetailsForUserUsingBudgetId(budgetId).isPresent()) {
@@ -64,6 +242,147 @@ public class TransactionService {
         return transactionRepository.findByBudgetId(budgetId);
     }
 
+    // Keyset pagination: each page continues strictly after the (time_stamp, transaction_id) in the cursor,
+    // so the database walks idx_transaction_budget_time (or the category index) instead of skipping OFFSET rows.
+    @Transactional(readOnly = true)
+    public TransactionConnection fetchTransactionPage(Long budgetId, Integer first, String after, TransactionFilter filter) {
+
+        if (!budgetService.fetchBudgetDetailsForUserUsingBudgetId(budgetId).isPresent()) {
+            throw new RuntimeException("Budget not found for the user");
+        }
+
+        int pageSize = (first == null) ? DEFAULT_PAGE_SIZE : first;
+        if (pageSize < 1 || pageSize > MAX_PAGE_SIZE) {
+            throw new RuntimeException("first must be between 1 and " + MAX_PAGE_SIZE);
+        }
+
+        Specification<Transaction> spec = pageFilter(budgetId, filter);
+        if (after != null && !after.isBlank()) {
+            spec = spec.and(after(decodeCursor(after)));
+        }
+
+        // One extra row tells whether there is a next page without a COUNT query.
+        List<Transaction> rows = transactionRepository.findBy(spec, query -> query.sortBy(PAGE_ORDER).limit(pageSize + 1).all());
+        boolean hasNextPage = rows.size() > pageSize;
+
+        List<TransactionEdge> edges = new ArrayList<>(Math.min(rows.size(), pageSize));
+        for (Transaction t : hasNextPage ? rows.subList(0, pageSize) : rows) {
+            TransactionOutput node = new TransactionOutput(t.getTransactionId(), t.getBudgetId(), t.getTransactionAmount(),
+                    t.getTransactionDate(), t.getTransactionCategory(), t.getTransactionPriority(), null);
+            edges.add(new TransactionEdge(encodeCursor(new Cursor(t.getTransactionDate(), t.getTransactionId())), node));
+        }
+        String endCursor = edges.isEmpty() ? null : edges.get(edges.size() - 1).getCursor();
+
+        return new TransactionConnection(edges, new PageInfo(hasNextPage, endCursor));
+    }
+
+    private static Specification<Transaction> pageFilter(Long budgetId, TransactionFilter filter) {
+        return (root, query, cb) -> {
+            List<Predicate> predicates = new ArrayList<>(5);
+            predicates.add(cb.equal(root.get("budgetId"), budgetId));
+            if (filter != null) {
+                if (filter.getFromDate() != null) {
+                    predicates.add(cb.greaterThanOrEqualTo(root.get("transactionDate"), filter.getFromDate()));
+                }
+                if (filter.getToDate() != null) {
+                    predicates.add(cb.lessThanOrEqualTo(root.get("transactionDate"), filter.getToDate()));
+                }
+                if (filter.getCategory() != null && !filter.getCategory().isBlank()) {
+                    predicates.add(cb.equal(root.get("transactionCategory"), filter.getCategory().trim()));
+                }
+                if (filter.getPriority() != null) {
+                    predicates.add(cb.equal(root.get("transactionPriority"), filter.getPriority()));
+                }
+            }
+            return cb.and(predicates.toArray(new Predicate[0]));
+        };
+    }
+
+    // time_stamp < d OR (time_stamp = d AND transaction_id < id)
+    private static Specification<Transaction> after(Cursor cursor) {
+        return (root, query, cb) -> cb.or(
+                cb.lessThan(root.get("transactionDate"), cursor.transactionDate()),
+                cb.and(cb.equal(root.get("transactionDate"), cursor.transactionDate()),
+                        cb.lessThan(root.get("transactionId"), cursor.transactionId())));
+    }
+
+    // Cursors are opaque to clients: base64url of "<yyyy-MM-dd>:<transactionId>".
+    private static String encodeCursor(Cursor cursor) {
+        String raw = cursor.transactionDate() + ":" + cursor.transactionId();
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(raw.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static Cursor decodeCursor(String cursor) {
+        try {
+            String raw = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+            int separator = raw.lastIndexOf(':');
+            return new Cursor(LocalDate.parse(raw.substring(0, separator)), Long.parseLong(raw.substring(separator + 1)));
+        } catch (IllegalArgumentException | DateTimeParseException | IndexOutOfBoundsException ex) {
+            throw new RuntimeException("Invalid cursor: " + cursor, ex);
+        }
+    }
+
+    // The three loaders below back the nested BudgetDetails fields. Each one answers a whole batch of budgets
+    // with one query; budgets without rows get an empty list / zero.
+    // Transactions are capped at budget.details.max-transactions per budget, so one long-lived budget cannot
+    // blow up the response; the rest are paged through with fetchTransactionPage.
+    @Transactional(readOnly = true)
+    public Map<Long, List<TransactionOutput>> fetchTransactionsForBudgets(Collection<Long> budgetIds) {
+        Map<Long, List<TransactionOutput>> byBudget = new HashMap<>();
+        for (Transaction t : transactionRepository.findNewestByBudgetIds(budgetIds, detailsMaxTransactions)) {
+            byBudget.computeIfAbsent(t.getBudgetId(), id -> new ArrayList<>())
+                    .add(new TransactionOutput(t.getTransactionId(), t.getBudgetId(), t.getTransactionAmount(),
+                            t.getTransactionDate(), t.getTransactionCategory(), t.getTransactionPriority(), null));
+        }
+        return byBudget;
+    }
+
+    @Transactional(readOnly = true)
+    public Map<Long, Long> countTransactionsForBudgets(Collection<Long> budgetIds) {
+        Map<Long, Long> counts = new HashMap<>();
+        for (TransactionRepository.BudgetTransactionCount row : transactionRepository.countByBudgetIds(budgetIds)) {
+            counts.put(row.getBudgetId(), row.getTransactionCount());
+        }
+        return counts;
+    }
+
+    // Read from the category_month_spend rollup rather than summing every transaction.
+    @Transactional(readOnly = true)
+    public Map<Long, List<CategorySpend>> fetchSpendByCategoryForBudgets(Collection<Long> budgetIds) {
+        Map<Long, List<CategorySpend>> byBudget = new HashMap<>();
+        for (CategoryMonthSpendRepository.BudgetCategoryTotal row : categoryMonthSpendRepository.sumByBudgetIdsAndCategory(budgetIds)) {
+            byBudget.computeIfAbsent(row.getBudgetId(), id -> new ArrayList<>())
+                    .add(new CategorySpend(row.getCategory(), row.getTotalSpent(), row.getTransactionCount()));
+        }
+        return byBudget;
+    }
+
+    private void addToRollup(Long budgetId, LocalDate date, String category, long amount, long count) {
+        if (date == null || category == null) {
+            return;
+        }
+        categoryMonthSpendRepository.addSpend(budgetId, date.getYear(), date.getMonthValue(), category, amount, count);
+    }
+
+    private void validateImportRow(Long budgetId, TransactionInput transactionInput, int rowNumber) {
+        if (transactionInput == null) {
+            throw new RuntimeException("Row " + rowNumber + ": transaction is missing");
+        }
+        if (transactionInput.getBudgetId() != budgetId) {
+            throw new RuntimeException("Row " + rowNumber + ": budgetId " + transactionInput.getBudgetId()
+                    + " does not match the import budget " + budgetId);
+        }
+        if (transactionInput.getTransactionAmount() <= 0) {
+            throw new RuntimeException("Row " + rowNumber + ": transaction amount must be positive");
+        }
+        if (transactionInput.getTransactionDate() == null) {
+            throw new RuntimeException("Row " + rowNumber + ": transaction date is required");
+        }
+        if (transactionInput.getTransactionCategory() == null || transactionInput.getTransactionCategory().isBlank()) {
+            throw new RuntimeException("Row " + rowNumber + ": transaction category is required");
+        }
+    }
+
     private TransactionPriority determinePriority(double transactionPercentage) {
 
         if (transactionPercentage > Constants.UPPER_BOUND) {
@@ -75,14 +394,4 @@ public class TransactionService {
         return TransactionPriority.LOW;
     }
 
-    private boolean isTransactionValid(Budget budget, Long transactionAmount) { 
-        return (transactionAmount > 0) &&
-                (transactionAmount <= budget.getBudgetRemaining());
-    }
-
-    private void updateBudgetRemaining(Budget budget, Long transactionAmount) {
-        budget.setBudgetRemaining(budget.getBudgetRemaining() - transactionAmount);
-        budgetRepository.save(budget);
-    }
-
 }
@@ -0,0 +1,117 @@
+package com.example.demo.benchmark;
+
+import com.example.demo.service.OllamaClient;
+import com.example.demo.support.OllamaStubServer;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.http.HttpEntity;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.http.client.SimpleClientHttpRequestFactory;
+import org.springframework.web.client.RestTemplate;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Per-call client overhead of the shared {@link OllamaClient} versus the previous
+ * RestTemplate + SimpleClientHttpRequestFactory + readTree path, against a local stub server
+ * with zero model latency (so only HTTP and parsing cost is measured).
+ *
+ * Run with:
+ * mvn test-compile exec:java -Dexec.classpathScope=test -Dexec.mainClass=com.example.demo.benchmark.OllamaClientBenchmark
+ */
+public class OllamaClientBenchmark {
+
+    private static final int WARMUP_CALLS = 2_000;
+    private static final int MEASURED_CALLS = 10_000;
+    private static final int CONCURRENT_BATCH = 32;
+    private static final int CONTEXT_TOKENS = 4_096;
+    private static final Map<String, Object> OPTIONS = Map.of("temperature", 0, "num_predict", 512);
+    private static final String MODEL_TEXT =
+            "SELECT t.category, SUM(t.amount_spend) AS total_spent FROM `transaction` t JOIN budget b ON b.budget_id = t.budget_id "
+                    + "WHERE b.user_id = 42 AND YEAR(t.time_stamp) = 2026 AND MONTH(t.time_stamp) = 5 GROUP BY t.category ORDER BY total_spent DESC LIMIT 5";
+
+    public static void main(String[] args) throws Exception {
+        ObjectMapper objectMapper = new ObjectMapper();
+
+        try (OllamaStubServer stub = new OllamaStubServer(MODEL_TEXT, CONTEXT_TOKENS)) {
+            String url = stub.generateUrl();
+            LegacyRestTemplateCaller legacy = new LegacyRestTemplateCaller(objectMapper, url);
+            OllamaClient client = new OllamaClient(objectMapper, url, 5_000, 60_000, 180_000);
+
+            long[] legacyNanos = measure(() -> legacy.generate("stub", "prompt"));
+            long[] clientNanos = measure(() -> client.generate("stub", "prompt", OPTIONS));
+
+            report("RestTemplate + readTree (before)", legacyNanos);
+            report("OllamaClient.generate (after)", clientNanos);
+
+            long start = System.nanoTime();
+            for (int i = 0; i < MEASURED_CALLS / CONCURRENT_BATCH; i++) {
+                List<CompletableFuture<String>> batch = new ArrayList<>(CONCURRENT_BATCH);
+                for (int j = 0; j < CONCURRENT_BATCH; j++) {
+                    batch.add(client.generateAsync("stub", "prompt", OPTIONS));
+                }
+                CompletableFuture.allOf(batch.toArray(CompletableFuture[]::new)).join();
+            }
+            double seconds = (System.nanoTime() - start) / 1e9;
+            System.out.printf("%-36s %10.0f calls/s (%d in flight)%n", "OllamaClient.generateAsync",
+                    (MEASURED_CALLS / CONCURRENT_BATCH * CONCURRENT_BATCH) / seconds, CONCURRENT_BATCH);
+        }
+    }
+
+    private static long[] measure(Call call) throws Exception {
+        for (int i = 0; i < WARMUP_CALLS; i++) {
+            call.run();
+        }
+        long[] nanos = new long[MEASURED_CALLS];
+        for (int i = 0; i < MEASURED_CALLS; i++) {
+            long start = System.nanoTime();
+            call.run();
+            nanos[i] = System.nanoTime() - start;
+        }
+        Arrays.sort(nanos);
+        return nanos;
+    }
+
+    private static void report(String name, long[] sortedNanos) {
+        double mean = Arrays.stream(sortedNanos).average().orElse(0) / 1_000.0;
+        System.out.printf("%-36s mean=%8.1f us  p50=%8.1f us  p99=%8.1f us%n", name, mean,
+                sortedNanos[sortedNanos.length / 2] / 1_000.0,
+                sortedNanos[(int) (sortedNanos.length * 0.99)] / 1_000.0);
+    }
+
+    @FunctionalInterface
+    private interface Call {
+        Object run() throws Exception;
+    }
+
+    // Mirrors the per-service client that TextToSqlGenerationService / InsightsGenerationService used to build.
+    private static final class LegacyRestTemplateCaller {
+        private final ObjectMapper objectMapper;
+        private final String url;
+        private final RestTemplate restTemplate;
+
+        LegacyRestTemplateCaller(ObjectMapper objectMapper, String url) {
+            this.objectMapper = objectMapper;
+            this.url = url;
+            SimpleClientHttpRequestFactory requestFactory = new SimpleClientHttpRequestFactory();
+            requestFactory.setConnectTimeout(5_000);
+            requestFactory.setReadTimeout(60_000);
+            this.restTemplate = new RestTemplate(requestFactory);
+        }
+
+        String generate(String model, String prompt) throws Exception {
+            HttpHeaders headers = new HttpHeaders();
+            headers.setContentType(MediaType.APPLICATION_JSON);
+            HttpEntity<OllamaClient.OllamaGenerateRequest> entity =
+                    new HttpEntity<>(new OllamaClient.OllamaGenerateRequest(model, prompt, false, OPTIONS), headers);
+            String rawJson = restTemplate.postForObject(url, entity, String.class);
+            JsonNode root = objectMapper.readTree(rawJson);
+            return root.path("response").asText("");
+        }
+    }
+}
@@ -0,0 +1,176 @@
+package com.example.demo.controller;
+
+import com.example.demo.dto.TransactionImportResult;
+import com.example.demo.dto.TransactionInput;
+import com.example.demo.model.Budget;
+import com.example.demo.model.CategoryMonthSpend;
+import com.example.demo.model.Transaction;
+import com.example.demo.repository.BudgetRepository;
+import com.example.demo.repository.CategoryMonthSpendRepository;
+import com.example.demo.repository.TransactionRepository;
+import com.example.demo.service.TransactionService;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTimeoutPreemptively;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+@SpringBootTest(properties = {"insights.jobs.workers=0", "transactions.import.max-rows=3000"})
+class TransactionImportTests {
+
+    private static final long USER_ID = 9801L;
+
+    @Autowired
+    TransactionService transactionService;
+
+    @Autowired
+    BudgetRepository budgetRepository;
+
+    @Autowired
+    TransactionRepository transactionRepository;
+
+    @Autowired
+    CategoryMonthSpendRepository categoryMonthSpendRepository;
+
+    @Test
+    void quotedFieldsKeepTheirCommasQuotesAndLineBreaks() throws IOException {
+        Iterator<TransactionInput> rows = csv("\"Category\",amount,Date\n"
+                + "\"Dining, takeout\",12,2026-05-01\n"
+                + "\n"
+                + "\"The \"\"corner\"\" shop\", 7 ,2026-05-02\n"
+                + "\"Gifts\nand donations\",3,2026-05-03\n", 1L);
+
+        assertEquals(List.of("Dining, takeout", "The \"corner\" shop", "Gifts\nand donations"),
+                List.of(rows.next().getTransactionCategory(), rows.next().getTransactionCategory(), rows.next().getTransactionCategory()));
+        assertFalse(rows.hasNext());
+
+        TransactionInput withoutHeader = csv("2026-05-01,12,Fuel\n", 1L).next();
+        assertEquals(12L, withoutHeader.getTransactionAmount());
+        assertEquals(LocalDate.of(2026, 5, 1), withoutHeader.getTransactionDate());
+    }
+
+    @Test
+    void importSpansSeveralBatchesAndAddsToTheRollup() throws IOException {
+        long budgetId = budget(USER_ID, 10_000L);
+        transactionService.saveTransaction(new TransactionInput(budgetId, 100L, LocalDate.of(2026, 5, 4), "Dining, takeout", 10_000L));
+
+        // 2,500 rows: three JDBC batches of at most 1,000.
+        StringBuilder body = new StringBuilder("date,amount,category\n");
+        for (int i = 0; i < 2_500; i++) {
+            String category = (i % 2 == 0) ? "\"Dining, takeout\"" : "Fuel";
+            body.append(i < 1_500 ? "2026-05-10" : "2026-06-10").append(",2,").append(category).append('\n');
+        }
+
+        TransactionImportResult result = transactionService.importTransactions(transactionService.prepareImport(budgetId, csv(body.toString(), budgetId)));
+
+        assertEquals(2_500, result.getImportedCount());
+        assertEquals(5_000L, result.getTotalAmount());
+        assertEquals(10_000L - 100L - 5_000L, result.getBudgetRemaining());
+        assertEquals(2_501, transactionRepository.findByBudgetId(budgetId).size());
+        assertEquals(10_000L - 100L - 5_000L, budgetRepository.findById(budgetId).orElseThrow().getBudgetRemaining());
+
+        // The May "Dining, takeout" row written by saveTransaction was added to, not replaced.
+        assertEquals(Map.of(
+                "2026-5 Dining, takeout", List.of(100L + 750 * 2L, 751L),
+                "2026-5 Fuel", List.of(750 * 2L, 750L),
+                "2026-6 Dining, takeout", List.of(500 * 2L, 500L),
+                "2026-6 Fuel", List.of(500 * 2L, 500L)), rollups(budgetId));
+    }
+
+    @Test
+    void importOverTheRemainingBudgetWritesNothing() throws IOException {
+        long budgetId = budget(USER_ID + 1, 1_200L);
+        transactionService.saveTransaction(new TransactionInput(budgetId, 100L, LocalDate.of(2026, 5, 4), "Fuel", 1_200L));
+        Map<String, List<Long>> rollupsBefore = rollups(budgetId);
+
+        // Row 1,101 goes over the remaining 1,100.
+        StringBuilder body = new StringBuilder();
+        for (int i = 0; i < 1_500; i++) {
+            body.append("2026-05-10,1,Fuel\n");
+        }
+        TransactionService.PreparedImport prepared = transactionService.prepareImport(budgetId, csv(body.toString(), budgetId));
+
+        RuntimeException ex = assertThrows(RuntimeException.class, () -> transactionService.importTransactions(prepared));
+
+        assertTrue(ex.getMessage().startsWith("Row 1101:"), ex.getMessage());
+        List<Transaction> transactions = transactionRepository.findByBudgetId(budgetId);
+        assertEquals(1, transactions.size());
+        assertEquals(1_100L, budgetRepository.findById(budgetId).orElseThrow().getBudgetRemaining());
+        assertEquals(rollupsBefore, rollups(budgetId));
+    }
+
+    @Test
+    void theBudgetIsNotLockedWhileTheBodyIsRead() throws Exception {
+        long budgetId = budget(USER_ID + 2, 1_000L);
+        Iterator<TransactionInput> rows = csv("2026-05-10,5,Fuel\n2026-05-11,5,Fuel\n", budgetId);
+
+        // A purchase on the same budget while the upload is still being read goes through right away.
+        Iterator<TransactionInput> slowUpload = new Iterator<>() {
+            @Override
+            public boolean hasNext() {
+                return rows.hasNext();
+            }
+
+            @Override
+            public TransactionInput next() {
+                CompletableFuture<TransactionService.TransactionResult> purchase = CompletableFuture.supplyAsync(() ->
+                        transactionService.saveTransaction(new TransactionInput(budgetId, 1L, LocalDate.of(2026, 5, 9), "Fuel", 1_000L)));
+                assertEquals(1, assertTimeoutPreemptively(Duration.ofSeconds(5), () -> purchase.get()).transaction().getTransactionAmount());
+                return rows.next();
+            }
+        };
+
+        TransactionImportResult result = transactionService.importTransactions(transactionService.prepareImport(budgetId, slowUpload));
+
+        assertEquals(2, result.getImportedCount());
+        assertEquals(1_000L - 2L - 10L, result.getBudgetRemaining());
+    }
+
+    @Test
+    void importsOverTheRowLimitAreRefusedBeforeTheBudgetIsTouched() throws IOException {
+        long budgetId = budget(USER_ID + 3, 10_000L);
+        StringBuilder body = new StringBuilder();
+        for (int i = 0; i < 3_001; i++) {
+            body.append("2026-05-10,1,Fuel\n");
+        }
+
+        RuntimeException ex = assertThrows(RuntimeException.class, () -> transactionService.prepareImport(budgetId, csv(body.toString(), budgetId)));
+
+        assertEquals("An import holds at most 3000 transactions", ex.getMessage());
+        assertEquals(0, transactionRepository.findByBudgetId(budgetId).size());
+        assertEquals(10_000L, budgetRepository.findById(budgetId).orElseThrow().getBudgetRemaining());
+    }
+
+    private long budget(long userId, long allocated) {
+        return budgetRepository.save(new Budget(null, userId, LocalDate.of(2026, 5, 1), LocalDate.of(2026, 6, 30), allocated, allocated, true))
+                .getBudgetId();
+    }
+
+    private static Iterator<TransactionInput> csv(String body, long budgetId) throws IOException {
+        return TransactionImportReader.csv(new ByteArrayInputStream(body.getBytes(StandardCharsets.UTF_8)), budgetId);
+    }
+
+    // "year-month category" -> {total, count}
+    private Map<String, List<Long>> rollups(long budgetId) {
+        Map<String, List<Long>> rollups = new TreeMap<>();
+        for (CategoryMonthSpend row : categoryMonthSpendRepository.findByBudgetId(budgetId)) {
+            rollups.put(row.getSpendYear() + "-" + row.getSpendMonth() + " " + row.getCategory(), List.of(row.getTotalSpent(), row.getTransactionCount()));
+        }
+        return rollups;
+    }
+}
@@ -0,0 +1,123 @@
+package com.example.demo.resolver;
+
+import com.example.demo.dto.TransactionInput;
+import com.example.demo.model.Budget;
+import com.example.demo.repository.BudgetRepository;
+import com.example.demo.service.TransactionService;
+import jakarta.persistence.EntityManagerFactory;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.graphql.ExecutionGraphQlResponse;
+import org.springframework.graphql.ExecutionGraphQlService;
+import org.springframework.graphql.support.DefaultExecutionGraphQlRequest;
+
+import java.time.LocalDate;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+// The insights job workers are off so their queue polling does not show up in the statement counts.
+// Each budget has three transactions and BudgetDetails.transactions is capped at two.
+@SpringBootTest(properties = {
+        "spring.jpa.properties.hibernate.generate_statistics=true",
+        "insights.jobs.workers=0",
+        "budget.details.max-transactions=2"
+})
+class BudgetDetailsBatchLoadingTests {
+
+    private static final long ONE_BUDGET_USER = 9101L;
+    private static final long MANY_BUDGETS_USER = 9102L;
+    private static final int MANY_BUDGETS = 6;
+
+    // 1 query for the budgets + 1 per nested field, however many budgets there are.
+    private static final long EXPECTED_STATEMENTS = 4;
+
+    private static final String QUERY = """
+            query($userId: ID!) {
+              fetchBudgetsForUser(userId: $userId) {
+                budgetId
+                transactionCount
+                transactions { transactionId transactionAmount }
+                spentByCategory { category totalSpent transactionCount }
+              }
+            }
+            """;
+
+    @Autowired
+    ExecutionGraphQlService graphQlService;
+
+    @Autowired
+    BudgetRepository budgetRepository;
+
+    @Autowired
+    TransactionService transactionService;
+
+    @Autowired
+    EntityManagerFactory entityManagerFactory;
+
+    @BeforeEach
+    void setUp() {
+        if (!budgetRepository.findByUserIdOrderByStartDateDesc(MANY_BUDGETS_USER).isEmpty()) {
+            return;
+        }
+        createBudgetWithTransactions(ONE_BUDGET_USER, 0);
+        for (int i = 0; i < MANY_BUDGETS; i++) {
+            createBudgetWithTransactions(MANY_BUDGETS_USER, i);
+        }
+    }
+
+    @Test
+    void nestedFieldsCostTheSameNumberOfQueriesForOneOrManyBudgets() {
+        Statistics statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+
+        statistics.clear();
+        List<Map<String, Object>> one = fetchBudgets(ONE_BUDGET_USER);
+        long statementsForOne = statistics.getPrepareStatementCount();
+
+        statistics.clear();
+        List<Map<String, Object>> many = fetchBudgets(MANY_BUDGETS_USER);
+        long statementsForMany = statistics.getPrepareStatementCount();
+
+        assertEquals(1, one.size());
+        assertEquals(MANY_BUDGETS, many.size());
+        assertEquals(EXPECTED_STATEMENTS, statementsForOne);
+        assertEquals(EXPECTED_STATEMENTS, statementsForMany);
+
+        for (Map<String, Object> budget : many) {
+            List<?> transactions = (List<?>) budget.get("transactions");
+            List<?> spentByCategory = (List<?>) budget.get("spentByCategory");
+            assertEquals(3L, ((Number) budget.get("transactionCount")).longValue());
+            // The newest two: Travel on day 3, then Fuel on day 2.
+            assertEquals(List.of(20L, 30L), transactions.stream()
+                    .map(t -> ((Number) ((Map<?, ?>) t).get("transactionAmount")).longValue()).toList());
+            assertEquals(2, spentByCategory.size());
+            assertEquals("Fuel", ((Map<?, ?>) spentByCategory.get(0)).get("category"));
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private List<Map<String, Object>> fetchBudgets(long userId) {
+        ExecutionGraphQlResponse response = graphQlService.execute(new DefaultExecutionGraphQlRequest(
+                QUERY, null, Map.of("userId", userId), null, "batch-" + userId, null)).block();
+        assertTrue(response.getErrors().isEmpty(), () -> response.getErrors().toString());
+        Map<String, Object> data = response.getData();
+        return (List<Map<String, Object>>) data.get("fetchBudgetsForUser");
+    }
+
+    // Two Fuel purchases and one Travel purchase, so Fuel is the biggest category.
+    private void createBudgetWithTransactions(long userId, int cycle) {
+        LocalDate start = LocalDate.of(2026, 1, 1).plusMonths(cycle);
+        Budget budget = budgetRepository.save(new Budget(null, userId, start, start.plusMonths(1).minusDays(1), 1_000L, 1_000L, true));
+        long budgetId = budget.getBudgetId();
+        transactionService.importTransactions(transactionService.prepareImport(budgetId, List.of(
+                new TransactionInput(budgetId, 40L, start.plusDays(1), "Fuel", 1_000L),
+                new TransactionInput(budgetId, 30L, start.plusDays(2), "Fuel", 1_000L),
+                new TransactionInput(budgetId, 20L, start.plusDays(3), "Travel", 1_000L)).iterator()));
+    }
+}
@@ -0,0 +1,319 @@
+package com.example.demo.resolver;
+
+import com.example.demo.support.CannedModelResponder;
+import com.example.demo.support.OllamaStubServer;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.web.server.LocalServerPort;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+// End-to-end load test: concurrent clients drive addTransaction, fetchTransactions and fetchInsights over GraphQL/HTTP
+// against the whole app (H2 instead of MySQL) with Ollama replaced by OllamaStubServer, then report throughput and
+// latency percentiles per operation, on stdout and in target/loadtest-report.txt.
+// Not part of the normal build: mvn -Ploadtest test [-Dloadtest.clients=.. -Dloadtest.duration-seconds=.. -Dollama.stub.*=..]
+@Tag("load")
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT, properties = {
+        // Job workers polling the queue would only add noise.
+        "insights.jobs.workers=0",
+        // Every model-shaped prompt reaches the stub instead of being answered from the SQL cache.
+        "sqlcoder.cache.max-entries=0",
+        // Per-request INFO lines written to the test console would be measured along with the app.
+        "logging.level.com.example.demo=WARN"
+})
+class GraphQlLoadTests {
+
+    private static final int CLIENTS = Integer.getInteger("loadtest.clients", 16);
+    private static final long WARMUP_SECONDS = Long.getLong("loadtest.warmup-seconds", 5);
+    private static final long DURATION_SECONDS = Long.getLong("loadtest.duration-seconds", 30);
+    // Relative weight of each operation in the mix.
+    private static final String MIX = System.getProperty("loadtest.mix", "addTransaction=45,fetchTransactions=45,fetchInsights=10");
+
+    private static final long FIRST_USER_ID = 920_000L;
+
+    private static final List<String> CATEGORIES = List.of("Fuel", "Dining out", "Utilities", "Food & groceries", "Entertainment", "Shopping");
+
+    // The first two are answered from a SQL template, the others go through SqlCoder (the stub).
+    private static final List<String> INSIGHT_PROMPTS = List.of(
+            "Where did I overspend in May 2026?",
+            "How much did I spend on Fuel in May 2026?",
+            "Show my Fuel and Dining out purchases in May 2026",
+            "List my Utilities transactions from May 2026",
+            "Compare my spending in April and May 2026"
+    );
+
+    private static CannedModelResponder models;
+    private static OllamaStubServer ollama;
+
+    @LocalServerPort
+    int port;
+
+    @Autowired
+    ObjectMapper objectMapper;
+
+    @Autowired
+    MeterRegistry meterRegistry;
+
+    private final HttpClient httpClient = HttpClient.newBuilder().version(HttpClient.Version.HTTP_1_1).build();
+
+    private enum Operation {
+        ADD_TRANSACTION("addTransaction"),
+        FETCH_TRANSACTIONS("fetchTransactions"),
+        FETCH_INSIGHTS("fetchInsights");
+
+        final String field;
+
+        Operation(String field) {
+            this.field = field;
+        }
+    }
+
+    private enum Outcome { OK, REJECTED, ERROR }
+
+    private record Client(long budgetId) {}
+
+    @DynamicPropertySource
+    static void ollamaStub(DynamicPropertyRegistry registry) throws IOException {
+        models = CannedModelResponder.fromSystemProperties();
+        ollama = new OllamaStubServer(0, models, OllamaStubServer.Latency.fromSystemProperties(), 0);
+        registry.add("ollama.generate.url", ollama::generateUrl);
+    }
+
+    @AfterAll
+    static void stopOllamaStub() {
+        if (ollama != null) {
+            ollama.close();
+        }
+    }
+
+    @Test
+    void graphQlMix() throws Exception {
+        Map<Operation, Integer> weights = parseMix(MIX);
+        List<Client> clients = new ArrayList<>();
+        for (int i = 0; i < CLIENTS; i++) {
+            clients.add(createClient(i));
+        }
+
+        Map<Operation, OperationStats> stats = new EnumMap<>(Operation.class);
+        for (Operation operation : Operation.values()) {
+            stats.put(operation, new OperationStats());
+        }
+
+        long start = System.nanoTime();
+        long measureFrom = start + WARMUP_SECONDS * 1_000_000_000L;
+        long end = measureFrom + DURATION_SECONDS * 1_000_000_000L;
+        List<Future<?>> running = new ArrayList<>();
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            for (Client client : clients) {
+                running.add(executor.submit(() -> {
+                    while (System.nanoTime() < end) {
+                        Operation operation = pick(weights);
+                        long begin = System.nanoTime();
+                        Outcome outcome = run(operation, client, stats.get(operation));
+                        if (begin >= measureFrom) {
+                            stats.get(operation).record(outcome, System.nanoTime() - begin);
+                        }
+                    }
+                    return null;
+                }));
+            }
+            for (Future<?> client : running) {
+                client.get();
+            }
+        }
+
+        String report = report(weights, stats);
+        System.out.println(report);
+        Files.writeString(Path.of("target", "loadtest-report.txt"), report);
+
+        assertEquals(0, stats.get(Operation.ADD_TRANSACTION).errors, stats.get(Operation.ADD_TRANSACTION).lastError);
+        assertEquals(0, stats.get(Operation.FETCH_TRANSACTIONS).errors, stats.get(Operation.FETCH_TRANSACTIONS).lastError);
+        if (weights.getOrDefault(Operation.FETCH_INSIGHTS, 0) > 0) {
+            assertTrue(stats.get(Operation.FETCH_INSIGHTS).ok > 0, "no insight answered: " + stats.get(Operation.FETCH_INSIGHTS).lastError);
+        }
+    }
+
+    // An active May 2026 budget and a few transactions, so the insight queries return rows.
+    // The user row is not needed (and the H2 test database cannot hold the `user` table), only its id.
+    private Client createClient(int index) throws Exception {
+        long userId = FIRST_USER_ID + index;
+        JsonNode budget = data(post("mutation { setupBudgetForNewUser(budgetSetupInput: { user_id: " + userId
+                + ", startDate: \"2026-05-01\", endDate: \"2026-05-31\", budgetAllocated: 1000000000, budgetRemaining: 1000000000 }) { budgetId } }"));
+        long budgetId = budget.path("setupBudgetForNewUser").path("budgetId").asLong();
+
+        StringBuilder inputs = new StringBuilder();
+        for (int i = 0; i < 20; i++) {
+            inputs.append(transactionInput(budgetId, i % 4 == 0 ? 4 : 5)).append(' ');
+        }
+        data(post("mutation { addTransactions(budgetId: " + budgetId + ", transactionInputs: [" + inputs + "]) { importedCount } }"));
+        return new Client(budgetId);
+    }
+
+    private Outcome run(Operation operation, Client client, OperationStats stats) {
+        String query = switch (operation) {
+            case ADD_TRANSACTION -> "mutation { addTransaction(transactionInput: " + transactionInput(client.budgetId(), 5)
+                    + ") { transactionId budgetRemaining } }";
+            case FETCH_TRANSACTIONS -> "query { fetchTransactions(budgetId: " + client.budgetId()
+                    + ") { transactionId transactionAmount transactionDate transactionCategory transactionPriority } }";
+            case FETCH_INSIGHTS -> "query { fetchInsights(budgetId: " + client.budgetId() + ", prompt: \""
+                    + INSIGHT_PROMPTS.get(ThreadLocalRandom.current().nextInt(INSIGHT_PROMPTS.size())) + "\") }";
+        };
+        try {
+            JsonNode response = post(query);
+            JsonNode errors = response.path("errors");
+            if (errors.isEmpty() && !response.path("data").path(operation.field).isNull()) {
+                return Outcome.OK;
+            }
+            if ("TOO_MANY_REQUESTS".equals(errors.path(0).path("extensions").path("classification").asText())) {
+                return Outcome.REJECTED;
+            }
+            stats.lastError = response.toString();
+            return Outcome.ERROR;
+        } catch (Exception e) {
+            stats.lastError = e.toString();
+            return Outcome.ERROR;
+        }
+    }
+
+    private static String transactionInput(long budgetId, int month) {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        return "{ budgetId: " + budgetId + ", transactionAmount: " + random.nextInt(1, 200)
+                + ", transactionDate: \"2026-0" + month + "-" + String.format("%02d", random.nextInt(1, 29))
+                + "\", transactionCategory: \"" + CATEGORIES.get(random.nextInt(CATEGORIES.size()))
+                + "\", budgetAllocated: 1000000000 }";
+    }
+
+    private JsonNode post(String query) throws Exception {
+        HttpRequest request = HttpRequest.newBuilder(URI.create("http://localhost:" + port + "/graphql"))
+                .header("Content-Type", "application/json")
+                .POST(HttpRequest.BodyPublishers.ofString(objectMapper.writeValueAsString(Map.of("query", query))))
+                .build();
+        return objectMapper.readTree(httpClient.send(request, HttpResponse.BodyHandlers.ofString()).body());
+    }
+
+    private static JsonNode data(JsonNode response) {
+        assertTrue(response.path("errors").isEmpty(), response::toString);
+        return response.path("data");
+    }
+
+    private static Map<Operation, Integer> parseMix(String mix) {
+        Map<Operation, Integer> weights = new EnumMap<>(Operation.class);
+        for (String entry : mix.split(",")) {
+            String[] parts = entry.trim().split("=");
+            Operation operation = null;
+            for (Operation candidate : Operation.values()) {
+                if (candidate.field.equals(parts[0].trim())) operation = candidate;
+            }
+            if (operation == null) {
+                throw new IllegalArgumentException("Unknown operation in loadtest.mix: " + parts[0]);
+            }
+            weights.put(operation, Integer.parseInt(parts[1].trim()));
+        }
+        return weights;
+    }
+
+    private static Operation pick(Map<Operation, Integer> weights) {
+        int total = weights.values().stream().mapToInt(Integer::intValue).sum();
+        int roll = ThreadLocalRandom.current().nextInt(total);
+        for (Map.Entry<Operation, Integer> weight : weights.entrySet()) {
+            roll -= weight.getValue();
+            if (roll < 0) return weight.getKey();
+        }
+        throw new IllegalStateException("loadtest.mix has no positive weight");
+    }
+
+    private String report(Map<Operation, Integer> weights, Map<Operation, OperationStats> stats) {
+        StringBuilder sb = new StringBuilder();
+        sb.append(String.format("GraphQL load test: %d clients, %d s measured after %d s warm-up, mix %s%n",
+                CLIENTS, DURATION_SECONDS, WARMUP_SECONDS, weights));
+        sb.append(String.format("%-18s %8s %8s %8s %9s %9s %9s %9s %9s%n",
+                "operation", "ok", "rejected", "errors", "ops/s", "p50 ms", "p90 ms", "p99 ms", "max ms"));
+        long totalOk = 0;
+        for (Operation operation : Operation.values()) {
+            OperationStats operationStats = stats.get(operation);
+            List<Long> latencies = operationStats.sortedLatencies();
+            totalOk += operationStats.ok;
+            sb.append(String.format("%-18s %8d %8d %8d %9.1f %9.1f %9.1f %9.1f %9.1f%n", operation.field,
+                    operationStats.ok, operationStats.rejected, operationStats.errors, (double) operationStats.ok / DURATION_SECONDS,
+                    percentile(latencies, 50), percentile(latencies, 90), percentile(latencies, 99), percentile(latencies, 100)));
+        }
+        sb.append(String.format("total: %.1f ops/s%n", (double) totalOk / DURATION_SECONDS));
+        sb.append(String.format("Ollama stub: %d SqlCoder answers (%d broken on purpose), %d DeepSeek answers (%d empty)%n",
+                models.getSqlAnswers(), models.getFailingSqlAnswers(), models.getInsightAnswers(), models.getEmptyInsightAnswers()));
+        sb.append(String.format("App: %.0f SqlCoder answers rejected by the gates, SQL source %s%n",
+                sum("insights.sql.rejections"), sqlSources()));
+        return sb.toString();
+    }
+
+    private double sum(String counter) {
+        return meterRegistry.find(counter).counters().stream().mapToDouble(Counter::count).sum();
+    }
+
+    private String sqlSources() {
+        StringBuilder sb = new StringBuilder();
+        for (Counter counter : meterRegistry.find("insights.sql.source").counters()) {
+            sb.append(counter.getId().getTag("source")).append('=').append((long) counter.count()).append(' ');
+        }
+        return sb.toString().trim();
+    }
+
+    // Latency in ms at the given percentile (nearest rank); 0 without samples.
+    private static double percentile(List<Long> sortedNanos, int percentile) {
+        if (sortedNanos.isEmpty()) return 0;
+        int index = Math.max(0, (int) Math.ceil(percentile / 100.0 * sortedNanos.size()) - 1);
+        return sortedNanos.get(index) / 1_000_000.0;
+    }
+
+    private static final class OperationStats {
+        private final List<Long> latencies = new ArrayList<>();
+        private long ok;
+        private long rejected;
+        private long errors;
+        private volatile String lastError;
+
+        // Latency only counts answered requests; rejections return at once and would flatter the percentiles.
+        synchronized void record(Outcome outcome, long nanos) {
+            switch (outcome) {
+                case OK -> {
+                    ok++;
+                    latencies.add(nanos);
+                }
+                case REJECTED -> rejected++;
+                case ERROR -> errors++;
+            }
+        }
+
+        synchronized List<Long> sortedLatencies() {
+            List<Long> sorted = new ArrayList<>(latencies);
+            Collections.sort(sorted);
+            return sorted;
+        }
+    }
+}
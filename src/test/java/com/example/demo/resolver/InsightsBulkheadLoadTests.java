@@ -0,0 +1,145 @@
+package com.example.demo.resolver;
+
+import com.example.demo.dto.GeneratedSqlContext;
+import com.example.demo.model.Budget;
+import com.example.demo.repository.BudgetRepository;
+import com.example.demo.service.InsightsGenerationService;
+import com.example.demo.service.TextToSqlGenerationService;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.web.server.LocalServerPort;
+import org.springframework.test.context.bean.override.mockito.MockitoBean;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.when;
+
+// Floods fetchInsights over real HTTP while running a CRUD query, with both models replaced by a 2 s stub.
+// Tomcat gets only 4 platform threads, so without virtual threads and the bulkhead the flood would block the CRUD calls.
+// Only the structural outcomes are asserted; the CRUD latencies are printed, not checked, as they depend on the machine.
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT, properties = {
+        "ollama.bulkhead.max-concurrent=2",
+        "ollama.bulkhead.queue-capacity=4",
+        "server.tomcat.threads.max=4"
+})
+class InsightsBulkheadLoadTests {
+
+    private static final long MODEL_LATENCY_MS = 2_000;
+    private static final int INSIGHT_REQUESTS = 40;
+    private static final int CRUD_REQUESTS = 20;
+    private static final long USER_ID = 9201L;
+
+    @LocalServerPort
+    int port;
+
+    @Autowired
+    BudgetRepository budgetRepository;
+
+    @Autowired
+    ObjectMapper objectMapper;
+
+    @MockitoBean
+    TextToSqlGenerationService textToSqlGenerationService;
+
+    @MockitoBean
+    InsightsGenerationService insightsGenerationService;
+
+    private final HttpClient httpClient = HttpClient.newHttpClient();
+
+    @Test
+    void insightsFloodRunsOnVirtualThreadsWithinTheBulkhead() throws Exception {
+        budgetRepository.save(new Budget(null, USER_ID, LocalDate.of(2026, 5, 1), LocalDate.of(2026, 5, 31), 1_000L, 1_000L, true));
+
+        AtomicInteger platformThreadCalls = new AtomicInteger();
+        when(textToSqlGenerationService.generateSql(anyLong(), anyString())).thenAnswer(invocation -> {
+            if (!Thread.currentThread().isVirtual()) platformThreadCalls.incrementAndGet();
+            Thread.sleep(MODEL_LATENCY_MS);
+            GeneratedSqlContext context = new GeneratedSqlContext();
+            context.setSqlQuery("SELECT 1");
+            return context;
+        });
+        when(insightsGenerationService.generateInsights(any())).thenReturn("You spent 40 on Fuel.");
+
+        crudLatencies();
+        List<Long> baseline = crudLatencies();
+
+        List<Future<JsonNode>> insights = new ArrayList<>();
+        List<Long> underLoad;
+        try (ExecutorService clients = Executors.newVirtualThreadPerTaskExecutor()) {
+            for (int i = 0; i < INSIGHT_REQUESTS; i++) {
+                insights.add(clients.submit(() -> post(
+                        "query { fetchInsights(budgetId: 1, prompt: \"How much did I spend on Fuel in May?\") }")));
+            }
+            // Let the burst of connections and rejections settle; 2 insights are still running and 4 queued.
+            Thread.sleep(500);
+            underLoad = crudLatencies();
+        }
+
+        int answered = 0;
+        int rejected = 0;
+        for (Future<JsonNode> insight : insights) {
+            JsonNode response = insight.get();
+            if (response.path("errors").isEmpty()) {
+                answered++;
+            } else if ("TOO_MANY_REQUESTS".equals(response.path("errors").get(0).path("extensions").path("classification").asText())) {
+                rejected++;
+            }
+        }
+
+        System.out.printf("CRUD p50/p95 ms: baseline %d/%d, during insights flood %d/%d; insights answered=%d rejected=%d%n",
+                percentile(baseline, 50), percentile(baseline, 95), percentile(underLoad, 50), percentile(underLoad, 95),
+                answered, rejected);
+
+        // 2 running + 4 queued get an answer, the rest are turned away instead of waiting.
+        assertTrue(answered >= 6, "answered=" + answered);
+        assertEquals(INSIGHT_REQUESTS, answered + rejected);
+        // No model call holds one of the 4 Tomcat threads, so the CRUD calls above always had one.
+        assertEquals(0, platformThreadCalls.get());
+        assertEquals(CRUD_REQUESTS, underLoad.size());
+    }
+
+    private List<Long> crudLatencies() throws Exception {
+        List<Long> latencies = new ArrayList<>(CRUD_REQUESTS);
+        for (int i = 0; i < CRUD_REQUESTS; i++) {
+            long start = System.nanoTime();
+            JsonNode response = post("query { fetchBudgetDetailsForExistingUser(id: " + USER_ID + ") { budgetId budgetRemaining } }");
+            latencies.add((System.nanoTime() - start) / 1_000_000);
+            assertTrue(response.path("errors").isEmpty(), response::toString);
+        }
+        return latencies;
+    }
+
+    private JsonNode post(String query) throws Exception {
+        HttpRequest request = HttpRequest.newBuilder(URI.create("http://localhost:" + port + "/graphql"))
+                .header("Content-Type", "application/json")
+                .POST(HttpRequest.BodyPublishers.ofString(objectMapper.writeValueAsString(Map.of("query", query))))
+                .build();
+        return objectMapper.readTree(httpClient.send(request, HttpResponse.BodyHandlers.ofString()).body());
+    }
+
+    private static long percentile(List<Long> values, int percentile) {
+        List<Long> sorted = new ArrayList<>(values);
+        Collections.sort(sorted);
+        return sorted.get(Math.max(0, (int) Math.ceil(percentile / 100.0 * sorted.size()) - 1));
+    }
+}
@@ -0,0 +1,136 @@
+package com.example.demo.service;
+
+import com.example.demo.dto.GeneratedSqlContext;
+import com.example.demo.dto.QueryResult;
+import com.example.demo.dto.TransactionInput;
+import com.example.demo.enums.PromptIntent;
+import com.example.demo.model.Budget;
+import com.example.demo.repository.BudgetRepository;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+// Every answer from the columns is checked against the template SQL run on the rollup.
+@SpringBootTest(properties = "insights.jobs.workers=0")
+class BudgetColumnStoreTests {
+
+    private static final long USER_ID = 9601L;
+
+    @Autowired
+    BudgetColumnStore budgetColumnStore;
+
+    @Autowired
+    SqlTemplateCompiler sqlTemplateCompiler;
+
+    @Autowired
+    SqlQueryExecutionService sqlQueryExecutionService;
+
+    @Autowired
+    TransactionService transactionService;
+
+    @Autowired
+    BudgetRepository budgetRepository;
+
+    @Test
+    void templateQuestionsMatchTheSqlAndFollowNewTransactions() {
+        Budget budget = budgetRepository.save(new Budget(null, USER_ID, LocalDate.of(2026, 5, 1), LocalDate.of(2026, 6, 30), 1_000L, 1_000L, true));
+        long budgetId = budget.getBudgetId();
+        save(budgetId, 40L, LocalDate.of(2026, 5, 3), "Fuel");
+        save(budgetId, 25L, LocalDate.of(2026, 5, 9), "Fuel");
+        save(budgetId, 60L, LocalDate.of(2026, 5, 9), "Rent or mortgage");
+        save(budgetId, 30L, LocalDate.of(2026, 6, 2), "Food & groceries");
+        save(budgetId, 15L, LocalDate.of(2026, 6, 20), "Fuel");
+
+        List<PromptConstraints> questions = List.of(
+                constraints(budgetId, USER_ID, PromptIntent.SPEND_TOTAL, List.of("Fuel"), List.of(5)),
+                constraints(budgetId, USER_ID, PromptIntent.SPEND_TOTAL, List.of("Utilities"), List.of(5)),
+                constraints(budgetId, USER_ID, PromptIntent.SPEND_TOTAL, List.of(), List.of(6, 5)),
+                constraints(budgetId, USER_ID, PromptIntent.SPEND_TOTAL, List.of("Fuel", "Rent or mortgage"), List.of(5)),
+                constraints(budgetId, USER_ID, PromptIntent.SPEND_TOTAL, List.of("Fuel", "Food & groceries"), List.of(5, 6)),
+                constraints(budgetId, USER_ID, PromptIntent.TOP_CATEGORY, List.of(), List.of(5, 6)));
+
+        long misses = budgetColumnStore.getMisses();
+        for (PromptConstraints question : questions) {
+            assertSameAsSql(question);
+        }
+        assertEquals(misses + 1, budgetColumnStore.getMisses());
+
+        // Appended on commit, not loaded again.
+        save(budgetId, 50L, LocalDate.of(2026, 6, 21), "Fuel");
+        for (PromptConstraints question : questions) {
+            assertSameAsSql(question);
+        }
+        assertEquals(misses + 1, budgetColumnStore.getMisses());
+        assertEquals(List.of(List.of(5L, 125L), List.of(6L, 95L)), rows(answer(questions.get(2))));
+    }
+
+    @Test
+    void monthsWithSpendInAnotherBudgetOfTheUserRunAsSql() {
+        Budget may = budgetRepository.save(new Budget(null, USER_ID + 1, LocalDate.of(2026, 5, 1), LocalDate.of(2026, 5, 31), 1_000L, 1_000L, true));
+        Budget june = budgetRepository.save(new Budget(null, USER_ID + 1, LocalDate.of(2026, 6, 1), LocalDate.of(2026, 6, 30), 1_000L, 1_000L, true));
+        save(may.getBudgetId(), 40L, LocalDate.of(2026, 5, 3), "Fuel");
+
+        PromptConstraints mayQuestion = constraints(may.getBudgetId(), USER_ID + 1, PromptIntent.SPEND_TOTAL, List.of("Fuel"), List.of(5));
+        PromptConstraints juneQuestion = constraints(may.getBudgetId(), USER_ID + 1, PromptIntent.SPEND_TOTAL, List.of("Fuel"), List.of(6));
+        assertTrue(budgetColumnStore.answer(may.getBudgetId(), context(juneQuestion)).isPresent());
+
+        // The rollup sums both budgets of the user for June now.
+        save(june.getBudgetId(), 20L, LocalDate.of(2026, 6, 2), "Fuel");
+        long fallbacks = budgetColumnStore.getFallbacks();
+        assertTrue(budgetColumnStore.answer(may.getBudgetId(), context(juneQuestion)).isEmpty());
+        assertEquals(fallbacks + 1, budgetColumnStore.getFallbacks());
+        assertSameAsSql(mayQuestion);
+    }
+
+    private void save(long budgetId, long amount, LocalDate date, String category) {
+        transactionService.saveTransaction(new TransactionInput(budgetId, amount, date, category, 1_000L));
+    }
+
+    private void assertSameAsSql(PromptConstraints question) {
+        String sql = sqlTemplateCompiler.compile(question).orElseThrow();
+        QueryResult expected = sqlQueryExecutionService.executeBounded(sql);
+        QueryResult actual = answer(question);
+        assertEquals(expected.getColumns(), actual.getColumns(), sql);
+        assertEquals(rows(expected), rows(actual), sql);
+    }
+
+    private QueryResult answer(PromptConstraints question) {
+        return budgetColumnStore.answer(question.budgetId(), context(question)).orElseThrow();
+    }
+
+    private static List<List<Object>> rows(QueryResult result) {
+        List<List<Object>> rows = new ArrayList<>();
+        for (int row = 0; row < result.getRowCount(); row++) {
+            List<Object> values = new ArrayList<>();
+            for (int column = 0; column < result.getColumns().size(); column++) {
+                values.add(result.value(column, row));
+            }
+            rows.add(values);
+        }
+        return rows;
+    }
+
+    private static PromptConstraints constraints(long budgetId, long userId, PromptIntent intent, List<String> categories, List<Integer> months) {
+        return new PromptConstraints(budgetId, userId, "", categories.size() == 1 ? categories.get(0) : null,
+                categories, months.size() == 1 ? months.get(0) : null, 2026, months, months.size() >= 2, categories.size() >= 2, intent);
+    }
+
+    private static GeneratedSqlContext context(PromptConstraints constraints) {
+        GeneratedSqlContext ctx = new GeneratedSqlContext();
+        ctx.setRequiredCategory(constraints.requiredCategory());
+        ctx.setRequiredCategories(constraints.requiredCategories());
+        ctx.setRequiredMonth(constraints.requiredMonth());
+        ctx.setRequiredYear(constraints.requiredYear());
+        ctx.setRequiredMonths(constraints.monthsFound());
+        ctx.setIntent(constraints.intent());
+        ctx.setSqlSource("template");
+        return ctx;
+    }
+}
@@ -0,0 +1,133 @@
+package com.example.demo.service;
+
+import com.example.demo.dto.QueryResult;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The resultSet part of the DeepSeek prompt: the old JSON array of row objects (every column name repeated on
+ * every row) against {@link ResultSetEncoder} (header once, |-delimited rows, large results summarized).
+ * Setup prints the prompt characters of both encodings per corpus entry; DeepSeek prompt evaluation time grows
+ * with the prompt tokens, so the character reduction is the model-side saving.
+ * mvn -Pbenchmark test-compile exec:exec -Djmh.args="InsightsPromptEncodingBenchmark"
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class InsightsPromptEncodingBenchmark {
+
+    private static final List<String> CATEGORIES = List.of("Food & groceries", "Dining out", "Fuel", "Utilities",
+            "Rent or mortgage", "Subscriptions", "Healthcare", "Travel");
+
+    // Shapes SqlCoder produces: top categories, category x month totals, raw transactions without GROUP BY.
+    @Param({"top_categories", "category_by_month", "raw_transactions"})
+    public String corpus;
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private QueryResult result;
+    private List<Map<String, Object>> rows;
+
+    @Setup
+    public void setUp() throws JsonProcessingException {
+        result = switch (corpus) {
+            case "top_categories" -> topCategories();
+            case "category_by_month" -> categoryByMonth();
+            default -> rawTransactions(500);
+        };
+        rows = toRowMaps(result);
+
+        int before = jsonRows().length();
+        int after = compactEncoding().length();
+        System.out.printf("%n[%s] %d rows: JSON rows %d chars, compact %d chars (%.1f%% fewer, ~%d fewer tokens)%n",
+                corpus, result.getRowCount(), before, after, 100.0 * (before - after) / before, (before - after) / 4);
+    }
+
+    @Benchmark
+    public String jsonRows() throws JsonProcessingException {
+        return objectMapper.writeValueAsString(rows);
+    }
+
+    @Benchmark
+    public String compactEncoding() {
+        return ResultSetEncoder.encode(result, 25, 10);
+    }
+
+    private static QueryResult topCategories() {
+        String[] category = new String[5];
+        long[] total = new long[5];
+        for (int i = 0; i < 5; i++) {
+            category[i] = CATEGORIES.get(i);
+            total[i] = 900 - i * 130L;
+        }
+        return new QueryResult(List.of("category", "total_spent"), List.of(category, total), 5, false);
+    }
+
+    private static QueryResult categoryByMonth() {
+        int n = CATEGORIES.size() * 12;
+        String[] category = new String[n];
+        long[] month = new long[n];
+        long[] total = new long[n];
+        Random random = new Random(7);
+        for (int m = 0; m < 12; m++) {
+            for (int c = 0; c < CATEGORIES.size(); c++) {
+                int i = m * CATEGORIES.size() + c;
+                category[i] = CATEGORIES.get(c);
+                month[i] = m + 1;
+                total[i] = 50 + random.nextInt(600);
+            }
+        }
+        return new QueryResult(List.of("category", "month", "total_spent"), List.of(category, month, total), n, false);
+    }
+
+    private static QueryResult rawTransactions(int n) {
+        long[] id = new long[n];
+        long[] amount = new long[n];
+        Object[] date = new Object[n];
+        Object[] category = new Object[n];
+        Random random = new Random(11);
+        LocalDate start = LocalDate.of(2026, 1, 1);
+        for (int i = 0; i < n; i++) {
+            id[i] = 10_000 + i;
+            amount[i] = 5 + random.nextInt(250);
+            date[i] = start.plusDays(random.nextInt(180)).toString();
+            category[i] = CATEGORIES.get(random.nextInt(CATEGORIES.size()));
+        }
+        return new QueryResult(List.of("transaction_id", "amount_spend", "time_stamp", "category"),
+                List.of(id, amount, date, category), n, false);
+    }
+
+    // What jdbcTemplate.queryForList used to hand to the prompt builder.
+    private static List<Map<String, Object>> toRowMaps(QueryResult result) {
+        List<Map<String, Object>> rows = new ArrayList<>(result.getRowCount());
+        for (int row = 0; row < result.getRowCount(); row++) {
+            Map<String, Object> map = new LinkedHashMap<>();
+            for (int c = 0; c < result.getColumns().size(); c++) {
+                map.put(result.getColumns().get(c), result.value(c, row));
+            }
+            rows.add(map);
+        }
+        return rows;
+    }
+}
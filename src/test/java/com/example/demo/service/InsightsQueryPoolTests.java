@@ -0,0 +1,94 @@
+package com.example.demo.service;
+
+import com.example.demo.dto.QueryResult;
+import com.example.demo.dto.TransactionInput;
+import com.example.demo.model.Budget;
+import com.example.demo.repository.BudgetRepository;
+import com.zaxxer.hikari.HikariDataSource;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.boot.test.context.SpringBootTest;
+
+import java.time.LocalDate;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+// One connection, no queue and a one second limit (H2 ignores the MAX_EXECUTION_TIME hint, so the JDBC timeout
+// cancels it after two). The slow query sums a two billion row range.
+@SpringBootTest(properties = {
+        "insights.query.pool-size=1",
+        "insights.query.queue-capacity=0",
+        "insights.query.timeout-seconds=1",
+        "insights.jobs.workers=0"
+})
+class InsightsQueryPoolTests {
+
+    private static final String SLOW_QUERY = "SELECT SUM(\"X\") AS total FROM SYSTEM_RANGE(1, 2000000000)";
+
+    @Autowired
+    SqlQueryExecutionService sqlQueryExecutionService;
+
+    @Autowired
+    @Qualifier("insightsQueryPrimaryDataSource")
+    HikariDataSource insightsQueryPool;
+
+    @Autowired
+    BudgetRepository budgetRepository;
+
+    @Autowired
+    TransactionService transactionService;
+
+    @Test
+    void whereLiteralsRunAsBindParameters() {
+        Budget budget = budgetRepository.save(new Budget(null, 9401L, LocalDate.of(2026, 5, 1), LocalDate.of(2026, 5, 31), 1_000L, 1_000L, true));
+        transactionService.saveTransaction(new TransactionInput(budget.getBudgetId(), 40L, LocalDate.of(2026, 5, 3), "Fuel", 1_000L));
+        transactionService.saveTransaction(new TransactionInput(budget.getBudgetId(), 25L, LocalDate.of(2026, 5, 9), "Fuel", 1_000L));
+        transactionService.saveTransaction(new TransactionInput(budget.getBudgetId(), 60L, LocalDate.of(2026, 5, 9), "Rent", 1_000L));
+
+        String sql = "SELECT t.category, SUM(t.amount_spend) AS total_spent FROM `transaction` t JOIN budget b ON b.budget_id = t.budget_id "
+                + "WHERE b.user_id = 9401 AND MONTH(t.time_stamp) = 5 AND YEAR(t.time_stamp) = 2026 AND t.category IN ('Fuel', 'Rent') "
+                + "GROUP BY t.category ORDER BY total_spent DESC LIMIT 5";
+        ParameterizedSql parameterized = SqlShapeValidator.parameterize(sql);
+
+        assertEquals("SELECT t.category, SUM(t.amount_spend) AS total_spent FROM `transaction` t JOIN budget b ON b.budget_id = t.budget_id "
+                + "WHERE b.user_id = ? AND MONTH(t.time_stamp) = ? AND YEAR(t.time_stamp) = ? AND t.category IN (?, ?) "
+                + "GROUP BY t.category ORDER BY total_spent DESC LIMIT 5", parameterized.template());
+        assertEquals(List.of(9401L, 5L, 2026L, "Fuel", "Rent"), parameterized.parameters());
+
+        QueryResult literal = sqlQueryExecutionService.executeBounded(sql);
+        QueryResult bound = sqlQueryExecutionService.executeBounded(parameterized.template(), parameterized.parameters());
+        assertEquals(literal.getColumns(), bound.getColumns());
+        assertArrayEquals((Object[]) literal.getColumnValues().get(0), (Object[]) bound.getColumnValues().get(0));
+        assertArrayEquals((long[]) literal.getColumnValues().get(1), (long[]) bound.getColumnValues().get(1));
+        assertArrayEquals(new long[]{65L, 60L}, (long[]) bound.getColumnValues().get(1));
+    }
+
+    @Test
+    void slowQueryIsCancelledAndItsConnectionEvictedWhileOthersAreRejected() throws Exception {
+        long timeouts = sqlQueryExecutionService.getTimeouts();
+        long rejected = sqlQueryExecutionService.getRejected();
+
+        CompletableFuture<Void> slow = CompletableFuture.runAsync(() -> sqlQueryExecutionService.executeBounded(SLOW_QUERY));
+        for (int i = 0; i < 50 && sqlQueryExecutionService.getActive() == 0; i++) {
+            Thread.sleep(20);
+        }
+        assertEquals(1, sqlQueryExecutionService.getActive());
+        assertThrows(BulkheadFullException.class, () -> sqlQueryExecutionService.executeBounded("SELECT 1 AS one"));
+        assertEquals(rejected + 1, sqlQueryExecutionService.getRejected());
+
+        Exception failure = assertThrows(Exception.class, slow::join);
+        assertTrue(failure.getCause().getMessage().startsWith("Failed to execute query"));
+        assertEquals(timeouts + 1, sqlQueryExecutionService.getTimeouts());
+        assertEquals(0, sqlQueryExecutionService.getActive());
+        assertEquals(0, insightsQueryPool.getHikariPoolMXBean().getActiveConnections());
+
+        // The pool replaces the evicted connection.
+        assertEquals(1, sqlQueryExecutionService.executeBounded("SELECT 1 AS one").getRowCount());
+    }
+}
@@ -0,0 +1,493 @@
+package com.example.demo.service;
+
+import com.example.demo.constants.Constants;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * The regex gate chain TextToSqlGenerationService used before {@link SqlShapeValidator}, kept as-is
+ * as the baseline for {@link SqlValidatorBenchmark}. Not used by the application.
+ */
+final class LegacyRegexSqlGate {
+
+    private LegacyRegexSqlGate() {}
+
+    /**
+     * Detect if the SQL joins the budget table (needed for user-scoped queries).
+     */
+    private static final Pattern SQL_JOIN_BUDGET_PATTERN = Pattern.compile("(?is)\\bjoin\\s+`?budget`?\\b");
+
+    /**
+     * Matches budget.user_id = <n> or b.user_id = <n>. Captures the numeric user_id as group(1).
+     */
+    private static final Pattern SQL_BUDGET_USER_ID_EQUALS_PATTERN = Pattern.compile("(?is)\\b(?:`?budget`?|b)\\s*\\.\\s*user_id\\b\\s*=\\s*(\\d+)");
+
+    /**
+     * Detects an invalid user_id reference on the transaction table.
+     */
+    private static final Pattern SQL_TRANSACTION_USER_ID_PATTERN = Pattern.compile("(?is)\\b(?:`?transaction`?|t)\\s*\\.\\s*user_id\\b");
+
+    /**
+     * Matches: FROM `transaction` <alias> (backticks optional). Captures the alias as group(1).
+     */
+    private static final Pattern SQL_FROM_TRANSACTION_ALIAS_PATTERN =
+            Pattern.compile("(?is)\\bfrom\\s+`?transaction`?\\s+([a-zA-Z]\\w*)");
+
+    /**
+     * Detects any bare `transaction`.<col> reference (instead of using an alias like t.<col>).
+     */
+    private static final Pattern SQL_BARE_TRANSACTION_DOT_PATTERN =
+            Pattern.compile("(?is)\\b`?transaction`?\\s*\\.");
+
+    /**
+     * Matches MONTH(time_stamp)=<n> with optional table prefix (transaction./`transaction`./t.).
+     * Captures the numeric month as group(1).
+     */
+    private static final Pattern SQL_MONTH_EQUALS_PATTERN = Pattern.compile(
+            "(?is)\\bmonth\\s*\\(\\s*(?:(?:`?transaction`?|`?t`?|t)\\s*\\.)?\\s*`?time_stamp`?\\s*\\)\\s*=\\s*(\\d{1,2})"
+    );
+
+    /**
+     * Matches MONTH(time_stamp) IN (<list>) regardless of spacing/newlines.
+     * Captures the comma-separated list inside the parentheses as group(1).
+     */
+    private static final Pattern SQL_MONTH_IN_PATTERN = Pattern.compile(
+            "(?is)month\\s*\\(.*?time_stamp.*?\\)\\s*in\\s*\\(([^)]*)\\)"
+    );
+
+    /**
+     * Matches YEAR(time_stamp)=<yyyy> with optional table prefix (transaction./`transaction`./t.).
+     * Captures the numeric year as group(1).
+     */
+    private static final Pattern SQL_YEAR_EQUALS_PATTERN = Pattern.compile(
+            "(?is)\\byear\\s*\\(\\s*(?:(?:`?transaction`?|`?t`?|t)\\s*\\.)?\\s*`?time_stamp`?\\s*\\)\\s*=\\s*(\\d{4})"
+    );
+
+    /**
+     * Matches: FROM category_month_spend <alias> (backticks optional). Captures the alias as group(1).
+     */
+    private static final Pattern SQL_FROM_ROLLUP_ALIAS_PATTERN =
+            Pattern.compile("(?is)\\bfrom\\s+`?category_month_spend`?\\s+([a-zA-Z]\\w*)");
+
+    /**
+     * Detects any reference to the raw transaction table.
+     */
+    private static final Pattern SQL_TRANSACTION_TABLE_PATTERN = Pattern.compile("(?is)`transaction`|\\btransaction\\b");
+
+    /**
+     * Matches r.user_id = <n> / category_month_spend.user_id = <n>. Captures the numeric user_id as group(1).
+     */
+    private static final Pattern SQL_ROLLUP_USER_ID_EQUALS_PATTERN =
+            Pattern.compile("(?is)\\b(?:`?category_month_spend`?|r)\\s*\\.\\s*user_id\\b\\s*=\\s*(\\d+)");
+
+    /**
+     * Matches spend_month = <n> on the rollup (optional r. prefix). Captures the numeric month as group(1).
+     */
+    private static final Pattern SQL_ROLLUP_MONTH_EQUALS_PATTERN =
+            Pattern.compile("(?is)\\b(?:r\\s*\\.\\s*)?spend_month\\s*=\\s*(\\d{1,2})");
+
+    /**
+     * Matches spend_month IN (<list>) on the rollup. Captures the comma-separated list as group(1).
+     */
+    private static final Pattern SQL_ROLLUP_MONTH_IN_PATTERN =
+            Pattern.compile("(?is)\\b(?:r\\s*\\.\\s*)?spend_month\\s+in\\s*\\(([^)]*)\\)");
+
+    /**
+     * Matches spend_year = <yyyy> on the rollup (optional r. prefix). Captures the numeric year as group(1).
+     */
+    private static final Pattern SQL_ROLLUP_YEAR_EQUALS_PATTERN =
+            Pattern.compile("(?is)\\b(?:r\\s*\\.\\s*)?spend_year\\s*=\\s*(\\d{4})");
+
+    // Tokens that indicate PostgreSQL-only / non-MySQL syntax that we want to reject.
+    private static final Set<String> SQL_BANNED_TOKENS = Set.of(
+            " ilike ",
+            "interval '",
+            "::",
+            " extract(",
+            "date_trunc",
+            " date_part",
+            " to_char",
+            " to_date",
+            " to_timestamp",
+            " at time zone",
+            "generate_series",
+            "distinct on",
+            " filter (where ",
+            " returning ",
+            " similar to ",
+            " nulls last",
+            " nulls first",
+            " on conflict",
+            " intersect ",
+            " except ",
+            " serial ",
+            " bigserial ",
+            " generated always as identity",
+            " timestamptz",
+            " time with time zone",
+            " without time zone",
+            " jsonb",
+            " hstore",
+            " uuid",
+            " array[",
+            " unnest(",
+            " || ",
+            " do $$",
+            " language plpgsql",
+            " create extension",
+            " vacuum ",
+            " analyze ",
+            " regexp_replace(",
+            " cascade ",
+            " from transactions ",
+            " join transactions ",
+            " transactions.",
+            " from budgets ",
+            " join budgets ",
+            " fetch first ",
+            " offset ",
+            // DCL / unsafe keywords (also catches weird model typos like "GRANT BY" instead of "GROUP BY")
+            " grant ",
+            " revoke "
+    );
+
+    /**
+     * Make the model SQL conform to the app's required "safe" shape:
+     * - FROM `transaction` t (backticked + alias t)
+     * - Use t.<col> for transaction columns
+     * - Replace `transaction`.<col> / transaction.<col> with t.<col>
+     *
+     * This is intentionally conservative and only rewrites known columns to avoid touching budget columns.
+     */
+    static String canonicalizeSql(String sql) {
+        if (sql == null || sql.isBlank()) return sql;
+
+        // Rollup queries have their own r.<col> shape; the rewrites below only apply to `transaction`.
+        if (SQL_FROM_ROLLUP_ALIAS_PATTERN.matcher(sql).find()) return sql;
+
+        String out = sql;
+
+        // Ensure `transaction` is backticked and aliased as t.
+        // Case 1: FROM transaction (no alias) — common model output:
+        //   FROM transaction JOIN budget ...
+        //   FROM transaction WHERE ...
+        // We rewrite it whenever the next token is JOIN/WHERE/GROUP/ORDER/LIMIT or end-of-string.
+        out = out.replaceAll(
+                "(?is)\\bfrom\\s+transaction\\b(\\s*)(?=(?:join|where|group\\s+by|order\\s+by|limit)\\b|$)",
+                "FROM `transaction` t$1"
+        );
+        out = out.replaceAll(
+                "(?is)\\bfrom\\s+`transaction`\\b(\\s*)(?=(?:join|where|group\\s+by|order\\s+by|limit)\\b|$)",
+                "FROM `transaction` t$1"
+        );
+
+        // Case 2: FROM transaction <alias> (alias not guaranteed to be t)
+        Matcher fromAlias = Pattern.compile("(?is)\\bfrom\\s+`?transaction`?\\s+([a-zA-Z]\\w*)").matcher(out);
+        if (fromAlias.find()) {
+            String alias = fromAlias.group(1);
+            if (!"t".equalsIgnoreCase(alias)) {
+                out = out.replaceAll("(?is)\\bfrom\\s+`?transaction`?\\s+" + Pattern.quote(alias) + "\\b", "FROM `transaction` t");
+                // Replace <alias>.col -> t.col
+                out = out.replaceAll("(?is)\\b" + Pattern.quote(alias) + "\\s*\\.", "t.");
+            } else {
+                // Ensure backticks in FROM when alias already t
+                out = out.replaceAll("(?is)\\bfrom\\s+transaction\\s+t\\b", "FROM `transaction` t");
+            }
+        }
+
+        // Replace any remaining transaction.<col> / `transaction`.<col> with t.<col>
+        out = out.replaceAll("(?is)\\b`?transaction`?\\s*\\.", "t.");
+
+        // Prefix known transaction columns when unqualified.
+        out = out.replaceAll("(?i)(?<!\\.)\\bcategory\\b", "t.category");
+        out = out.replaceAll("(?i)(?<!\\.)\\bamount_spend\\b", "t.amount_spend");
+        out = out.replaceAll("(?i)(?<!\\.)\\btime_stamp\\b", "t.time_stamp");
+
+        return out;
+    }
+
+    // Check if the generated SQL contains any banned tokens.
+    static boolean containsBannedTokens(String sql) {
+        if (sql == null) return true;
+        // Normalize whitespace so we catch tokens even if split by newlines/tabs.
+        String normalized = (" " + sql.toLowerCase(Locale.ROOT) + " ").replaceAll("\\s+", " ");
+        for (String token : SQL_BANNED_TOKENS) {
+            if (normalized.contains(token)) return true;
+        }
+        // Extra guard for GRANT/REVOKE regardless of spacing/newlines.
+        if (normalized.contains(" grant ") || normalized.contains(" revoke ")) return true;
+        return false;
+    }
+
+    // Require that the transaction table is backticked and aliased as t, and that columns use the alias.
+    // Ex: FROM `transaction` t JOIN budget b ON b.budget_id = t.budget_id
+    static boolean usesTransactionAlias(String sql) {
+        if (sql == null) return false;
+
+        // Checks if the SQL contains the accepted pattern of substring that matches FROM `transaction` <alias>
+        Matcher transactionAliasMatcher = SQL_FROM_TRANSACTION_ALIAS_PATTERN.matcher(sql);
+        if (!transactionAliasMatcher.find()) {
+            return false;
+        }
+
+        // Checks if the SQL contains the accepted pattern of substring that matches <alias>
+        // Ex: t
+        String alias = transactionAliasMatcher.group(1);
+        if (!"t".equalsIgnoreCase(alias)) {
+            return false;
+        }
+        
+        // Checks if the SQL contains the unaccepted pattern of substring that matches `transaction`.<column>
+        // Ex: transaction.<column>
+        Matcher bareTransactionDotPatternMatcher = SQL_BARE_TRANSACTION_DOT_PATTERN.matcher(sql);
+        if (bareTransactionDotPatternMatcher.find()) {
+            return false;
+        }
+        return true;
+    }
+
+    // Aggregate questions may instead read the category_month_spend rollup, aliased as r, without touching `transaction`.
+    // Ex: FROM category_month_spend r WHERE r.user_id = 42
+    static boolean usesRollupAlias(String sql) {
+        if (sql == null) return false;
+
+        Matcher rollupAliasMatcher = SQL_FROM_ROLLUP_ALIAS_PATTERN.matcher(sql);
+        if (!rollupAliasMatcher.find() || !"r".equalsIgnoreCase(rollupAliasMatcher.group(1))) {
+            return false;
+        }
+        return !SQL_TRANSACTION_TABLE_PATTERN.matcher(sql).find();
+    }
+
+    // Either accepted table shape: `transaction` t joined to budget b, or the rollup r.
+    static boolean usesAllowedTableShape(String sql) {
+        return usesTransactionAlias(sql) || usesRollupAlias(sql);
+    }
+
+    static boolean containsRequiredBudgetId(String sql, long requiredBudgetId) {
+        if (sql == null) return false;
+        Matcher m = Constants.SQL_BUDGET_ID_EQUALS_PATTERN.matcher(sql);
+        while (m.find()) {
+            try {
+                long found = Long.parseLong(m.group(1));
+                if (found == requiredBudgetId) {
+                    return true;
+                }
+            } catch (NumberFormatException ignored) {
+                // keep scanning
+            }
+        }
+        return false;
+    }
+
+    // Check if the generated SQL contains the required user_id.
+    // This is essential to ensure that the query is scoped to a specific user.
+    static boolean containsRequiredUserId(String sql, long requiredUserId) {
+        if (sql == null) return false;
+
+        // The rollup carries user_id itself, so it must be filtered as r.user_id = <id>.
+        if (usesRollupAlias(sql)) {
+            return containsNumber(SQL_ROLLUP_USER_ID_EQUALS_PATTERN.matcher(sql), requiredUserId);
+        }
+
+        // Checks if the generated SQL contains the invalid user_id reference on the transaction table.
+        if (SQL_TRANSACTION_USER_ID_PATTERN.matcher(sql).find()) {
+            return false;
+        }
+
+        // Checks if the generated SQL joins on the budget table.
+        // Ex: FROM `transaction` t JOIN budget b ON b.budget_id = t.budget_id
+        if (!SQL_JOIN_BUDGET_PATTERN.matcher(sql).find()) {
+            return false;
+        }
+
+        // We allow `b.user_id = <id>` / `budget.user_id = <id>` ONLY because we already:
+        // 1) rejected `t.user_id` / `transaction.user_id` (invalid/unsafe), and
+        // 2) required a JOIN on the `budget` table (so the alias/prefix is meaningful).
+        Matcher matcher = SQL_BUDGET_USER_ID_EQUALS_PATTERN.matcher(sql);
+        while (matcher.find()) {
+            try {
+                long found = Long.parseLong(matcher.group(1));
+                if (found == requiredUserId) return true;
+            } catch (NumberFormatException ignored) {
+                // keep scanning
+            }
+        }
+        
+        // We allow unqualified `user_id = <id>` as well. This will also match `b.user_id = <id>`,
+        // but the earlier checks ensure the query is budget-scoped and not using `transaction.user_id`.
+        Matcher unqualified = Constants.SQL_USER_ID_EQUALS_PATTERN.matcher(sql);
+        while (unqualified.find()) {
+            try {
+                long found = Long.parseLong(unqualified.group(1));
+                if (found == requiredUserId) return true;
+            } catch (NumberFormatException ignored) {
+                // keep scanning
+            }
+        }
+
+        return false;
+    }
+
+    // The user prompt may contain a single month. In such cases, we need to check if the generated SQL contains the month filter.
+    static boolean containsSingleMonth(String sql, int month) {
+        if (sql == null) return false;
+        if (containsNumber(SQL_ROLLUP_MONTH_EQUALS_PATTERN.matcher(sql), month)) return true;
+
+        Matcher monthEqualsPatternMatcher = SQL_MONTH_EQUALS_PATTERN.matcher(sql);
+        while (monthEqualsPatternMatcher.find()) {
+            try {
+                int monthFound = Integer.parseInt(monthEqualsPatternMatcher.group(1));
+                if (monthFound == month) return true;
+            } catch (NumberFormatException ignored) {
+                // keep scanning
+            }
+        }
+        return false;
+    }
+
+    // We need the SQL query to be scoped to a specific year, hence we need to check if the generated SQL contains the year filter.
+    static boolean containsRequiredYear(String sql, int year) {
+        if (sql == null) return false;
+        if (containsNumber(SQL_ROLLUP_YEAR_EQUALS_PATTERN.matcher(sql), year)) return true;
+
+        Matcher yearEqualsPatternMatcher = SQL_YEAR_EQUALS_PATTERN.matcher(sql);
+        while (yearEqualsPatternMatcher.find()) {
+            try {
+                int yearFound = Integer.parseInt(yearEqualsPatternMatcher.group(1));
+                if (yearFound == year) return true;
+            } catch (NumberFormatException ignored) {
+                // keep scanning
+            }
+        }
+        return false;
+    }
+
+    // Checks if the generated SQL contains the months mentioned in the user prompt.
+    static boolean containsMultiMonth(String sql, List<Integer> months) {
+        if (sql == null) return false;
+
+        // In some cases, the user may not have mentioned the months in the prompt.
+        if (months == null || months.isEmpty()) return true;
+
+        // Checks if the generated SQL contains the accepted pattern of substring that matches MONTH(time_stamp) IN (<list>)
+        // The months list contains the months in the form of integers ex: June maps to 6 and November maps to 11.
+        // On the rollup the same list is written as r.spend_month IN (<list>).
+        Matcher monthInPatternMatcher = SQL_MONTH_IN_PATTERN.matcher(sql);
+        boolean monthInFound = monthInPatternMatcher.find();
+        if (!monthInFound) {
+            monthInPatternMatcher = SQL_ROLLUP_MONTH_IN_PATTERN.matcher(sql);
+            monthInFound = monthInPatternMatcher.find();
+        }
+        if (monthInFound) {
+            String[] monthsInPattern = monthInPatternMatcher.group(1).split(",");
+            List<Integer> monthsFound = new ArrayList<>();
+            for (String monthInPattern : monthsInPattern) {
+                try {
+                    monthsFound.add(Integer.parseInt(monthInPattern.trim()));
+                } catch (NumberFormatException ignored) {
+                    // skip invalid entries
+                }
+            }
+            return monthsFound.containsAll(months);
+        }
+
+        // If the model generates MONTH(time_stamp)=6 or MONTH(time_stamp)=6 OR MONTH(time_stamp)=7 instead of IN (6,7)
+        List<Integer> monthsMatched = new ArrayList<>();
+        for (Matcher monthEqualsPatternMatcher : List.of(SQL_MONTH_EQUALS_PATTERN.matcher(sql),
+                SQL_ROLLUP_MONTH_EQUALS_PATTERN.matcher(sql))) {
+            while (monthEqualsPatternMatcher.find()) {
+                try {
+                    monthsMatched.add(Integer.parseInt(monthEqualsPatternMatcher.group(1)));
+                } catch (NumberFormatException ignored) {
+                    // keep scanning
+                }
+            }
+        }
+        return monthsMatched.containsAll(months);
+    }
+
+    // True if any group(1) match of the pattern equals the expected number.
+    private static boolean containsNumber(Matcher matcher, long expected) {
+        while (matcher.find()) {
+            try {
+                if (Long.parseLong(matcher.group(1)) == expected) return true;
+            } catch (NumberFormatException ignored) {
+                // keep scanning
+            }
+        }
+        return false;
+    }
+
+    // Check if the generated SQL contains the required category.
+    // Ex: transaction.category = 'Utilities'
+    static boolean containsRequiredCategory(String sql, String requiredCategory) {
+        if (sql == null || requiredCategory == null) return false;
+
+        // Simple substring checks (case-insensitive). We escaped single quotes in the required category.
+        String needle1 = "category = '" + requiredCategory.replace("'", "''") + "'";
+        String needle2 = "transaction.category = '" + requiredCategory.replace("'", "''") + "'";
+        String needle3 = "`transaction`.category = '" + requiredCategory.replace("'", "''") + "'";
+        String normalizedSql = sql.toLowerCase(Locale.ROOT);
+        return normalizedSql.contains(needle1.toLowerCase(Locale.ROOT))
+                || normalizedSql.contains(needle2.toLowerCase(Locale.ROOT))
+                || normalizedSql.contains(needle3.toLowerCase(Locale.ROOT));
+    }
+
+    static boolean containsRequiredCategories(String sql, List<String> requiredCategories) {
+        if (requiredCategories == null || requiredCategories.isEmpty()) return true;
+        if (sql == null) return false;
+
+        for (String category : requiredCategories) {
+            if (category == null || category.isBlank()) continue;
+            if (containsCategoryEquals(sql, category)) continue;
+            if (containsCategoryIn(sql, category)) continue;
+            return false;
+        }
+        return true;
+    }
+
+    private static boolean containsCategoryEquals(String sql, String category) {
+        String escaped = category.replace("'", "''");
+        String normalized = sql.toLowerCase(Locale.ROOT);
+        String c = escaped.toLowerCase(Locale.ROOT);
+        // Allow t.category / r.category / transaction.category / `transaction`.category / unqualified category
+        return normalized.contains(("category = '" + c + "'"))
+                || normalized.contains(("t.category = '" + c + "'"))
+                || normalized.contains(("transaction.category = '" + c + "'"))
+                || normalized.contains(("`transaction`.category = '" + c + "'"));
+    }
+
+    private static boolean containsCategoryIn(String sql, String category) {
+        // Matches: category IN ('a','b') with optional qualifier.
+        Matcher m = Pattern.compile(
+                "(?is)\\b(?:(?:`?transaction`?|t|r)\\s*\\.\\s*)?category\\s+in\\s*\\(([^)]*)\\)"
+        ).matcher(sql);
+
+        String target = normalizeQuotedLiteral(category);
+        while (m.find()) {
+            String list = m.group(1);
+            for (String raw : list.split(",")) {
+                String v = normalizeQuotedLiteral(raw);
+                if (!v.isEmpty() && v.equals(target)) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    private static String normalizeQuotedLiteral(String raw) {
+        if (raw == null) return "";
+        String s = raw.trim();
+        // strip surrounding quotes if present
+        if ((s.startsWith("'") && s.endsWith("'")) || (s.startsWith("\"") && s.endsWith("\""))) {
+            s = s.substring(1, s.length() - 1);
+        }
+        return s.trim().toLowerCase(Locale.ROOT);
+    }
+}
@@ -0,0 +1,138 @@
+package com.example.demo.service;
+
+import com.example.demo.constants.Constants;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+
+import static com.example.demo.service.TextToSqlPipelineBenchmark.PROMPTS;
+import static com.example.demo.service.TextToSqlPipelineBenchmark.PROMPT_COUNT;
+
+/**
+ * Prompt entity extraction as the category list grows: the previous indexOf-per-category / indexOf-per-month /
+ * year regex scans against the single {@link PromptEntityExtractor} automaton pass.
+ * The shipped transaction-categories.txt is padded with generated user-defined categories up to categoryCount.
+ * mvn -Pbenchmark test-compile exec:exec -Djmh.args="PromptEntityExtractorBenchmark -prof gc"
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class PromptEntityExtractorBenchmark {
+
+    @Param({"25", "1000", "5000"})
+    public int categoryCount;
+
+    private List<String> multiWordCategories;
+    private List<String> singleWordCategories;
+    private PromptEntityExtractor extractor;
+
+    @Setup
+    public void setUp() throws IOException {
+        List<String> categories = new ArrayList<>(readCategories());
+        Random random = new Random(42);
+        String[] words = {"pet", "garden", "hobby", "coffee", "books", "gym", "taxi", "parking", "laundry", "music",
+                "software", "hardware", "repairs", "tuition", "bakery", "wine", "streaming", "toys", "tools", "vet"};
+        while (categories.size() < categoryCount) {
+            categories.add(words[random.nextInt(words.length)] + " " + words[random.nextInt(words.length)] + " " + categories.size());
+        }
+
+        multiWordCategories = categories.stream()
+                .filter(c -> c.chars().anyMatch(Character::isWhitespace))
+                .sorted(Comparator.comparingInt(String::length).reversed())
+                .toList();
+        singleWordCategories = categories.stream()
+                .filter(c -> c.chars().noneMatch(Character::isWhitespace))
+                .toList();
+        extractor = PromptEntityExtractor.build(categories);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(PROMPT_COUNT)
+    public void indexOfScans(Blackhole bh) {
+        for (String prompt : PROMPTS) {
+            bh.consume(legacyCategories(prompt));
+            bh.consume(legacyMonths(prompt));
+            bh.consume(legacyYear(prompt));
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(PROMPT_COUNT)
+    public void automaton(Blackhole bh) {
+        for (String prompt : PROMPTS) {
+            bh.consume(extractor.extract(prompt));
+        }
+    }
+
+    // The pre-automaton detectCategories / detectMonths / detectYear.
+    private List<String> legacyCategories(String prompt) {
+        String normalizedPrompt = prompt.toLowerCase(Locale.ROOT);
+        List<Object[]> matches = new ArrayList<>();
+        for (List<String> bucket : List.of(multiWordCategories, singleWordCategories)) {
+            for (String category : bucket) {
+                int firstIndex = normalizedPrompt.indexOf(category.toLowerCase(Locale.ROOT));
+                if (firstIndex >= 0) matches.add(new Object[]{firstIndex, category});
+            }
+        }
+        matches.sort(Comparator.comparingInt(m -> (Integer) m[0]));
+        Set<String> ordered = new LinkedHashSet<>();
+        for (Object[] m : matches) ordered.add((String) m[1]);
+        return new ArrayList<>(ordered);
+    }
+
+    private static List<Integer> legacyMonths(String prompt) {
+        List<int[]> found = new ArrayList<>();
+        for (Map.Entry<String, Integer> monthName : Constants.MONTH_NAME_TO_NUMBER.entrySet()) {
+            int index = prompt.toLowerCase(Locale.ROOT).indexOf(monthName.getKey());
+            if (index >= 0) found.add(new int[]{index, monthName.getValue()});
+        }
+        found.sort(Comparator.comparingInt(m -> m[0]));
+        Set<Integer> ordered = new LinkedHashSet<>();
+        for (int[] m : found) ordered.add(m[1]);
+        return new ArrayList<>(ordered);
+    }
+
+    private static Integer legacyYear(String prompt) {
+        Matcher matcher = Constants.PROMPT_YEAR_PATTERN.matcher(prompt);
+        return matcher.find() ? Integer.parseInt(matcher.group(1)) : null;
+    }
+
+    private static List<String> readCategories() throws IOException {
+        try (InputStream in = PromptEntityExtractorBenchmark.class.getClassLoader().getResourceAsStream("ai/transaction-categories.txt")) {
+            if (in == null) {
+                throw new IOException("Missing resource: ai/transaction-categories.txt");
+            }
+            return new String(in.readAllBytes(), StandardCharsets.UTF_8).lines()
+                    .map(String::trim)
+                    .filter(s -> !s.isBlank())
+                    .toList();
+        }
+    }
+}
@@ -0,0 +1,54 @@
+package com.example.demo.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+// The automaton has to give what the indexOf / regex lookups it replaced gave (see PromptEntityExtractorBenchmark).
+class PromptEntityExtractorTests {
+
+    private final PromptEntityExtractor extractor = PromptEntityExtractor.build(
+            List.of("Food & groceries", "Food", "Groceries", "Fuel", "Travel", "Dining out", " ", "Gifts & donations"));
+
+    @Test
+    void categoriesMatchAsCaseInsensitiveSubstrings() {
+        assertEquals(List.of("Fuel", "Travel"), extractor.extract("Were my FUELLING costs higher while travelling?").categories());
+        assertEquals(List.of("Dining out"), extractor.extract("dining outside the city").categories());
+        assertEquals(List.of(), extractor.extract("How much did I spend?").categories());
+    }
+
+    @Test
+    void multiWordCategoriesAndTheWordsInsideThemAreAllReported() {
+        // Same start: the longer phrase first, as the multi-word bucket was searched first.
+        assertEquals(List.of("Food & groceries", "Food", "Groceries", "Fuel"),
+                extractor.extract("Spend on food & groceries and fuel").categories());
+        // Each category is placed at its first occurrence.
+        assertEquals(List.of("Food", "Food & groceries", "Groceries"),
+                extractor.extract("Food out, then Food & Groceries").categories());
+        assertEquals(List.of("Gifts & donations"), extractor.extract("gifts & donations").categories());
+    }
+
+    @Test
+    void repeatedMonthsKeepTheirFirstPosition() {
+        assertEquals(List.of(6, 5), extractor.extract("June, May and june again, then MAY").months());
+        // Substrings count too ("maybe" is May), as with indexOf.
+        assertEquals(List.of(5, 3), extractor.extract("maybe in March?").months());
+        assertEquals(List.of(), extractor.extract("last quarter").months());
+    }
+
+    @Test
+    void yearsMustStandAloneLikeTheWordBoundaryRegex() {
+        assertEquals(2026, extractor.extract("Fuel in May 2026").year());
+        assertEquals(2026, extractor.extract("spend for 2026-05").year());
+        assertEquals(2026, extractor.extract("(2026)").year());
+        assertEquals(2025, extractor.extract("2025 vs 2026").year());
+        assertEquals(2026, extractor.extract("FY2025 and 2026").year());
+        assertNull(extractor.extract("FY2026").year());
+        assertNull(extractor.extract("order 20265").year());
+        assertNull(extractor.extract("2026_q1").year());
+        assertNull(extractor.extract("1999 or 2100").year());
+    }
+}
@@ -0,0 +1,81 @@
+package com.example.demo.service;
+
+import com.example.demo.dto.QueryResult;
+import com.example.demo.dto.TransactionInput;
+import com.example.demo.model.Budget;
+import com.example.demo.model.Transaction;
+import com.example.demo.repository.BudgetRepository;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+
+import java.time.LocalDate;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+// The "replica" is a second pool on the same in-memory H2 database, so it is always up to date;
+// the router's counters tell which pool each read-only transaction used.
+@SpringBootTest(properties = {
+        "replica.datasource.url=jdbc:h2:mem:budget_analyzer;MODE=MySQL;DATABASE_TO_LOWER=TRUE;DB_CLOSE_DELAY=-1;NON_KEYWORDS=MONTH",
+        "replica.lag-check-interval-ms=100",
+        "insights.jobs.workers=0"
+})
+class ReadReplicaRoutingTests {
+
+    private static final long USER_ID = 9301L;
+
+    @Autowired
+    ReadReplicaRouter readReplicaRouter;
+
+    @Autowired
+    TransactionService transactionService;
+
+    @Autowired
+    BudgetService budgetService;
+
+    @Autowired
+    SqlQueryExecutionService sqlQueryExecutionService;
+
+    @Autowired
+    BudgetRepository budgetRepository;
+
+    @Test
+    void readOnlyWorkUsesTheReplicaAndWritesStayOnThePrimary() throws Exception {
+        for (int i = 0; i < 50 && !readReplicaRouter.isReplicaInUse(); i++) {
+            Thread.sleep(100);
+        }
+        assertTrue(readReplicaRouter.isReplicaInUse());
+
+        Budget budget = budgetRepository.save(new Budget(null, USER_ID, LocalDate.of(2026, 5, 1), LocalDate.of(2026, 5, 31), 1_000L, 1_000L, true));
+        long replicaReads = readReplicaRouter.getReplicaReads();
+        long primaryReads = readReplicaRouter.getPrimaryReads();
+
+        transactionService.saveTransaction(new TransactionInput(budget.getBudgetId(), 40L, LocalDate.of(2026, 5, 3), "Fuel", 1_000L));
+        assertEquals(replicaReads, readReplicaRouter.getReplicaReads());
+
+        List<Transaction> transactions = transactionService.retrieveTransaction(budget.getBudgetId());
+        assertEquals(1, transactions.size());
+        assertTrue(budgetService.readActiveBudgetDetailsForUser(USER_ID).isPresent());
+        QueryResult result = sqlQueryExecutionService.executeBounded(
+                "SELECT t.category, SUM(t.amount_spend) AS total_spent FROM `transaction` t WHERE t.budget_id = " + budget.getBudgetId() + " GROUP BY t.category");
+        assertEquals(1, result.getRowCount());
+
+        assertEquals(replicaReads + 3, readReplicaRouter.getReplicaReads());
+        assertEquals(primaryReads, readReplicaRouter.getPrimaryReads());
+    }
+
+    @Test
+    void unreachableReplicaFallsBackToThePrimary() {
+        ReadReplicaRouter router = new ReadReplicaRouter(new DriverManagerDataSource("jdbc:h2:tcp://127.0.0.1:1/missing", "sa", ""), 5, 1_000);
+        router.check();
+
+        assertFalse(router.isReplicaInUse());
+        assertFalse(router.useReplica());
+        assertEquals(1, router.getPrimaryReads());
+        assertTrue(Double.isNaN(router.getLagSeconds()));
+    }
+}
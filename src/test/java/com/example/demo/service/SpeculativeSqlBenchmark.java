@@ -0,0 +1,133 @@
+package com.example.demo.service;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.sun.net.httpserver.HttpServer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import io.micrometer.observation.ObservationRegistry;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.core.io.DefaultResourceLoader;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import static com.example.demo.service.TextToSqlPipelineBenchmark.MODEL_OUTPUTS;
+import static com.example.demo.service.TextToSqlPipelineBenchmark.PROMPTS;
+
+/**
+ * End-to-end latency of generateSqlWithOllama, sequential retries (candidates=1) against speculative candidates,
+ * with Ollama replaced by an in-process HTTP stub:
+ * - latency is log-normal around a 100 ms median, so some answers are several times slower than others;
+ * - a first attempt passes the gates 50% of the time, an attempt carrying the correction hint 80% of the time.
+ * SampleTime mode reports p50 / p90 / p99 per candidates value.
+ * mvn -Pbenchmark test-compile exec:exec -Djmh.args="SpeculativeSqlBenchmark"
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 1, time = 5)
+@Measurement(iterations = 3, time = 10)
+@Threads(8)
+@Fork(1)
+public class SpeculativeSqlBenchmark {
+
+    private static final long MEDIAN_LATENCY_MS = 100;
+    private static final double FIRST_ATTEMPT_PASS_RATE = 0.5;
+    private static final double CORRECTED_ATTEMPT_PASS_RATE = 0.8;
+
+    // "Where did I overspend in May 2026?" and an answer that passes / fails its gates.
+    private static final String PROMPT = PROMPTS.get(0);
+    private static final String VALID_ANSWER = MODEL_OUTPUTS.get(0);
+    private static final String INVALID_ANSWER = MODEL_OUTPUTS.get(8);
+
+    @Param({"1", "2", "3"})
+    public int candidates;
+
+    private HttpServer ollamaStub;
+    private TextToSqlGenerationService service;
+    private PromptConstraints constraints;
+    private String finalPrompt;
+
+    @Setup
+    public void setUp() throws IOException {
+        ObjectMapper objectMapper = new ObjectMapper();
+        ollamaStub = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        ollamaStub.setExecutor(Executors.newVirtualThreadPerTaskExecutor());
+        ollamaStub.createContext("/api/generate", exchange -> {
+            JsonNode request;
+            try (InputStream body = exchange.getRequestBody()) {
+                request = objectMapper.readTree(body);
+            }
+            ThreadLocalRandom random = ThreadLocalRandom.current();
+            boolean corrected = request.path("prompt").asText().contains("### Correction");
+            boolean passes = random.nextDouble() < (corrected ? CORRECTED_ATTEMPT_PASS_RATE : FIRST_ATTEMPT_PASS_RATE);
+            try {
+                Thread.sleep((long) (MEDIAN_LATENCY_MS * Math.exp(0.5 * random.nextGaussian())));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            byte[] response = objectMapper.writeValueAsBytes(Map.of("response", passes ? VALID_ANSWER : INVALID_ANSWER, "done", true));
+            exchange.getResponseHeaders().add("Content-Type", "application/json");
+            exchange.sendResponseHeaders(200, response.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(response);
+            } catch (IOException ignored) {
+                // the client cancelled a losing candidate
+            }
+        });
+        ollamaStub.start();
+
+        OllamaClient ollamaClient = new OllamaClient(objectMapper,
+                "http://localhost:" + ollamaStub.getAddress().getPort() + "/api/generate", 5_000, 60_000, 180_000);
+        service = new TextToSqlGenerationService(new DefaultResourceLoader(), ollamaClient, null, null, null,
+                new SqlCostGate(null, objectMapper, false, 0, 0, List.of(), 0, 0),
+                new InsightsMetrics(new SimpleMeterRegistry(), ObservationRegistry.NOOP), "sqlcoder:latest", candidates);
+        constraints = TextToSqlPipelineBenchmark.constraintsFor(service, PROMPT);
+        finalPrompt = TextToSqlGenerationService.PromptBuilder.build(constraints,
+                readResource("ai/sqlcoder-rules.txt"), readResource("ai/sqlcoder-schema.txt"));
+    }
+
+    @TearDown
+    public void tearDown() {
+        ollamaStub.stop(0);
+    }
+
+    @Benchmark
+    public String generateSql() {
+        try {
+            return service.generateSqlWithOllama(finalPrompt, constraints).check().sql();
+        } catch (RuntimeException ex) {
+            // every attempt failed the gates; still a complete (slow) request
+            return ex.getMessage();
+        }
+    }
+
+    private static String readResource(String path) throws IOException {
+        try (InputStream in = SpeculativeSqlBenchmark.class.getClassLoader().getResourceAsStream(path)) {
+            if (in == null) {
+                throw new IOException("Missing resource: " + path);
+            }
+            return new String(in.readAllBytes(), StandardCharsets.UTF_8);
+        }
+    }
+}
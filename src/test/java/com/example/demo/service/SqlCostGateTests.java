@@ -0,0 +1,63 @@
+package com.example.demo.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+// Plans as MySQL 8 prints them for EXPLAIN FORMAT=JSON, trimmed to the fields the gate reads.
+class SqlCostGateTests {
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final SqlCostGate gate = new SqlCostGate(null, objectMapper, true, 100_000, 10_000, List.of("ALL", "index"), 0, 0);
+
+    @Test
+    void userScopedJoinPasses() throws Exception {
+        String plan = """
+                {"query_block": {"select_id": 1, "grouping_operation": {"using_filesort": false, "nested_loop": [
+                  {"table": {"table_name": "b", "access_type": "ref", "key": "idx_budget_user", "rows_examined_per_scan": 12, "rows_produced_per_join": 12}},
+                  {"table": {"table_name": "t", "access_type": "ref", "key": "idx_transaction_budget_time", "rows_examined_per_scan": 400, "rows_produced_per_join": 480}}
+                ]}}}""";
+
+        assertNull(gate.judge(objectMapper.readTree(plan)));
+    }
+
+    @Test
+    void fullScanOfTransactionIsRejected() throws Exception {
+        String plan = """
+                {"query_block": {"select_id": 1, "nested_loop": [
+                  {"table": {"table_name": "b", "access_type": "ref", "rows_examined_per_scan": 1, "rows_produced_per_join": 1}},
+                  {"table": {"table_name": "t", "access_type": "ALL", "rows_examined_per_scan": 2300000, "rows_produced_per_join": 230000}}
+                ]}}""";
+
+        String problem = gate.judge(objectMapper.readTree(plan));
+        assertTrue(problem.contains("all of t (access type ALL, ~2300000 rows)"), problem);
+    }
+
+    @Test
+    void rowsReadPerOuterRowAddUp() throws Exception {
+        // 500 budgets, each probing 300 transactions: 150,500 rows without any full scan.
+        String plan = """
+                {"query_block": {"select_id": 1, "ordering_operation": {"grouping_operation": {"nested_loop": [
+                  {"table": {"table_name": "b", "access_type": "range", "rows_examined_per_scan": 500, "rows_produced_per_join": 500}},
+                  {"table": {"table_name": "t", "access_type": "ref", "rows_examined_per_scan": 300, "rows_produced_per_join": 150000}}
+                ]}}}}""";
+
+        assertEquals("the plan reads about 150500 rows (limit 100000)", gate.judge(objectMapper.readTree(plan)));
+    }
+
+    @Test
+    void shapeIgnoresLiterals() {
+        String may = "SELECT t.category, SUM(t.amount_spend) AS total_spent FROM `transaction` t JOIN budget b ON b.budget_id = t.budget_id "
+                + "WHERE b.user_id = 7 AND MONTH(t.time_stamp) = 5 AND t.category = 'Fuel' GROUP BY t.category";
+        String june = may.replace("user_id = 7", "user_id = 42").replace("= 5", "= 6").replace("'Fuel'", "'Rent'");
+
+        assertEquals(SqlCostGate.shapeOf(may), SqlCostGate.shapeOf(june));
+        assertNotEquals(SqlCostGate.shapeOf(may), SqlCostGate.shapeOf(may.replace("GROUP BY t.category", "")));
+    }
+}
@@ -0,0 +1,38 @@
+package com.example.demo.service;
+
+import com.example.demo.enums.PromptIntent;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class SqlQueryCacheTests {
+
+    private static final String LIST_SQL = "SELECT t.amount_spend, t.time_stamp FROM `transaction` t JOIN budget b ON b.budget_id = t.budget_id "
+            + "WHERE b.user_id = 7 AND t.category = 'Fuel' AND MONTH(t.time_stamp) = 5 AND YEAR(t.time_stamp) = 2026";
+
+    private final SqlQueryCache cache = new SqlQueryCache(100, 3600);
+
+    @Test
+    void differentFreeFormQuestionsWithTheSameConstraintsDoNotShareSql() {
+        cache.put(unclassified(7L, "list my Fuel transactions in May"), LIST_SQL);
+
+        assertTrue(cache.get(unclassified(7L, "count my Fuel transactions in May")).isEmpty());
+        assertEquals(LIST_SQL, cache.get(unclassified(7L, "List my fuel transactions, in May?")).orElseThrow());
+    }
+
+    @Test
+    void entriesAreSharedAcrossUsers() {
+        cache.put(unclassified(7L, "list my Fuel transactions in May"), LIST_SQL);
+
+        assertEquals(LIST_SQL.replace("user_id = 7", "user_id = 42"),
+                cache.get(unclassified(42L, "list my Fuel transactions in May")).orElseThrow());
+    }
+
+    private static PromptConstraints unclassified(long userId, String prompt) {
+        return new PromptConstraints(userId * 10, userId, prompt, "Fuel", List.of("Fuel"), 5, 2026, List.of(5), false, false,
+                PromptIntent.UNCLASSIFIED);
+    }
+}
@@ -0,0 +1,183 @@
+package com.example.demo.service;
+
+import com.example.demo.enums.PromptIntent;
+import com.example.demo.enums.SqlRejectReason;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+// The bypasses of the old regex gate, each written the way a model (or a prompt injection) would produce it.
+class SqlShapeValidatorTests {
+
+    private static final String JOIN = "FROM `transaction` t JOIN budget b ON b.budget_id = t.budget_id ";
+    private static final String SCOPE = "b.user_id = 7 AND t.category = 'Fuel' AND MONTH(t.time_stamp) = 5 AND YEAR(t.time_stamp) = 2026";
+
+    // Fuel in May 2026 for user 7.
+    private static final PromptConstraints FUEL_IN_MAY = new PromptConstraints(70L, 7L, "How much did I spend on Fuel in May 2026?",
+            "Fuel", List.of("Fuel"), 5, 2026, List.of(5), false, false, PromptIntent.SPEND_TOTAL);
+
+    @Test
+    void scopedQueryIsAcceptedAndCanonicalized() {
+        SqlCheck check = SqlShapeValidator.check("select sum(amount_spend) from transaction tx join budget bu on tx.budget_id = bu.budget_id "
+                + "where bu.user_id = 7 and category = 'Fuel' and month(time_stamp) = 5 and year(time_stamp) = 2026;", FUEL_IN_MAY);
+
+        assertTrue(check.accepted(), check.details().toString());
+        assertEquals("select sum(t.amount_spend) from `transaction` t join budget b on t.budget_id = b.budget_id "
+                + "where b.user_id = 7 and t.category = 'Fuel' and month(t.time_stamp) = 5 and year(t.time_stamp) = 2026", check.sql());
+    }
+
+    @Test
+    void keywordsInsideStringsAreJustText() {
+        PromptConstraints constraints = new PromptConstraints(70L, 7L, "", "Union; DELETE FROM budget", List.of("Union; DELETE FROM budget"),
+                5, 2026, List.of(5), false, false, PromptIntent.SPEND_TOTAL);
+
+        SqlCheck check = SqlShapeValidator.check("SELECT SUM(t.amount_spend) " + JOIN + "WHERE b.user_id = 7 AND t.category = 'Union; DELETE FROM budget' "
+                + "AND MONTH(t.time_stamp) = 5 AND YEAR(t.time_stamp) = 2026", constraints);
+
+        assertTrue(check.accepted(), check.details().toString());
+    }
+
+    @Test
+    void requiredFilterInsideAStringDoesNotCount() {
+        SqlCheck check = SqlShapeValidator.check("SELECT 'b.user_id = 7' AS note, SUM(t.amount_spend) " + JOIN
+                + "WHERE t.category = 'Fuel' AND MONTH(t.time_stamp) = 5 AND YEAR(t.time_stamp) = 2026", FUEL_IN_MAY);
+
+        assertTrue(check.failed(SqlRejectReason.MISSING_USER_FILTER));
+    }
+
+    @Test
+    void commentsAreRejected() {
+        for (String comment : List.of("-- b.user_id = 7", "/* b.user_id = 7 */", "# b.user_id = 7")) {
+            SqlCheck check = SqlShapeValidator.check("SELECT SUM(t.amount_spend) " + JOIN + "WHERE " + SCOPE + " " + comment, FUEL_IN_MAY);
+
+            assertEquals(Set.of(SqlRejectReason.NOT_SELECT), check.failures(), comment);
+        }
+    }
+
+    @Test
+    void topLevelOrIsRejected() {
+        SqlCheck check = SqlShapeValidator.check("SELECT SUM(t.amount_spend) " + JOIN + "WHERE " + SCOPE + " OR 1 = 1", FUEL_IN_MAY);
+
+        assertTrue(check.failed(SqlRejectReason.TOP_LEVEL_OR));
+        assertTrue(check.details().contains("top-level OR in WHERE (wrap alternatives in parentheses)"));
+    }
+
+    @Test
+    void topLevelXorIsRejected() {
+        // XOR binds more loosely than AND: (scope) XOR TRUE returns every other user's rows.
+        SqlCheck check = SqlShapeValidator.check("SELECT SUM(t.amount_spend) " + JOIN + "WHERE " + SCOPE + " XOR 1 = 1", FUEL_IN_MAY);
+
+        assertTrue(check.failed(SqlRejectReason.TOP_LEVEL_OR));
+        assertTrue(check.details().contains("top-level XOR in WHERE (wrap alternatives in parentheses)"));
+        assertFalse(check.accepted());
+    }
+
+    @Test
+    void filtersInsideAnXorGroupDoNotCount() {
+        SqlCheck check = SqlShapeValidator.check("SELECT SUM(t.amount_spend) " + JOIN + "WHERE (" + SCOPE + " XOR 1 = 1)", FUEL_IN_MAY);
+
+        assertTrue(check.failed(SqlRejectReason.MISSING_USER_FILTER));
+        assertTrue(check.failed(SqlRejectReason.MISSING_YEAR_FILTER));
+    }
+
+    @Test
+    void parenthesizedAlternativesOfOneColumnCountAsIn() {
+        PromptConstraints mayAndJune = new PromptConstraints(70L, 7L, "", "Fuel", List.of("Fuel"), null, 2026, List.of(5, 6), true, false,
+                PromptIntent.SPEND_TOTAL);
+
+        SqlCheck check = SqlShapeValidator.check("SELECT MONTH(t.time_stamp) AS month, SUM(t.amount_spend) " + JOIN
+                + "WHERE b.user_id = 7 AND t.category = 'Fuel' AND (MONTH(t.time_stamp) = 5 OR MONTH(t.time_stamp) = 6) "
+                + "AND YEAR(t.time_stamp) = 2026 GROUP BY MONTH(t.time_stamp)", mayAndJune);
+
+        assertTrue(check.accepted(), check.details().toString());
+    }
+
+    @Test
+    void userFilterInsideAnOrGroupDoesNotCount() {
+        SqlCheck check = SqlShapeValidator.check("SELECT SUM(t.amount_spend) " + JOIN
+                + "WHERE (b.user_id = 7 OR b.user_id = 8) AND t.category = 'Fuel' AND MONTH(t.time_stamp) = 5 AND YEAR(t.time_stamp) = 2026", FUEL_IN_MAY);
+
+        assertTrue(check.failed(SqlRejectReason.MISSING_USER_FILTER));
+    }
+
+    @Test
+    void subqueriesAreRejected() {
+        SqlCheck check = SqlShapeValidator.check("SELECT SUM(t.amount_spend) " + JOIN + "WHERE " + SCOPE
+                + " AND t.budget_id IN (SELECT budget_id FROM budget WHERE user_id = 8)", FUEL_IN_MAY);
+
+        assertTrue(check.failed(SqlRejectReason.TABLE_SHAPE));
+        assertTrue(check.details().contains("subqueries are not allowed"));
+    }
+
+    @Test
+    void extraJoinsAreRejected() {
+        SqlCheck check = SqlShapeValidator.check("SELECT SUM(t.amount_spend) " + JOIN + "JOIN budget b2 ON b2.user_id = 8 WHERE " + SCOPE, FUEL_IN_MAY);
+
+        assertTrue(check.failed(SqlRejectReason.TABLE_SHAPE));
+    }
+
+    @Test
+    void otherTablesAreRejected() {
+        SqlCheck check = SqlShapeValidator.check("SELECT u.password FROM user u WHERE u.id = 7", FUEL_IN_MAY);
+
+        assertTrue(check.failed(SqlRejectReason.TABLE_SHAPE));
+    }
+
+    @Test
+    void swappedAliasesAreRenamedBeforeTheScopeCheck() {
+        // b is the transaction table and t the budget here, so "t.user_id = 7" is the budget's user: correct, and
+        // "b.user_id" after canonicalization.
+        SqlCheck check = SqlShapeValidator.check("SELECT SUM(b.amount_spend) FROM `transaction` b JOIN budget t ON t.budget_id = b.budget_id "
+                + "WHERE t.user_id = 7 AND b.category = 'Fuel' AND MONTH(b.time_stamp) = 5 AND YEAR(b.time_stamp) = 2026", FUEL_IN_MAY);
+
+        assertTrue(check.accepted(), check.details().toString());
+        assertTrue(check.sql().contains("WHERE b.user_id = 7 AND t.category = 'Fuel'"), check.sql());
+
+        // The other way round, b.user_id now names the transaction table, which has no such column.
+        SqlCheck swapped = SqlShapeValidator.check("SELECT SUM(b.amount_spend) FROM `transaction` b JOIN budget t ON t.budget_id = b.budget_id "
+                + "WHERE b.user_id = 7 AND b.category = 'Fuel' AND MONTH(b.time_stamp) = 5 AND YEAR(b.time_stamp) = 2026", FUEL_IN_MAY);
+        assertTrue(swapped.failed(SqlRejectReason.MISSING_USER_FILTER));
+    }
+
+    @Test
+    void transactionUserIdIsRejected() {
+        SqlCheck check = SqlShapeValidator.check("SELECT SUM(t.amount_spend) " + JOIN
+                + "WHERE t.user_id = 7 AND t.category = 'Fuel' AND MONTH(t.time_stamp) = 5 AND YEAR(t.time_stamp) = 2026", FUEL_IN_MAY);
+
+        assertTrue(check.failed(SqlRejectReason.MISSING_USER_FILTER));
+        assertTrue(check.details().contains("`transaction` has no user_id column (filter b.user_id)"));
+    }
+
+    @Test
+    void bannedFunctionsAndStatementsAreRejected() {
+        List<String> banned = List.of(
+                "SELECT SUM(t.amount_spend) " + JOIN + "WHERE " + SCOPE + " AND t.category ILIKE 'fu%'",
+                "SELECT DATE_TRUNC('month', t.time_stamp), SUM(t.amount_spend) " + JOIN + "WHERE " + SCOPE,
+                "SELECT SUM(t.amount_spend) " + JOIN + "WHERE " + SCOPE + " AND t.time_stamp > NOW() - INTERVAL '3 month'",
+                "SELECT SUM(t.amount_spend) " + JOIN + "WHERE " + SCOPE + " UNION SELECT SUM(t.amount_spend) FROM `transaction` t",
+                "SELECT SUM(t.amount_spend) " + JOIN + "WHERE " + SCOPE + " AND SLEEP(5) = 0");
+        for (String sql : banned) {
+            SqlCheck check = SqlShapeValidator.check(sql, FUEL_IN_MAY);
+            assertTrue(check.failed(SqlRejectReason.BANNED_SYNTAX), sql + " -> " + check.failures());
+        }
+
+        SqlCheck twoStatements = SqlShapeValidator.check("SELECT SUM(t.amount_spend) " + JOIN + "WHERE " + SCOPE + "; DELETE FROM budget", FUEL_IN_MAY);
+        assertTrue(twoStatements.failed(SqlRejectReason.NOT_SELECT));
+        assertFalse(twoStatements.accepted());
+    }
+
+    @Test
+    void rollupShapeMustStandAlone() {
+        PromptConstraints mayTotal = new PromptConstraints(70L, 7L, "", null, List.of(), 5, 2026, List.of(5), false, false, PromptIntent.SPEND_TOTAL);
+
+        assertTrue(SqlShapeValidator.check("SELECT SUM(total_spent) FROM category_month_spend WHERE user_id = 7 AND spend_month = 5 AND spend_year = 2026",
+                mayTotal).accepted());
+        assertTrue(SqlShapeValidator.check("SELECT SUM(r.total_spent) FROM category_month_spend r JOIN budget b ON b.budget_id = r.budget_id "
+                + "WHERE r.user_id = 7 AND r.spend_month = 5 AND r.spend_year = 2026", mayTotal).failed(SqlRejectReason.TABLE_SHAPE));
+    }
+}
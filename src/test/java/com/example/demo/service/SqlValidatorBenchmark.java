@@ -0,0 +1,90 @@
+package com.example.demo.service;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.springframework.core.io.DefaultResourceLoader;
+
+import java.util.concurrent.TimeUnit;
+
+import static com.example.demo.service.TextToSqlPipelineBenchmark.MODEL_OUTPUTS;
+import static com.example.demo.service.TextToSqlPipelineBenchmark.MODEL_OUTPUT_COUNT;
+import static com.example.demo.service.TextToSqlPipelineBenchmark.PROMPTS;
+import static com.example.demo.service.TextToSqlPipelineBenchmark.PROMPT_COUNT;
+
+/**
+ * The old regex gate chain ({@link LegacyRegexSqlGate}: canonicalizeSql + one pattern per gate) against the
+ * single-pass {@link SqlShapeValidator}, over the model outputs of {@link TextToSqlPipelineBenchmark}.
+ * mvn -Pbenchmark test-compile exec:exec -Djmh.args="SqlValidatorBenchmark -prof gc"
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SqlValidatorBenchmark {
+
+    private PromptConstraints[] constraints;
+    private String[] extractedSql;
+
+    @Setup
+    public void setUp() {
+        TextToSqlGenerationService service = new TextToSqlGenerationService(new DefaultResourceLoader(), null, null, null, null, null, null, "sqlcoder:latest", 1);
+
+        constraints = new PromptConstraints[PROMPT_COUNT];
+        for (int i = 0; i < PROMPT_COUNT; i++) {
+            constraints[i] = TextToSqlPipelineBenchmark.constraintsFor(service, PROMPTS.get(i));
+        }
+        extractedSql = new String[MODEL_OUTPUT_COUNT];
+        for (int i = 0; i < MODEL_OUTPUT_COUNT; i++) {
+            extractedSql[i] = service.extractSql(MODEL_OUTPUTS.get(i));
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(MODEL_OUTPUT_COUNT)
+    public void regexGates(Blackhole bh) {
+        for (int i = 0; i < MODEL_OUTPUT_COUNT; i++) {
+            bh.consume(regexGates(extractedSql[i], constraints[i % PROMPT_COUNT]));
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(MODEL_OUTPUT_COUNT)
+    public void tokenizerValidator(Blackhole bh) {
+        for (int i = 0; i < MODEL_OUTPUT_COUNT; i++) {
+            bh.consume(SqlShapeValidator.check(extractedSql[i], constraints[i % PROMPT_COUNT]));
+        }
+    }
+
+    // What generateSqlWithOllama used to run per attempt.
+    private static int regexGates(String extracted, PromptConstraints c) {
+        String sql = LegacyRegexSqlGate.canonicalizeSql(extracted);
+        int failures = 0;
+        if (LegacyRegexSqlGate.containsBannedTokens(sql)) failures++;
+        if (!LegacyRegexSqlGate.usesAllowedTableShape(sql)) failures++;
+        if (!LegacyRegexSqlGate.containsRequiredUserId(sql, c.userId())) failures++;
+        if (c.multiCategory()) {
+            if (!LegacyRegexSqlGate.containsRequiredCategories(sql, c.requiredCategories())) failures++;
+        } else if (c.requiredCategory() != null) {
+            if (!LegacyRegexSqlGate.containsRequiredCategory(sql, c.requiredCategory())) failures++;
+        }
+        if (c.multiMonth()) {
+            if (!LegacyRegexSqlGate.containsMultiMonth(sql, c.monthsFound())) failures++;
+        } else if (c.requiredMonth() != null) {
+            if (!LegacyRegexSqlGate.containsSingleMonth(sql, c.requiredMonth())) failures++;
+        }
+        if (c.requiredYear() != null && !LegacyRegexSqlGate.containsRequiredYear(sql, c.requiredYear())) failures++;
+        return failures;
+    }
+}
@@ -0,0 +1,72 @@
+package com.example.demo.service;
+
+import com.example.demo.dto.GeneratedSqlContext;
+import com.example.demo.dto.QueryResult;
+import com.example.demo.dto.TransactionInput;
+import com.example.demo.enums.PromptIntent;
+import com.example.demo.model.Budget;
+import com.example.demo.repository.BudgetRepository;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+
+import java.time.LocalDate;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+@SpringBootTest(properties = "insights.jobs.workers=0")
+class TextToSqlGenerationServiceTests {
+
+    private static final long USER_ID = 9701L;
+
+    @Autowired
+    TextToSqlGenerationService textToSqlGenerationService;
+
+    @Autowired
+    SqlQueryExecutionService sqlQueryExecutionService;
+
+    @Autowired
+    TransactionService transactionService;
+
+    @Autowired
+    BudgetRepository budgetRepository;
+
+    @Autowired
+    MeterRegistry meterRegistry;
+
+    @Test
+    void promptWithoutAMonthUsesTheTemplateForTheWholeYear() {
+        Budget budget = budgetRepository.save(new Budget(null, USER_ID, LocalDate.of(2026, 1, 1), LocalDate.of(2026, 12, 31), 1_000L, 1_000L, true));
+        long budgetId = budget.getBudgetId();
+        save(budgetId, 40L, LocalDate.of(2026, 2, 3), "Fuel");
+        save(budgetId, 25L, LocalDate.of(2026, 7, 9), "Fuel");
+        save(budgetId, 60L, LocalDate.of(2026, 7, 9), "Rent or mortgage");
+        double hitsBefore = templateHits();
+
+        GeneratedSqlContext ctx = textToSqlGenerationService.generateSql(budgetId, "How much did I spend on Fuel in 2026?");
+
+        assertEquals("template", ctx.getSqlSource());
+        assertEquals(hitsBefore + 1, templateHits());
+        assertEquals(PromptIntent.SPEND_TOTAL, ctx.getIntent());
+        assertNull(ctx.getRequiredMonth());
+        assertEquals(List.of(), ctx.getRequiredMonths());
+        assertEquals(2026, ctx.getRequiredYear());
+        assertFalse(ctx.getSqlQuery().contains("spend_month"), ctx.getSqlQuery());
+
+        QueryResult result = sqlQueryExecutionService.executeBounded(ctx.getSqlQuery());
+        assertEquals(1, result.getRowCount());
+        assertEquals(65L, ((Number) result.value(0, 0)).longValue());
+    }
+
+    private double templateHits() {
+        return meterRegistry.get("insights.sql.template").tag("result", "hit").functionCounter().count();
+    }
+
+    private void save(long budgetId, long amount, LocalDate date, String category) {
+        transactionService.saveTransaction(new TransactionInput(budgetId, amount, date, category, 1_000L));
+    }
+}
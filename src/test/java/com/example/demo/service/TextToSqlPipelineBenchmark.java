@@ -0,0 +1,198 @@
+package com.example.demo.service;
+
+import com.example.demo.enums.PromptIntent;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.springframework.core.io.DefaultResourceLoader;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * JMH benchmarks for the CPU-only stages around the SqlCoder call in {@link TextToSqlGenerationService}:
+ * prompt parsing, prompt building, SQL extraction and the validation / canonicalization pass.
+ *
+ * Each invocation runs a stage over the whole corpus below; scores are per prompt (or per model output).
+ * Run with allocation profiling (the default jmh.args of the benchmark profile):
+ * mvn -Pbenchmark test-compile exec:exec
+ * or a single stage:
+ * mvn -Pbenchmark test-compile exec:exec -Djmh.args="TextToSqlPipelineBenchmark.validationGates -prof gc"
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class TextToSqlPipelineBenchmark {
+
+    private static final long USER_ID = 42L;
+    private static final long BUDGET_ID = 7L;
+    static final int PROMPT_COUNT = 12;
+    static final int MODEL_OUTPUT_COUNT = 10;
+
+    // Questions as users type them in the UI.
+    static final List<String> PROMPTS = List.of(
+            "Where did I overspend in May 2026?",
+            "How much did I spend in May and June 2026 on Utilities?",
+            "How much did I spend on Food & groceries and Dining out in March 2026?",
+            "Which category did I spend the most on in January?",
+            "What was my total spending on Fuel and Public transport in March and April 2026?",
+            "Show my Subscriptions payments for November 2025",
+            "Did my Rent or mortgage go up between September and October 2026?",
+            "How much did I spend on Internet and mobile last month?",
+            "Compare Healthcare and Medications spend in February, March and April 2026",
+            "Where did I spend the most in December 2025 excluding Savings?",
+            "Total spent on Gifts & donations in December",
+            "List my top 5 Entertainment and Travel expenses for July and August 2026"
+    );
+
+    // Raw SqlCoder answers, including the near misses that extraction / canonicalization / the gates exist for.
+    static final List<String> MODEL_OUTPUTS = List.of(
+            "SELECT t.category, SUM(t.amount_spend) AS total_spent FROM `transaction` t JOIN budget b ON b.budget_id = t.budget_id "
+                    + "WHERE b.user_id = 42 AND YEAR(t.time_stamp) = 2026 AND MONTH(t.time_stamp) = 5 GROUP BY t.category ORDER BY total_spent DESC LIMIT 5",
+            "```sql\nSELECT SUM(amount_spend) FROM transaction JOIN budget ON budget.budget_id = transaction.budget_id\n"
+                    + "WHERE budget.user_id = 42 AND transaction.category = 'Utilities' AND MONTH(transaction.time_stamp) = 5;\n```",
+            "SELECT MONTH(tx.time_stamp) AS month, SUM(tx.amount_spend) AS total_spent FROM `transaction` tx JOIN budget b ON b.budget_id = tx.budget_id "
+                    + "WHERE b.user_id = 42 AND YEAR(tx.time_stamp) = 2026 AND MONTH(tx.time_stamp) IN (5,6) GROUP BY MONTH(tx.time_stamp) ORDER BY month LIMIT 200",
+            "SUM(t.amount_spend) AS total FROM `transaction` t JOIN budget b ON b.budget_id = t.budget_id WHERE b.user_id = 42 AND t.category = 'Dining out'",
+            "SELECT category, SUM(amount_spend) FROM transaction WHERE time_stamp >= NOW() - interval '3 month' AND category ILIKE '%food%' GROUP BY category",
+            "SELECT r.category, SUM(r.total_spent) AS total_spent FROM category_month_spend r WHERE r.user_id = 42 AND r.spend_year = 2026 "
+                    + "AND r.spend_month = 5 GROUP BY r.category ORDER BY total_spent DESC LIMIT 5",
+            "Here is the query you asked for:\nSELECT t.category, COUNT(*) AS purchases FROM `transaction` t JOIN budget b ON b.budget_id = t.budget_id\n"
+                    + "WHERE b.user_id = 42 AND MONTH(t.time_stamp) = 11 AND YEAR(t.time_stamp) = 2025 GROUP BY t.category ORDER BY purchases DESC LIMIT 200",
+            "SELECT t.category, SUM(t.amount_spend) AS total_spent FROM `transaction` t JOIN budget b ON b.budget_id = t.budget_id WHERE b.user_id = 42 "
+                    + "AND YEAR(t.time_stamp) = 2026 AND MONTH(t.time_stamp) IN (3,4) AND t.category IN ('Fuel', 'Public transport') GROUP BY t.category ORDER BY total_spent DESC",
+            "SELECT SUM(t.amount_spend) FROM `transaction` t WHERE t.user_id = 42 AND MONTH(t.time_stamp) = 11",
+            "SELECT DATE_FORMAT(t.time_stamp, '%Y-%m') AS ym, SUM(t.amount_spend) AS total_spent FROM `transaction` t JOIN budget b ON b.budget_id = t.budget_id "
+                    + "WHERE b.user_id = 42 AND t.time_stamp >= DATE_SUB(CURDATE(), INTERVAL 3 MONTH) GROUP BY ym ORDER BY ym LIMIT 200"
+    );
+
+    private TextToSqlGenerationService service;
+    private String rules;
+    private String schema;
+    private PromptConstraints[] constraints;
+    private String[] extractedSql;
+
+    @Setup
+    public void setUp() throws IOException {
+        if (PROMPTS.size() != PROMPT_COUNT || MODEL_OUTPUTS.size() != MODEL_OUTPUT_COUNT) {
+            throw new IllegalStateException("Update PROMPT_COUNT / MODEL_OUTPUT_COUNT to match the corpus");
+        }
+
+        // Only the prompt resources are needed; nothing in the measured stages touches Ollama or the database.
+        service = new TextToSqlGenerationService(new DefaultResourceLoader(), null, null, null, null, null, null, "sqlcoder:latest", 1);
+        rules = readResource("ai/sqlcoder-rules.txt");
+        schema = readResource("ai/sqlcoder-schema.txt");
+
+        constraints = new PromptConstraints[PROMPT_COUNT];
+        for (int i = 0; i < PROMPT_COUNT; i++) {
+            constraints[i] = constraintsFor(service, PROMPTS.get(i));
+        }
+
+        extractedSql = new String[MODEL_OUTPUT_COUNT];
+        for (int i = 0; i < MODEL_OUTPUT_COUNT; i++) {
+            extractedSql[i] = service.extractSql(MODEL_OUTPUTS.get(i));
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(PROMPT_COUNT)
+    public void detectCategories(Blackhole bh) {
+        for (String prompt : PROMPTS) {
+            bh.consume(service.detectCategories(prompt));
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(PROMPT_COUNT)
+    public void detectMonths(Blackhole bh) {
+        for (String prompt : PROMPTS) {
+            bh.consume(service.detectMonths(prompt));
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(PROMPT_COUNT)
+    public void buildConstraints(Blackhole bh) {
+        for (String prompt : PROMPTS) {
+            bh.consume(constraintsFor(service, prompt));
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(PROMPT_COUNT)
+    public void promptBuild(Blackhole bh) {
+        for (PromptConstraints c : constraints) {
+            bh.consume(TextToSqlGenerationService.PromptBuilder.build(c, rules, schema));
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(MODEL_OUTPUT_COUNT)
+    public void extractSql(Blackhole bh) {
+        for (String modelText : MODEL_OUTPUTS) {
+            bh.consume(service.extractSql(modelText));
+        }
+    }
+
+    // Every gate generateSqlWithOllama applies (plus canonicalization), each model output checked against the constraints of one prompt.
+    @Benchmark
+    @OperationsPerInvocation(MODEL_OUTPUT_COUNT)
+    public void validationGates(Blackhole bh) {
+        for (int i = 0; i < MODEL_OUTPUT_COUNT; i++) {
+            bh.consume(SqlShapeValidator.check(extractedSql[i], constraints[i % PROMPT_COUNT]));
+        }
+    }
+
+    // extractSql -> validation, i.e. the per-attempt post-processing of one model answer.
+    @Benchmark
+    @OperationsPerInvocation(MODEL_OUTPUT_COUNT)
+    public void postProcessModelOutput(Blackhole bh) {
+        for (int i = 0; i < MODEL_OUTPUT_COUNT; i++) {
+            bh.consume(SqlShapeValidator.check(service.extractSql(MODEL_OUTPUTS.get(i)), constraints[i % PROMPT_COUNT]));
+        }
+    }
+
+    // Same constraint derivation as generateSql, minus the budget lookups (user and year are fixed).
+    static PromptConstraints constraintsFor(TextToSqlGenerationService service, String prompt) {
+        List<String> categories = service.detectCategories(prompt);
+        List<Integer> months = service.detectMonths(prompt);
+        boolean multiMonth = months.size() >= 2;
+        Integer year = service.detectYear(prompt);
+        return new PromptConstraints(
+                BUDGET_ID,
+                USER_ID,
+                prompt,
+                categories.size() == 1 ? categories.get(0) : null,
+                categories,
+                (multiMonth || months.isEmpty()) ? null : months.get(0),
+                year != null ? year : 2026,
+                months,
+                multiMonth,
+                categories.size() >= 2,
+                TextToSqlGenerationService.detectIntent(prompt));
+    }
+
+    private static String readResource(String path) throws IOException {
+        try (InputStream in = TextToSqlPipelineBenchmark.class.getClassLoader().getResourceAsStream(path)) {
+            if (in == null) {
+                throw new IOException("Missing resource: " + path);
+            }
+            return new String(in.readAllBytes(), StandardCharsets.UTF_8);
+        }
+    }
+}
@@ -0,0 +1,136 @@
+package com.example.demo.service;
+
+import com.example.demo.dto.TransactionInput;
+import com.example.demo.model.Budget;
+import com.example.demo.model.Transaction;
+import com.example.demo.repository.BudgetRepository;
+import com.example.demo.repository.TransactionRepository;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+@SpringBootTest
+class TransactionServiceConcurrencyTests {
+
+    private static final int THREADS = 16;
+    private static final int ATTEMPTS_PER_THREAD = 100;
+    private static final long AMOUNT = 10L;
+    private static final long BUDGET_ALLOCATED = 10_000L;
+
+    @Autowired
+    TransactionService transactionService;
+
+    @Autowired
+    BudgetRepository budgetRepository;
+
+    @Autowired
+    TransactionRepository transactionRepository;
+
+    @Autowired
+    BudgetService budgetService;
+
+    // 16 threads try to spend 16,000 against a budget of 10,000 on the same row.
+    // Exactly 1,000 purchases must succeed and the remaining balance must end at 0, never below.
+    @Test
+    void concurrentPurchasesNeverOverdrawTheBudget() throws Exception {
+        Budget budget = budgetRepository.save(new Budget(null, 1L, LocalDate.of(2026, 5, 1), LocalDate.of(2026, 5, 31),
+                BUDGET_ALLOCATED, BUDGET_ALLOCATED, true));
+
+        AtomicInteger accepted = new AtomicInteger();
+        AtomicInteger rejected = new AtomicInteger();
+        List<Long> observedRemaining = Collections.synchronizedList(new ArrayList<>());
+        CountDownLatch start = new CountDownLatch(1);
+
+        ExecutorService pool = Executors.newFixedThreadPool(THREADS);
+        List<Future<?>> workers = new ArrayList<>();
+        for (int i = 0; i < THREADS; i++) {
+            workers.add(pool.submit(() -> {
+                start.await();
+                for (int attempt = 0; attempt < ATTEMPTS_PER_THREAD; attempt++) {
+                    TransactionInput input = new TransactionInput(budget.getBudgetId(), AMOUNT,
+                            LocalDate.of(2026, 5, 10), "Fuel", BUDGET_ALLOCATED);
+                    try {
+                        observedRemaining.add(transactionService.saveTransaction(input).budgetRemaining());
+                        accepted.incrementAndGet();
+                    } catch (RuntimeException ex) {
+                        assertEquals("Transaction amount is not valid for the budget", ex.getMessage());
+                        rejected.incrementAndGet();
+                    }
+                }
+                return null;
+            }));
+        }
+
+        start.countDown();
+        for (Future<?> worker : workers) {
+            worker.get();
+        }
+        pool.shutdown();
+
+        long expectedAccepted = BUDGET_ALLOCATED / AMOUNT;
+        assertEquals(expectedAccepted, accepted.get());
+        assertEquals(THREADS * ATTEMPTS_PER_THREAD - expectedAccepted, rejected.get());
+        assertEquals(0L, budgetRepository.findBudgetRemainingByBudgetId(budget.getBudgetId()).orElseThrow());
+
+        List<Transaction> saved = transactionRepository.findByBudgetId(budget.getBudgetId());
+        assertEquals(expectedAccepted, saved.size());
+        assertEquals(BUDGET_ALLOCATED, saved.stream().mapToLong(Transaction::getTransactionAmount).sum());
+
+        // Every caller saw its own post-decrement balance, so no two purchases were given the same one.
+        assertEquals(expectedAccepted, observedRemaining.stream().distinct().count());
+        assertTrue(observedRemaining.stream().allMatch(remaining -> remaining >= 0));
+        // Correctness only. Throughput under load comes from GraphQlLoadTests (addTransaction ops/s and latencies).
+    }
+
+    // Top-ups racing with purchases: neither may overwrite the other's change to budget_remaining,
+    // and the cached row must not keep a balance older than the database's.
+    @Test
+    void topUpsAndPurchasesBothLand() throws Exception {
+        Budget budget = budgetRepository.save(new Budget(null, 2L, LocalDate.of(2026, 5, 1), LocalDate.of(2026, 5, 31),
+                BUDGET_ALLOCATED, BUDGET_ALLOCATED, true));
+        Long budgetId = budget.getBudgetId();
+        CountDownLatch start = new CountDownLatch(1);
+
+        ExecutorService pool = Executors.newFixedThreadPool(THREADS);
+        List<Future<?>> workers = new ArrayList<>();
+        for (int i = 0; i < THREADS; i++) {
+            boolean topUps = i % 2 == 0;
+            workers.add(pool.submit(() -> {
+                start.await();
+                for (int attempt = 0; attempt < 20; attempt++) {
+                    if (topUps) {
+                        budgetService.modifyBudgetForExistingCycle(budgetId, AMOUNT);
+                    } else {
+                        transactionService.saveTransaction(new TransactionInput(budgetId, AMOUNT, LocalDate.of(2026, 5, 10), "Fuel", BUDGET_ALLOCATED));
+                    }
+                }
+                return null;
+            }));
+        }
+        start.countDown();
+        for (Future<?> worker : workers) {
+            worker.get();
+        }
+        pool.shutdown();
+
+        long toppedUp = (THREADS / 2) * 20 * AMOUNT;
+        long spent = (THREADS / 2) * 20 * AMOUNT;
+        Budget stored = budgetRepository.findById(budgetId).orElseThrow();
+        assertEquals(BUDGET_ALLOCATED + toppedUp, stored.getBudgetAllocated());
+        assertEquals(BUDGET_ALLOCATED + toppedUp - spent, stored.getBudgetRemaining());
+        assertEquals(stored.getBudgetRemaining(), budgetService.fetchBudget(budgetId).orElseThrow().getBudgetRemaining());
+    }
+}
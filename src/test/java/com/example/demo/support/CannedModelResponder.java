@@ -0,0 +1,194 @@
+package com.example.demo.support;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.UnaryOperator;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Plays both models for {@link OllamaStubServer}, answering from the prompt the app built.
+ *
+ * SqlCoder (any model without "deepseek" in its name): reads the constraint lines of the prompt (user_id, category,
+ * month(s), year, rollup or transaction shape) and writes a query that passes the gates, sometimes in a ```sql fence.
+ * A share of answers is broken on purpose (year filter dropped, t.user_id, ILIKE, wrong table shape), more often on
+ * a first attempt than on one carrying the "### Correction" hint, so the retry path runs too.
+ * DeepSeek: a short canned insight naming the requested category, or now and then an empty answer (which the app retries).
+ */
+public class CannedModelResponder implements OllamaStubServer.Responder {
+
+    private static final Pattern USER_ID = Pattern.compile("(?m)^- user_id must be (\\d+)");
+    private static final Pattern CATEGORY = Pattern.compile("(?m)^- category must be '(.+)'\\s*$");
+    private static final Pattern CATEGORIES = Pattern.compile("(?m)^- categories must be IN \\((.+?)\\) \\(use");
+    private static final Pattern MONTH = Pattern.compile("(?m)^- month must be (\\d+)");
+    private static final Pattern MONTHS = Pattern.compile("Months are: ([\\d,]+)");
+    private static final Pattern YEAR = Pattern.compile("(?m)^- year must be (\\d{4})");
+    private static final Pattern REQUIRED_CATEGORY = Pattern.compile("(?m)^requiredCategor(?:y|ies): (.+)$");
+
+    private final double firstAttemptFailureRate;
+    private final double correctedFailureRate;
+    private final double emptyInsightRate;
+
+    private final AtomicLong sqlAnswers = new AtomicLong();
+    private final AtomicLong failingSqlAnswers = new AtomicLong();
+    private final AtomicLong insightAnswers = new AtomicLong();
+    private final AtomicLong emptyInsightAnswers = new AtomicLong();
+
+    public CannedModelResponder(double firstAttemptFailureRate, double correctedFailureRate, double emptyInsightRate) {
+        this.firstAttemptFailureRate = firstAttemptFailureRate;
+        this.correctedFailureRate = correctedFailureRate;
+        this.emptyInsightRate = emptyInsightRate;
+    }
+
+    public static CannedModelResponder fromSystemProperties() {
+        return new CannedModelResponder(
+                Double.parseDouble(System.getProperty("ollama.stub.sql-failure-rate", "0.2")),
+                Double.parseDouble(System.getProperty("ollama.stub.corrected-sql-failure-rate", "0.05")),
+                Double.parseDouble(System.getProperty("ollama.stub.empty-insight-rate", "0.02")));
+    }
+
+    static boolean isInsightsModel(String model) {
+        return model != null && model.toLowerCase(Locale.ROOT).contains("deepseek");
+    }
+
+    @Override
+    public String respond(String model, String prompt) {
+        return isInsightsModel(model) ? insight(prompt) : sql(prompt);
+    }
+
+    public long getSqlAnswers() {
+        return sqlAnswers.get();
+    }
+
+    public long getFailingSqlAnswers() {
+        return failingSqlAnswers.get();
+    }
+
+    public long getInsightAnswers() {
+        return insightAnswers.get();
+    }
+
+    public long getEmptyInsightAnswers() {
+        return emptyInsightAnswers.get();
+    }
+
+    @Override
+    public String toString() {
+        return "CannedModelResponder[sqlFailureRate=" + firstAttemptFailureRate + ", correctedSqlFailureRate=" + correctedFailureRate
+                + ", emptyInsightRate=" + emptyInsightRate + "]";
+    }
+
+    private String sql(String prompt) {
+        sqlAnswers.incrementAndGet();
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        boolean corrected = prompt.contains("### Correction");
+        boolean rollup = prompt.contains("You MUST read the pre-aggregated rollup table");
+        Scope scope = Scope.of(prompt);
+
+        String sql = validSql(scope, rollup);
+        if (random.nextDouble() < (corrected ? correctedFailureRate : firstAttemptFailureRate)) {
+            failingSqlAnswers.incrementAndGet();
+            List<UnaryOperator<String>> breakages = breakages(scope, rollup);
+            sql = breakages.get(random.nextInt(breakages.size())).apply(sql);
+        }
+        return random.nextInt(3) == 0 ? "```sql\n" + sql + ";\n```" : sql;
+    }
+
+    private String insight(String prompt) {
+        insightAnswers.incrementAndGet();
+        if (ThreadLocalRandom.current().nextDouble() < emptyInsightRate) {
+            emptyInsightAnswers.incrementAndGet();
+            return "";
+        }
+        Matcher category = REQUIRED_CATEGORY.matcher(prompt);
+        String subject = category.find() ? category.group(1).trim() : "your top category";
+        return "Most of your spending in this period went to " + subject + ". "
+                + "The rest is spread over a few smaller categories that stay close to their usual level. "
+                + "Setting a monthly cap for " + subject + " would have the largest effect on your remaining budget.";
+    }
+
+    private static String validSql(Scope scope, boolean rollup) {
+        String alias = rollup ? "r" : "t";
+        String monthExpr = rollup ? "r.spend_month" : "MONTH(t.time_stamp)";
+        String yearExpr = rollup ? "r.spend_year" : "YEAR(t.time_stamp)";
+        String spendExpr = rollup ? "SUM(r.total_spent)" : "SUM(t.amount_spend)";
+
+        StringBuilder sb = new StringBuilder("SELECT ");
+        sb.append(scope.months().size() > 1 ? monthExpr + " AS month" : alias + ".category");
+        sb.append(", ").append(spendExpr).append(" AS total_spent");
+        sb.append(rollup
+                ? " FROM category_month_spend r WHERE r.user_id = "
+                : " FROM `transaction` t JOIN budget b ON b.budget_id = t.budget_id WHERE b.user_id = ");
+        sb.append(scope.userId());
+        if (scope.year() != null) {
+            sb.append(" AND ").append(yearExpr).append(" = ").append(scope.year());
+        }
+        if (scope.months().size() == 1) {
+            sb.append(" AND ").append(monthExpr).append(" = ").append(scope.months().get(0));
+        } else if (scope.months().size() > 1) {
+            sb.append(" AND ").append(monthExpr).append(" IN (").append(String.join(",", scope.months())).append(")");
+        }
+        if (scope.categories() != null) {
+            sb.append(" AND ").append(alias).append(".category IN (").append(scope.categories()).append(")");
+        }
+        if (scope.months().size() > 1) {
+            sb.append(" GROUP BY ").append(monthExpr).append(" ORDER BY month");
+        } else {
+            sb.append(" GROUP BY ").append(alias).append(".category ORDER BY total_spent DESC");
+        }
+        return sb.append(" LIMIT 200").toString();
+    }
+
+    // Mistakes SqlCoder really makes; each one trips a different gate.
+    private static List<UnaryOperator<String>> breakages(Scope scope, boolean rollup) {
+        List<UnaryOperator<String>> breakages = new ArrayList<>();
+        if (scope.year() != null) {
+            // MISSING_YEAR_FILTER
+            breakages.add(sql -> sql.replaceFirst(" AND (YEAR\\(t\\.time_stamp\\)|r\\.spend_year) = \\d{4}", ""));
+        }
+        if (!rollup) {
+            // MISSING_USER_FILTER: `transaction` has no user_id
+            breakages.add(sql -> sql.replace("b.user_id", "t.user_id"));
+        }
+        // BANNED_SYNTAX
+        breakages.add(sql -> sql.replaceFirst(" GROUP BY", " AND LOWER(category) ILIKE '%a%' GROUP BY"));
+        // TABLE_SHAPE
+        breakages.add(sql -> "SELECT category, SUM(amount_spend) AS total_spent FROM transaction WHERE user_id = " + scope.userId()
+                + " GROUP BY category");
+        return breakages;
+    }
+
+    // The constraint lines PromptBuilder wrote into the SqlCoder prompt.
+    private record Scope(String userId, String year, List<String> months, String categories) {
+
+        static Scope of(String prompt) {
+            List<String> months = new ArrayList<>();
+            Matcher multiMonth = MONTHS.matcher(prompt);
+            Matcher month = MONTH.matcher(prompt);
+            if (multiMonth.find()) {
+                months.addAll(List.of(multiMonth.group(1).split(",")));
+            } else if (month.find()) {
+                months.add(month.group(1));
+            }
+
+            String categories = null;
+            Matcher multiCategory = CATEGORIES.matcher(prompt);
+            Matcher category = CATEGORY.matcher(prompt);
+            if (multiCategory.find()) {
+                categories = multiCategory.group(1);
+            } else if (category.find()) {
+                categories = "'" + category.group(1).replace("'", "''") + "'";
+            }
+
+            return new Scope(find(USER_ID, prompt, "0"), find(YEAR, prompt, null), months, categories);
+        }
+
+        private static String find(Pattern pattern, String prompt, String fallback) {
+            Matcher matcher = pattern.matcher(prompt);
+            return matcher.find() ? matcher.group(1) : fallback;
+        }
+    }
+}
@@ -0,0 +1,158 @@
+package com.example.demo.support;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Minimal local stand-in for Ollama's /api/generate endpoint.
+ *
+ * The answer text comes from a {@link Responder}: either one fixed text, or {@link CannedModelResponder} which plays
+ * SqlCoder and DeepSeek (including answers that fail the SQL gates). {@link Latency} adds a log-normal delay per model,
+ * and stream=true answers are sent as NDJSON chunks, one word at a time. Non-streamed answers carry a "context" token
+ * array like the real server does, so client-side parsing cost is realistic.
+ *
+ * Run it standalone to point a local app at it instead of a real Ollama (settings: see fromSystemProperties):
+ * mvn -Ploadtest test-compile exec:java -Dollama.stub.sqlcoder-latency-ms=500
+ */
+public class OllamaStubServer implements AutoCloseable {
+
+    // Picks the answer text for one request.
+    @FunctionalInterface
+    public interface Responder {
+        String respond(String model, String prompt);
+    }
+
+    /**
+     * Delay before the answer (streamed: before the first chunk), log-normal around the median of the model,
+     * so some answers are several times slower than others. Streamed chunks are streamChunkMillis apart.
+     */
+    public record Latency(long sqlcoderMedianMillis, long deepseekMedianMillis, double sigma, long streamChunkMillis) {
+
+        public static final Latency NONE = new Latency(0, 0, 0, 0);
+
+        public static Latency fromSystemProperties() {
+            return new Latency(
+                    Long.getLong("ollama.stub.sqlcoder-latency-ms", 300),
+                    Long.getLong("ollama.stub.deepseek-latency-ms", 600),
+                    Double.parseDouble(System.getProperty("ollama.stub.latency-sigma", "0.5")),
+                    Long.getLong("ollama.stub.stream-chunk-ms", 15));
+        }
+
+        long sample(String model) {
+            long median = CannedModelResponder.isInsightsModel(model) ? deepseekMedianMillis : sqlcoderMedianMillis;
+            if (median <= 0) {
+                return 0;
+            }
+            return (long) (median * Math.exp(sigma * ThreadLocalRandom.current().nextGaussian()));
+        }
+    }
+
+    private final HttpServer server;
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final Responder responder;
+    private final Latency latency;
+    private final String context;
+
+    public OllamaStubServer(String responseText, int contextTokens) throws IOException {
+        this(0, (model, prompt) -> responseText, Latency.NONE, contextTokens);
+    }
+
+    // port 0 picks a free port.
+    public OllamaStubServer(int port, Responder responder, Latency latency, int contextTokens) throws IOException {
+        this.responder = responder;
+        this.latency = latency;
+        this.context = buildContext(contextTokens);
+
+        // Without TCP_NODELAY the header/body writes stall on Nagle + delayed ACK (~40 ms per call).
+        System.setProperty("sun.net.httpserver.nodelay", "true");
+        this.server = HttpServer.create(new InetSocketAddress("127.0.0.1", port), 0);
+        this.server.setExecutor(Executors.newVirtualThreadPerTaskExecutor());
+        this.server.createContext("/api/generate", this::handleGenerate);
+        this.server.start();
+    }
+
+    public static void main(String[] args) throws Exception {
+        int port = Integer.getInteger("ollama.stub.port", 11434);
+        CannedModelResponder models = CannedModelResponder.fromSystemProperties();
+        Latency latency = Latency.fromSystemProperties();
+        try (OllamaStubServer stub = new OllamaStubServer(port, models, latency, 0)) {
+            System.out.println("Ollama stub listening on " + stub.generateUrl() + " with " + latency + " and " + models);
+            new CountDownLatch(1).await();
+        }
+    }
+
+    public String generateUrl() {
+        return "http://127.0.0.1:" + server.getAddress().getPort() + "/api/generate";
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+    }
+
+    private void handleGenerate(HttpExchange exchange) throws IOException {
+        JsonNode request;
+        try (InputStream in = exchange.getRequestBody()) {
+            request = objectMapper.readTree(in);
+        }
+        String model = request.path("model").asText();
+        boolean stream = request.path("stream").asBoolean(false);
+        String responseText = responder.respond(model, request.path("prompt").asText());
+
+        try {
+            Thread.sleep(latency.sample(model));
+
+            exchange.getResponseHeaders().set("Content-Type", stream ? "application/x-ndjson" : "application/json");
+            if (stream) {
+                exchange.sendResponseHeaders(200, 0);
+                try (OutputStream out = exchange.getResponseBody()) {
+                    for (String token : responseText.split("(?<= )")) {
+                        out.write(("{\"model\":" + quote(model) + ",\"response\":" + quote(token) + ",\"done\":false}\n").getBytes(StandardCharsets.UTF_8));
+                        out.flush();
+                        Thread.sleep(latency.streamChunkMillis());
+                    }
+                    out.write(("{\"model\":" + quote(model) + ",\"response\":\"\",\"done\":true}\n").getBytes(StandardCharsets.UTF_8));
+                }
+                return;
+            }
+
+            byte[] body = ("{\"model\":" + quote(model) + ",\"created_at\":\"2026-01-01T00:00:00Z\",\"response\":" + quote(responseText)
+                    + ",\"done\":true,\"context\":" + context
+                    + ",\"total_duration\":1,\"eval_count\":1}").getBytes(StandardCharsets.UTF_8);
+            exchange.sendResponseHeaders(200, body.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(body);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (IOException ignored) {
+            // the client gave up on the request (cancelled candidate or stream)
+        } finally {
+            exchange.close();
+        }
+    }
+
+    private static String buildContext(int tokens) {
+        StringBuilder sb = new StringBuilder("[");
+        for (int i = 0; i < tokens; i++) {
+            if (i > 0) sb.append(',');
+            sb.append(10_000 + (i * 7919) % 30_000);
+        }
+        return sb.append(']').toString();
+    }
+
+    private static String quote(String text) {
+        return "\"" + text.replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n") + "\"";
+    }
+}